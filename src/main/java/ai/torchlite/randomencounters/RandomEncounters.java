@@ -8,13 +8,19 @@ import net.minecraftforge.fml.common.event.FMLInitializationEvent;
 import net.minecraftforge.fml.common.event.FMLPostInitializationEvent;
 import net.minecraftforge.fml.common.event.FMLPreInitializationEvent;
 import net.minecraftforge.fml.common.event.FMLServerStartingEvent;
+import net.minecraftforge.fml.common.event.FMLServerStoppingEvent;
 import ai.torchlite.randomencounters.proxy.CommonProxy;
 import ai.torchlite.randomencounters.config.ConfigHandler;
+import ai.torchlite.randomencounters.config.json.ConfigCache;
+import ai.torchlite.randomencounters.config.json.EncounterConfig;
 import ai.torchlite.randomencounters.config.json.JsonEncounterLoader;
+import ai.torchlite.randomencounters.config.json.ParallelConfigLoader;
 import ai.torchlite.randomencounters.commands.EncounterCommand;
 import ai.torchlite.randomencounters.encounters.EncounterManager;
 
 import java.io.File;
+import java.util.Collections;
+import java.util.Map;
 
 @Mod(modid = RandomEncounters.MODID, 
      name = RandomEncounters.NAME, 
@@ -36,6 +42,9 @@ public class RandomEncounters {
     
     public static EncounterManager encounterManager;
     public static JsonEncounterLoader jsonLoader;
+    public static EncounterConfig encounterConfig;
+    /** File each encounter of {@link #encounterConfig} was read from, by id; empty for the bundled defaults */
+    public static Map<String, File> encounterOrigins = Collections.emptyMap();
     
     @EventHandler
     public void preInit(FMLPreInitializationEvent event) {
@@ -48,9 +57,9 @@ public class RandomEncounters {
         if (!modConfigDir.exists()) {
             modConfigDir.mkdirs();
         }
-        jsonLoader.loadConfig(modConfigDir);
+        encounterConfig = loadEncounterConfig(modConfigDir);
         
-        encounterManager = new EncounterManager();
+        encounterManager = new EncounterManager(modConfigDir);
         
         // Log mod status
         if (ConfigHandler.enableRandomEncounters) {
@@ -63,6 +72,30 @@ public class RandomEncounters {
         proxy.preInit(event);
     }
     
+    /**
+     * Load the config directory from its binary cache, or parse it in parallel
+     * when it changed. Falls back to the bundled loader when the directory
+     * holds no encounters yet (first start).
+     */
+    private static EncounterConfig loadEncounterConfig(File modConfigDir) {
+        long start = System.nanoTime();
+        ParallelConfigLoader.Result result = new ConfigCache(modConfigDir, VERSION).load(new ParallelConfigLoader());
+        for (ParallelConfigLoader.LoadError error : result.getErrors()) {
+            System.err.println("RandomEncounters: Skipped " + error);
+        }
+        
+        EncounterConfig config = result.getConfig();
+        if (config.encounters.isEmpty()) {
+            jsonLoader.loadConfig(modConfigDir);
+            return jsonLoader.getConfig();
+        }
+        encounterOrigins = result.getOrigins();
+        
+        System.out.println("RandomEncounters: Loaded " + result.getFileCount() + " config file(s) in "
+            + (System.nanoTime() - start) / 1000000L + " ms (" + result.getErrors().size() + " error(s))");
+        return config;
+    }
+    
     @EventHandler
     public void init(FMLInitializationEvent event) {
         proxy.init(event);
@@ -75,6 +108,12 @@ public class RandomEncounters {
     
     @EventHandler
     public void serverStarting(FMLServerStartingEvent event) {
+        encounterManager.onServerStarting();
         event.registerServerCommand(new EncounterCommand());
     }
+    
+    @EventHandler
+    public void serverStopping(FMLServerStoppingEvent event) {
+        encounterManager.onServerStopping();
+    }
 }
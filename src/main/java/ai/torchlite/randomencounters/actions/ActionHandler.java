@@ -0,0 +1,11 @@
+package ai.torchlite.randomencounters.actions;
+
+import ai.torchlite.randomencounters.expression.ExpressionScope;
+
+/**
+ * One action with its arguments resolved by {@link ActionCompiler}.
+ */
+public interface ActionHandler {
+
+    void run(EncounterContext context, ExpressionScope scope);
+}
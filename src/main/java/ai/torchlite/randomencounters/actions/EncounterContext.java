@@ -11,25 +11,68 @@ public class EncounterContext {
     
     private final World world;
     private final BlockPos originPos;
-    private final Map<String, EntityLiving> entities = new HashMap<>();
+    private final LabelTable labels;
+    private final List<EntityLiving>[] entities;
+    private final List<EntityLiving> allEntities = new ArrayList<>();
     private final List<EntityPlayer> involvedPlayers = new ArrayList<>();
     private int delayTicks = 0;
     
-    public EncounterContext(World world, BlockPos originPos) {
+    /**
+     * @param labels the encounter's label table; entities are stored by its slots
+     */
+    @SuppressWarnings("unchecked")
+    public EncounterContext(World world, BlockPos originPos, LabelTable labels) {
         this.world = world;
         this.originPos = originPos;
+        this.labels = labels;
+        this.entities = new List[labels.size()];
     }
     
-    public void addEntity(String label, EntityLiving entity) {
-        entities.put(label, entity);
+    /**
+     * Track a spawned entity. Several entities may share a label slot;
+     * unlabeled entities ({@link LabelTable#NONE}) are still tracked for cleanup.
+     */
+    public void addEntity(int slot, EntityLiving entity) {
+        allEntities.add(entity);
+        if (slot != LabelTable.NONE) {
+            if (entities[slot] == null) {
+                entities[slot] = new ArrayList<>(1);
+            }
+            entities[slot].add(entity);
+        }
+    }
+    
+    /**
+     * @return the first living entity in the slot, or the first one if none are alive
+     */
+    public EntityLiving getEntity(int slot) {
+        List<EntityLiving> labelled = slot != LabelTable.NONE ? entities[slot] : null;
+        if (labelled == null || labelled.isEmpty()) {
+            return null;
+        }
+        for (EntityLiving entity : labelled) {
+            if (!entity.isDead) {
+                return entity;
+            }
+        }
+        return labelled.get(0);
+    }
+    
+    public List<EntityLiving> getEntities(int slot) {
+        List<EntityLiving> labelled = slot != LabelTable.NONE ? entities[slot] : null;
+        return labelled != null ? labelled : Collections.<EntityLiving>emptyList();
+    }
+    
+    public List<EntityLiving> getEntities(String label) {
+        return getEntities(labels.slot(label));
     }
     
-    public EntityLiving getEntity(String label) {
-        return entities.get(label);
+    public LabelTable getLabels() {
+        return labels;
     }
     
     public Collection<EntityLiving> getAllEntities() {
-        return entities.values();
+        return allEntities;
     }
     
     public void addPlayer(EntityPlayer player) {
@@ -81,12 +124,13 @@ public class EncounterContext {
     
     public void cleanup() {
         // Clean up any remaining entities
-        for (EntityLiving entity : entities.values()) {
+        for (EntityLiving entity : allEntities) {
             if (!entity.isDead) {
                 entity.setDead();
             }
         }
-        entities.clear();
+        Arrays.fill(entities, null);
+        allEntities.clear();
         involvedPlayers.clear();
     }
 }
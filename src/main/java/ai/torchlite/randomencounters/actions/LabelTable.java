@@ -0,0 +1,53 @@
+package ai.torchlite.randomencounters.actions;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The spawn labels of one encounter, numbered when it is compiled. An
+ * {@link EncounterContext} stores its entities by slot, and compiled
+ * actions address labels by slot, so no label string is looked up while
+ * an encounter runs.
+ */
+public final class LabelTable {
+
+    /** Slot of unlabeled entities */
+    public static final int NONE = -1;
+
+    private final Map<String, Integer> slots = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+
+    /**
+     * @return the slot of {@code label}, assigning the next free one if it is new; {@link #NONE} for null
+     */
+    public int add(String label) {
+        if (label == null) {
+            return NONE;
+        }
+        Integer slot = slots.get(label);
+        if (slot == null) {
+            slot = names.size();
+            slots.put(label, slot);
+            names.add(label);
+        }
+        return slot;
+    }
+
+    /**
+     * @return the slot of {@code label}, or {@link #NONE} if it is null or not in the table
+     */
+    public int slot(String label) {
+        Integer slot = label != null ? slots.get(label) : null;
+        return slot != null ? slot : NONE;
+    }
+
+    public String getName(int slot) {
+        return names.get(slot);
+    }
+
+    public int size() {
+        return names.size();
+    }
+}
@@ -0,0 +1,100 @@
+package ai.torchlite.randomencounters.ai;
+
+import net.minecraft.entity.EntityCreature;
+import net.minecraft.entity.ai.EntityAIBase;
+
+/**
+ * Keeps a follower in its {@link Formation} slot. The mob steers straight at
+ * the slot with its move helper, which costs no pathfinding; the navigator is
+ * only used when the mob is stuck or has fallen too far behind.
+ */
+public class AIFollowFormation extends EntityAIBase {
+
+    /** Close enough to the slot to stand still */
+    private static final double ARRIVE_SQ = 1.5 * 1.5;
+    /** Beyond this, steering in a straight line is hopeless */
+    private static final double SEPARATED_SQ = 16.0 * 16.0;
+    /** Ticks between progress checks, and the least it must close in that time */
+    private static final int STUCK_CHECK_TICKS = 20;
+    private static final double MIN_PROGRESS_SQ = 0.5 * 0.5;
+    /** Ticks a fallback path is given before steering resumes */
+    private static final int FALLBACK_TICKS = 40;
+
+    private final EntityCreature mob;
+    private final Formation formation;
+    private final int slot;
+    private final double speed;
+
+    private int checkTicks = 0;
+    private double lastDistanceSq = Double.MAX_VALUE;
+    private int fallbackTicks = 0;
+
+    public AIFollowFormation(EntityCreature mob, Formation formation, int slot, double speed) {
+        this.mob = mob;
+        this.formation = formation;
+        this.slot = slot;
+        this.speed = speed;
+
+        setMutexBits(1); // MOVE flag
+    }
+
+    @Override
+    public boolean shouldExecute() {
+        if (mob.isBeingRidden() || mob.getAttackTarget() != null) return false;
+        return !formation.isLeader(slot) && formation.getLeader() != null;
+    }
+
+    @Override
+    public void startExecuting() {
+        checkTicks = 0;
+        lastDistanceSq = Double.MAX_VALUE;
+        fallbackTicks = 0;
+    }
+
+    @Override
+    public void resetTask() {
+        mob.getNavigator().clearPathEntity();
+    }
+
+    @Override
+    public void updateTask() {
+        EntityCreature leader = formation.getLeader();
+        if (leader == null || formation.isLeader(slot)) {
+            return;
+        }
+        double x = formation.slotX(leader, slot);
+        double y = leader.posY;
+        double z = formation.slotZ(leader, slot);
+        double distanceSq = mob.getDistanceSq(x, y, z);
+
+        if (fallbackTicks > 0) {
+            // Let the fallback path run unless it already brought us back
+            fallbackTicks--;
+            if (distanceSq > SEPARATED_SQ / 4 && !mob.getNavigator().noPath()) {
+                return;
+            }
+            fallbackTicks = 0;
+            mob.getNavigator().clearPathEntity();
+        }
+
+        if (distanceSq <= ARRIVE_SQ) {
+            lastDistanceSq = distanceSq;
+            return;
+        }
+
+        boolean stuck = false;
+        if (++checkTicks >= STUCK_CHECK_TICKS) {
+            checkTicks = 0;
+            stuck = lastDistanceSq - distanceSq < MIN_PROGRESS_SQ && distanceSq > ARRIVE_SQ * 4;
+            lastDistanceSq = distanceSq;
+        }
+
+        if (stuck || distanceSq > SEPARATED_SQ) {
+            if (mob.getNavigator().tryMoveToXYZ(x, y, z, speed)) {
+                fallbackTicks = FALLBACK_TICKS;
+                return;
+            }
+        }
+        mob.getMoveHelper().setMoveTo(x, y, z, speed);
+    }
+}
@@ -2,34 +2,44 @@ package ai.torchlite.randomencounters.ai;
 
 import net.minecraft.entity.EntityCreature;
 import net.minecraft.entity.ai.EntityAIBase;
-import net.minecraft.util.math.BlockPos;
-import ai.torchlite.randomencounters.config.json.EncounterConfig;
-
-import java.util.List;
 
+/**
+ * Walks a mob along a {@link RoutePlan}. Waypoint positions and paths come
+ * from the plan, which is shared by every mob of the encounter on the same
+ * route; a mob only asks for a new path when it reaches a waypoint or its
+ * navigator has run out of path.
+ */
 public class AIMoveToRoute extends EntityAIBase {
     
     private final EntityCreature mob;
-    private final List<EncounterConfig.Route.Waypoint> waypoints;
+    private final RoutePlan plan;
     private final double speed;
-    private final double arriveRadius;
+    private final double arriveRadiusSq;
     private final int maxTicks;
     private final boolean loop;
-    private final BlockPos origin;
+    private final int startWaypoint;
     
     private int currentWaypointIndex = 0;
     private int ticks = 0;
     private int repathDelay = 0;
     private boolean completed = false;
+    private Runnable onCompleted;
+    
+    public AIMoveToRoute(EntityCreature mob, RoutePlan plan, double speed, int maxTicks) {
+        this(mob, plan, speed, maxTicks, 0);
+    }
     
-    public AIMoveToRoute(EntityCreature mob, EncounterConfig.Route route, double speed, int maxTicks, BlockPos origin) {
+    /**
+     * @param startWaypoint the waypoint to head for first, e.g. where a fallen leader left off
+     */
+    public AIMoveToRoute(EntityCreature mob, RoutePlan plan, double speed, int maxTicks, int startWaypoint) {
         this.mob = mob;
-        this.waypoints = route.waypoints;
+        this.plan = plan;
         this.speed = speed;
-        this.arriveRadius = route.arriveRadius;
+        this.arriveRadiusSq = plan.getRoute().arriveRadius * plan.getRoute().arriveRadius;
         this.maxTicks = maxTicks;
-        this.loop = "loop".equals(route.mode);
-        this.origin = origin;
+        this.loop = "loop".equals(plan.getRoute().mode);
+        this.startWaypoint = Math.min(startWaypoint, Math.max(0, plan.size() - 1));
         
         setMutexBits(1); // MOVE flag
     }
@@ -37,7 +47,7 @@ public class AIMoveToRoute extends EntityAIBase {
     @Override
     public boolean shouldExecute() {
         if (mob.isBeingRidden() || mob.getAttackTarget() != null) return false;
-        return !completed && waypoints != null && !waypoints.isEmpty();
+        return !completed && plan.size() > 0;
     }
     
     @Override
@@ -51,7 +61,7 @@ public class AIMoveToRoute extends EntityAIBase {
     public void startExecuting() {
         ticks = 0;
         repathDelay = 0;
-        currentWaypointIndex = 0;
+        currentWaypointIndex = startWaypoint;
         completed = false;
         tryPath();
     }
@@ -66,70 +76,44 @@ public class AIMoveToRoute extends EntityAIBase {
         ticks++;
         
         // Check if we've arrived at current waypoint
-        BlockPos currentTarget = getCurrentWaypointPos();
-        if (currentTarget != null && mob.getDistanceSqToCenter(currentTarget) <= arriveRadius * arriveRadius) {
+        if (plan.distanceSq(mob, currentWaypointIndex) <= arriveRadiusSq) {
             // Move to next waypoint
             currentWaypointIndex++;
             
-            if (currentWaypointIndex >= waypoints.size()) {
+            if (currentWaypointIndex >= plan.size()) {
                 if (loop) {
                     currentWaypointIndex = 0; // Start over
                 } else {
                     completed = true; // Route complete
+                    if (onCompleted != null) {
+                        onCompleted.run();
+                    }
                     return;
                 }
             }
+            tryPath();
+            return;
         }
         
-        // Re-path periodically
+        // Re-path only when the navigator gave up or finished early
         if (repathDelay-- <= 0) {
-            repathDelay = 10 + mob.getRNG().nextInt(10); // re-path every ~0.5s
-            tryPath();
+            repathDelay = 10 + mob.getRNG().nextInt(10); // check every ~0.5s
+            if (mob.getNavigator().noPath()) {
+                tryPath();
+            }
         }
     }
     
     private void tryPath() {
-        BlockPos targetPos = getCurrentWaypointPos();
-        if (targetPos == null) {
-            return;
-        }
-        
-        double tx = targetPos.getX() + 0.5;
-        double tz = targetPos.getZ() + 0.5;
-        
-        // Choose a reasonable Y near the surface
-        int ty = mob.world.getHeight(targetPos).getY();
-        mob.getNavigator().tryMoveToXYZ(tx, ty, tz, speed);
+        plan.moveTo(mob, currentWaypointIndex, speed);
     }
     
-    private BlockPos getCurrentWaypointPos() {
-        if (waypoints == null || currentWaypointIndex >= waypoints.size()) {
-            return null;
-        }
-        
-        EncounterConfig.Route.Waypoint waypoint = waypoints.get(currentWaypointIndex);
-        
-        // Calculate position based on waypoint type
-        int x, y, z;
-        
-        if (waypoint.x != null && waypoint.y != null && waypoint.z != null) {
-            // Absolute position
-            x = waypoint.x;
-            y = waypoint.y;
-            z = waypoint.z;
-        } else {
-            // Relative to origin
-            x = origin.getX() + (waypoint.dx != null ? waypoint.dx : 0);
-            y = origin.getY() + (waypoint.dy != null ? waypoint.dy : 0);
-            z = origin.getZ() + (waypoint.dz != null ? waypoint.dz : 0);
-        }
-        
-        // Handle Y mode
-        if ("surface".equals(waypoint.yMode)) {
-            y = mob.world.getHeight(x, z);
-        }
-        
-        return new BlockPos(x, y, z);
+    /**
+     * Called once when a non-looping route reaches its last waypoint, so
+     * arrival triggers need no polling.
+     */
+    public void setOnCompleted(Runnable onCompleted) {
+        this.onCompleted = onCompleted;
     }
     
     public boolean isCompleted() {
@@ -0,0 +1,123 @@
+package ai.torchlite.randomencounters.ai;
+
+import net.minecraft.entity.EntityCreature;
+
+import java.util.List;
+
+/**
+ * A group moving behind one leader. Only the leader pathfinds (through
+ * {@link AIMoveToRoute}); every other member holds a slot in ranks behind
+ * it and steers there with {@link AIFollowFormation}. Slot offsets are
+ * computed once and only rotated by the leader's heading when read.
+ *
+ * If the leader dies, the first living follower takes over its route task
+ * at the waypoint the leader had reached.
+ *
+ * The runtime forms one for a moveToRoute behavior whose targets hold more
+ * than one creature, e.g. a label spawned from a group block. None of the
+ * bundled encounters does that yet: their routes each apply to a single
+ * mob, and bandit_group is only named by the spawn action, which does not
+ * spawn anything so far.
+ */
+public class Formation {
+
+    /** Members per rank behind the leader */
+    private static final int RANK_WIDTH = 3;
+    /** Blocks between neighbouring slots */
+    private static final double SPACING = 2.0;
+
+    /**
+     * Creates the route task for a (new) leader, starting at the given waypoint.
+     */
+    public interface LeaderTaskFactory {
+        AIMoveToRoute create(EntityCreature leader, int startWaypoint);
+    }
+
+    private final EntityCreature[] members;
+    /** Per member: offset to the leader's right, and behind it */
+    private final double[] lateral;
+    private final double[] back;
+    private final LeaderTaskFactory leaderTasks;
+    private final int taskPriority;
+    private int leader;
+    private AIMoveToRoute leaderTask;
+
+    /**
+     * @param members the group, leader first; at least one
+     */
+    public Formation(List<EntityCreature> members, LeaderTaskFactory leaderTasks, int taskPriority) {
+        this.members = members.toArray(new EntityCreature[0]);
+        this.lateral = new double[this.members.length];
+        this.back = new double[this.members.length];
+        this.leaderTasks = leaderTasks;
+        this.taskPriority = taskPriority;
+
+        // Slot 0 is the leader; the others fill ranks of RANK_WIDTH, centred behind it
+        for (int i = 1; i < this.members.length; i++) {
+            int slot = i - 1;
+            int rank = slot / RANK_WIDTH;
+            int rankSize = Math.min(RANK_WIDTH, this.members.length - 1 - rank * RANK_WIDTH);
+            int file = slot % RANK_WIDTH;
+            lateral[i] = (file - (rankSize - 1) / 2.0) * SPACING;
+            back[i] = (rank + 1) * SPACING;
+        }
+    }
+
+    /**
+     * Give the leader its route task and every follower its formation task.
+     */
+    public void start(double followSpeed) {
+        leaderTask = leaderTasks.create(members[leader], 0);
+        members[leader].tasks.addTask(taskPriority, leaderTask);
+        for (int i = 0; i < members.length; i++) {
+            if (i != leader) {
+                members[i].tasks.addTask(taskPriority, new AIFollowFormation(members[i], this, i, followSpeed));
+            }
+        }
+    }
+
+    /**
+     * @return the living leader, promoting a follower if the leader died; null once everyone is dead
+     */
+    public EntityCreature getLeader() {
+        if (!members[leader].isDead) {
+            return members[leader];
+        }
+        for (int i = 0; i < members.length; i++) {
+            if (!members[i].isDead) {
+                promote(i);
+                return members[i];
+            }
+        }
+        return null;
+    }
+
+    boolean isLeader(int slot) {
+        return slot == leader;
+    }
+
+    /**
+     * @return the x coordinate of {@code slot} behind the current leader
+     */
+    double slotX(EntityCreature leader, int slot) {
+        double yaw = Math.toRadians(leader.rotationYaw);
+        // Minecraft yaw 0 faces +z; the leader's right is -x at yaw 0
+        return leader.posX + Math.sin(yaw) * back[slot] - Math.cos(yaw) * lateral[slot];
+    }
+
+    /**
+     * @return the z coordinate of {@code slot} behind the current leader
+     */
+    double slotZ(EntityCreature leader, int slot) {
+        double yaw = Math.toRadians(leader.rotationYaw);
+        return leader.posZ - Math.cos(yaw) * back[slot] - Math.sin(yaw) * lateral[slot];
+    }
+
+    private void promote(int slot) {
+        int startWaypoint = leaderTask != null ? leaderTask.getCurrentWaypointIndex() : 0;
+        leader = slot;
+        // Its follower task goes idle now that it leads; its old slot stays empty
+        leaderTask = leaderTasks.create(members[slot], startWaypoint);
+        members[slot].tasks.addTask(taskPriority, leaderTask);
+    }
+}
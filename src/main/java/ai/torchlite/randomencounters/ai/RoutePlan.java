@@ -0,0 +1,220 @@
+package ai.torchlite.randomencounters.ai;
+
+import ai.torchlite.randomencounters.config.json.EncounterConfig;
+import ai.torchlite.randomencounters.encounters.spawning.ColumnHeightCache;
+import net.minecraft.entity.EntityCreature;
+import net.minecraft.pathfinding.Path;
+import net.minecraft.pathfinding.PathPoint;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+
+/**
+ * A route resolved for one encounter instance, shared by every mob that
+ * follows it. Waypoints are turned into block positions once (relative ones
+ * against the encounter's origin, {@code yMode: surface} ones against the
+ * cached column height), and the path to each waypoint is computed by the
+ * first mob that needs it and handed to the others.
+ *
+ * A cached path is dropped when a block inside its bounds changes; see
+ * {@link RoutePlanRegistry}. Must only be used from the server thread.
+ */
+public class RoutePlan {
+
+    /** A mob may take over a cached path if it stands this close to one of its points */
+    private static final double REUSE_DISTANCE_SQ = 4.0 * 4.0;
+
+    private final World world;
+    private final EncounterConfig.Route route;
+    private final BlockPos origin;
+    private final ColumnHeightCache heights;
+    private final int[] xs;
+    private final int[] ys;
+    private final int[] zs;
+    /** Height the navigator is sent to; the surface of the waypoint's column */
+    private final int[] pathYs;
+    private final boolean[] resolved;
+    private final Segment[] segments;
+
+    public RoutePlan(World world, EncounterConfig.Route route, BlockPos origin, ColumnHeightCache heights) {
+        this.world = world;
+        this.route = route;
+        this.origin = origin;
+        this.heights = heights;
+        int size = route.waypoints != null ? route.waypoints.size() : 0;
+        this.xs = new int[size];
+        this.ys = new int[size];
+        this.zs = new int[size];
+        this.pathYs = new int[size];
+        this.resolved = new boolean[size];
+        this.segments = new Segment[size];
+    }
+
+    public World getWorld() {
+        return world;
+    }
+
+    public EncounterConfig.Route getRoute() {
+        return route;
+    }
+
+    public int size() {
+        return xs.length;
+    }
+
+    /**
+     * @return the squared distance from {@code mob} to the center of waypoint {@code index}
+     */
+    public double distanceSq(EntityCreature mob, int index) {
+        resolve(index);
+        return mob.getDistanceSq(xs[index] + 0.5, ys[index] + 0.5, zs[index] + 0.5);
+    }
+
+    /**
+     * Send {@code mob} towards waypoint {@code index}, reusing the cached path
+     * when the mob is close to it and computing (and caching) one otherwise.
+     *
+     * @return whether the navigator accepted a path
+     */
+    public boolean moveTo(EntityCreature mob, int index, double speed) {
+        resolve(index);
+        Segment segment = segments[index];
+        if (segment != null) {
+            int start = segment.closestPoint(mob);
+            // A mob at the last point gets a fresh path; the cached one would end right away
+            if (start >= 0 && start < segment.points.length - 1) {
+                Path path = new Path(segment.points);
+                path.setCurrentPathIndex(start);
+                return mob.getNavigator().setPath(path, speed);
+            }
+        }
+
+        Path path = mob.getNavigator().getPathToXYZ(xs[index] + 0.5, pathYs[index], zs[index] + 0.5);
+        if (path == null) {
+            return false;
+        }
+        // Only complete paths are shared; a partial one depends on where this mob got stuck
+        if (path.getCurrentPathLength() > 0 && reaches(path, index)) {
+            segments[index] = Segment.of(path);
+        }
+        return mob.getNavigator().setPath(path, speed);
+    }
+
+    private boolean reaches(Path path, int index) {
+        PathPoint end = path.getFinalPathPoint();
+        int dx = end.x - xs[index];
+        int dz = end.z - zs[index];
+        return dx * dx + dz * dz <= 2;
+    }
+
+    /**
+     * Drop cached paths whose bounds contain {@code pos}.
+     */
+    void onBlockUpdate(BlockPos pos) {
+        for (int i = 0; i < segments.length; i++) {
+            if (segments[i] != null && segments[i].contains(pos)) {
+                segments[i] = null;
+            }
+        }
+    }
+
+    private void resolve(int index) {
+        if (resolved[index]) {
+            return;
+        }
+        EncounterConfig.Route.Waypoint waypoint = route.waypoints.get(index);
+        int x;
+        int y;
+        int z;
+        if (waypoint.x != null && waypoint.y != null && waypoint.z != null) {
+            // Absolute position
+            x = waypoint.x;
+            y = waypoint.y;
+            z = waypoint.z;
+        } else {
+            // Relative to origin
+            x = origin.getX() + (waypoint.dx != null ? waypoint.dx : 0);
+            y = origin.getY() + (waypoint.dy != null ? waypoint.dy : 0);
+            z = origin.getZ() + (waypoint.dz != null ? waypoint.dz : 0);
+        }
+
+        int surface = heights.getSurfaceY(world, x, z);
+        xs[index] = x;
+        zs[index] = z;
+        if (surface == ColumnHeightCache.UNLOADED) {
+            // Keep the configured height for now and resolve again once the column is loaded
+            ys[index] = y;
+            pathYs[index] = y;
+            return;
+        }
+        ys[index] = "surface".equals(waypoint.yMode) ? surface : y;
+        pathYs[index] = surface;
+        resolved[index] = true;
+    }
+
+    /**
+     * A computed path's points and the block bounds it depends on: the
+     * blocks it walks through plus the floor below and a block above.
+     */
+    private static final class Segment {
+        final PathPoint[] points;
+        final int minX;
+        final int minY;
+        final int minZ;
+        final int maxX;
+        final int maxY;
+        final int maxZ;
+
+        private Segment(PathPoint[] points, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+            this.points = points;
+            this.minX = minX;
+            this.minY = minY;
+            this.minZ = minZ;
+            this.maxX = maxX;
+            this.maxY = maxY;
+            this.maxZ = maxZ;
+        }
+
+        static Segment of(Path path) {
+            PathPoint[] points = new PathPoint[path.getCurrentPathLength()];
+            int minX = Integer.MAX_VALUE;
+            int minY = Integer.MAX_VALUE;
+            int minZ = Integer.MAX_VALUE;
+            int maxX = Integer.MIN_VALUE;
+            int maxY = Integer.MIN_VALUE;
+            int maxZ = Integer.MIN_VALUE;
+            for (int i = 0; i < points.length; i++) {
+                PathPoint point = path.getPathPointFromIndex(i);
+                points[i] = point;
+                minX = Math.min(minX, point.x);
+                minY = Math.min(minY, point.y);
+                minZ = Math.min(minZ, point.z);
+                maxX = Math.max(maxX, point.x);
+                maxY = Math.max(maxY, point.y);
+                maxZ = Math.max(maxZ, point.z);
+            }
+            return new Segment(points, minX - 1, minY - 1, minZ - 1, maxX + 1, maxY + 2, maxZ + 1);
+        }
+
+        boolean contains(BlockPos pos) {
+            return pos.getX() >= minX && pos.getX() <= maxX && pos.getY() >= minY && pos.getY() <= maxY
+                && pos.getZ() >= minZ && pos.getZ() <= maxZ;
+        }
+
+        /**
+         * @return the index of the point nearest to {@code mob}, or -1 if none is close enough to reuse the path
+         */
+        int closestPoint(EntityCreature mob) {
+            int closest = -1;
+            double closestSq = REUSE_DISTANCE_SQ;
+            for (int i = 0; i < points.length; i++) {
+                PathPoint point = points[i];
+                double distanceSq = mob.getDistanceSq(point.x + 0.5, point.y, point.z + 0.5);
+                if (distanceSq <= closestSq) {
+                    closest = i;
+                    closestSq = distanceSq;
+                }
+            }
+            return closest;
+        }
+    }
+}
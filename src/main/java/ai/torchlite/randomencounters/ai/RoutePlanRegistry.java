@@ -0,0 +1,111 @@
+package ai.torchlite.randomencounters.ai;
+
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.util.SoundCategory;
+import net.minecraft.util.SoundEvent;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.IWorldEventListener;
+import net.minecraft.world.World;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Live {@link RoutePlan}s by world. Listens to block changes in every world
+ * that has a plan, so cached paths crossing a changed block are dropped, and
+ * stops listening once a world's last plan is released.
+ *
+ * Must only be used from the server thread.
+ */
+public class RoutePlanRegistry implements IWorldEventListener {
+
+    private final Map<World, List<RoutePlan>> plans = new HashMap<>();
+
+    public void register(RoutePlan plan) {
+        List<RoutePlan> inWorld = plans.get(plan.getWorld());
+        if (inWorld == null) {
+            inWorld = new ArrayList<>();
+            plans.put(plan.getWorld(), inWorld);
+            plan.getWorld().addEventListener(this);
+        }
+        inWorld.add(plan);
+    }
+
+    public void release(RoutePlan plan) {
+        List<RoutePlan> inWorld = plans.get(plan.getWorld());
+        if (inWorld != null && inWorld.remove(plan) && inWorld.isEmpty()) {
+            plans.remove(plan.getWorld());
+            plan.getWorld().removeEventListener(this);
+        }
+    }
+
+    public void clear() {
+        for (World world : plans.keySet()) {
+            world.removeEventListener(this);
+        }
+        plans.clear();
+    }
+
+    @Override
+    public void notifyBlockUpdate(World world, BlockPos pos, IBlockState oldState, IBlockState newState, int flags) {
+        List<RoutePlan> inWorld = plans.get(world);
+        if (inWorld != null) {
+            for (int i = 0; i < inWorld.size(); i++) {
+                inWorld.get(i).onBlockUpdate(pos);
+            }
+        }
+    }
+
+    // ---- Not needed for route invalidation ----
+
+    @Override
+    public void notifyLightSet(BlockPos pos) {
+    }
+
+    @Override
+    public void markBlockRangeForRenderUpdate(int x1, int y1, int z1, int x2, int y2, int z2) {
+    }
+
+    @Override
+    public void playSoundToAllNearExcept(EntityPlayer player, SoundEvent sound, SoundCategory category,
+                                         double x, double y, double z, float volume, float pitch) {
+    }
+
+    @Override
+    public void playRecord(SoundEvent sound, BlockPos pos) {
+    }
+
+    @Override
+    public void spawnParticle(int particleId, boolean ignoreRange, double x, double y, double z,
+                              double xSpeed, double ySpeed, double zSpeed, int... parameters) {
+    }
+
+    @Override
+    public void spawnParticle(int particleId, boolean ignoreRange, boolean minimiseLevel, double x, double y, double z,
+                              double xSpeed, double ySpeed, double zSpeed, int... parameters) {
+    }
+
+    @Override
+    public void onEntityAdded(Entity entity) {
+    }
+
+    @Override
+    public void onEntityRemoved(Entity entity) {
+    }
+
+    @Override
+    public void broadcastSound(int soundId, BlockPos pos, int data) {
+    }
+
+    @Override
+    public void playEvent(EntityPlayer player, int type, BlockPos pos, int data) {
+    }
+
+    @Override
+    public void sendBlockBreakProgress(int breakerId, BlockPos pos, int progress) {
+    }
+}
@@ -11,6 +11,7 @@ import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.text.TextComponentString;
 import net.minecraft.util.text.TextFormatting;
 import javax.annotation.Nullable;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
@@ -305,15 +306,15 @@ public class EncounterCommand extends CommandBase {
             TextFormatting.GRAY + "------------------------"));
         
         // Show loaded JSON encounters
-        if (RandomEncounters.jsonLoader != null && RandomEncounters.jsonLoader.getConfig() != null 
-            && RandomEncounters.jsonLoader.getConfig().encounters != null) {
+        ai.torchlite.randomencounters.config.json.EncounterConfig config = RandomEncounters.encounterManager.getConfig();
+        if (config != null && config.encounters != null) {
             
             sender.sendMessage(new TextComponentString(
                 TextFormatting.AQUA + "Loaded JSON Encounters:"));
             
             int enabledCount = 0;
             for (ai.torchlite.randomencounters.config.json.EncounterConfig.Encounter enc : 
-                 RandomEncounters.jsonLoader.getConfig().encounters) {
+                 config.encounters) {
                 if (enc.enabled) {
                     enabledCount++;
                     sender.sendMessage(new TextComponentString(
@@ -355,9 +356,11 @@ public class EncounterCommand extends CommandBase {
             throw new CommandException("commands.generic.permission");
         }
         
-        // Note: Actual config reloading would require re-initializing ConfigHandler
+        // Parsing and compiling happen off-thread; the outcome is reported once the new config is swapped in
         sender.sendMessage(new TextComponentString(
-            TextFormatting.GREEN + "Configuration reloaded! (Restart recommended for all changes to take effect)"));
+            TextFormatting.YELLOW + "Reloading encounter configuration..."));
+        RandomEncounters.encounterManager.requestReload(message -> sender.sendMessage(new TextComponentString(
+            (message.startsWith("Reloaded") ? TextFormatting.GREEN : TextFormatting.RED) + message)));
     }
     
     @Override
@@ -365,7 +368,9 @@ public class EncounterCommand extends CommandBase {
         if (args.length == 1) {
             return getListOfStringsMatchingLastWord(args, "help", "status", "cooldown", "trigger", "force", "test", "enable", "disable", "config", "types", "reload");
         } else if (args.length == 2 && "test".equals(args[0])) {
-            return getListOfStringsMatchingLastWord(args, "mob", "loot", "event", "npc", "friendly", "army", "json");
+            List<String> options = new ArrayList<>(RandomEncounters.encounterManager.getEncounterIds());
+            options.add("random");
+            return getListOfStringsMatchingLastWord(args, options);
         }
         return Collections.emptyList();
     }
@@ -0,0 +1,133 @@
+package ai.torchlite.randomencounters.config;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Watches the mod's config directory (including subdirectories such as
+ * {@code encounters/}) on a daemon thread and runs a callback once JSON
+ * files stop changing for a short quiet period, so an editor saving a file
+ * in several writes, or a whole pack being copied in, triggers one reload.
+ */
+public class ConfigWatcher {
+
+    private static final long QUIET_MILLIS = 500;
+
+    private final Path root;
+    private final Runnable onChange;
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+    private WatchService watchService;
+    private Thread thread;
+
+    public ConfigWatcher(File root, Runnable onChange) {
+        this.root = root.toPath();
+        this.onChange = onChange;
+    }
+
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            registerTree(root);
+        } catch (IOException e) {
+            System.err.println("RandomEncounters: Cannot watch " + root + " for changes: " + e.getMessage());
+            return;
+        }
+        thread = new Thread(this::run, "RandomEncounters config watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        if (thread == null) {
+            return;
+        }
+        try {
+            watchService.close();
+        } catch (IOException ignored) {
+            // Closing only fails if it was already closed
+        }
+        thread.interrupt();
+        thread = null;
+    }
+
+    private void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                boolean relevant = drain(watchService.take());
+
+                // Wait until the directory has been quiet for a moment
+                WatchKey key;
+                while ((key = watchService.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    relevant |= drain(key);
+                }
+
+                if (relevant) {
+                    try {
+                        onChange.run();
+                    } catch (RuntimeException e) {
+                        System.err.println("RandomEncounters: Config reload failed: " + e);
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Stopped
+        }
+    }
+
+    /**
+     * @return whether any event concerned a JSON file or a new directory
+     */
+    private boolean drain(WatchKey key) {
+        Path dir = directories.get(key);
+        boolean relevant = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                relevant = true;
+                continue;
+            }
+            Path changed = dir != null ? dir.resolve((Path) event.context()) : null;
+            if (changed == null) {
+                continue;
+            }
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(changed)) {
+                try {
+                    registerTree(changed);
+                } catch (IOException e) {
+                    System.err.println("RandomEncounters: Cannot watch " + changed + ": " + e.getMessage());
+                }
+                relevant = true;
+            } else if (changed.getFileName().toString().endsWith(".json")) {
+                relevant = true;
+            }
+        }
+        if (!key.reset()) {
+            directories.remove(key);
+        }
+        return relevant;
+    }
+
+    private void registerTree(Path start) throws IOException {
+        try (Stream<Path> paths = Files.walk(start)) {
+            for (Path dir : (Iterable<Path>) paths.filter(Files::isDirectory)::iterator) {
+                WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                directories.put(key, dir);
+            }
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package ai.torchlite.randomencounters.config.json;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonPrimitive;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary cache of the merged config directory, stored next to the JSON files.
+ *
+ * The cache is keyed by a SHA-256 over the mod version and the path and bytes
+ * of every input file. When the key matches, the merged config (and the load
+ * errors it was produced with) is decoded from one memory-mapped read and no
+ * JSON is tokenized; otherwise the directory is loaded with
+ * {@link ParallelConfigLoader} and the cache is rewritten.
+ *
+ * Layout: header (magic, format, 32-byte key), string table, load errors,
+ * file count, the file of each encounter, then the config as a tagged tree whose strings are indexes
+ * into the table.
+ */
+public class ConfigCache {
+
+    public static final String FILE_NAME = "encounters.cache";
+
+    private static final int MAGIC = 0x52454331; // "REC1"
+    private static final int FORMAT = 2;
+    private static final int HEADER_SIZE = 8 + 32;
+
+    private static final byte NULL = 0;
+    private static final byte TRUE = 1;
+    private static final byte FALSE = 2;
+    private static final byte LONG = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte STRING = 5;
+    private static final byte ARRAY = 6;
+    private static final byte OBJECT = 7;
+
+    private static final Gson GSON = new Gson();
+
+    private final File configDir;
+    private final File cacheFile;
+    private final String modVersion;
+
+    public ConfigCache(File configDir, String modVersion) {
+        this.configDir = configDir;
+        this.cacheFile = new File(configDir, FILE_NAME);
+        this.modVersion = modVersion;
+    }
+
+    /**
+     * Load from the cache if it matches the directory, otherwise parse the
+     * directory with {@code loader} and refresh the cache.
+     */
+    public ParallelConfigLoader.Result load(ParallelConfigLoader loader) {
+        byte[] key;
+        try {
+            key = computeKey();
+        } catch (IOException e) {
+            System.err.println("RandomEncounters: Cannot hash config files, skipping cache: " + e.getMessage());
+            return loader.load(configDir);
+        }
+
+        ParallelConfigLoader.Result cached = read(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        ParallelConfigLoader.Result result = loader.load(configDir);
+        // The loader reads the files again; if one was saved in between, the result may not match the key
+        try {
+            if (!MessageDigest.isEqual(key, computeKey())) {
+                return result;
+            }
+        } catch (IOException e) {
+            return result;
+        }
+        write(key, result);
+        return result;
+    }
+
+    // ---- Key ----
+
+    private byte[] computeKey() throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        digest.update((modVersion + '\0' + FORMAT + '\0').getBytes(StandardCharsets.UTF_8));
+        for (File file : ParallelConfigLoader.listInputs(configDir)) {
+            byte[] bytes = Files.readAllBytes(file.toPath());
+            digest.update((relative(file) + '\0' + bytes.length + '\0').getBytes(StandardCharsets.UTF_8));
+            digest.update(bytes);
+        }
+        return digest.digest();
+    }
+
+    private String relative(File file) {
+        return configDir.toPath().relativize(file.toPath()).toString().replace(File.separatorChar, '/');
+    }
+
+    // ---- Reading ----
+
+    /**
+     * @return the cached result, or null if there is no cache or it is stale or unreadable
+     */
+    private ParallelConfigLoader.Result read(byte[] key) {
+        if (!cacheFile.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ)) {
+            // Check the key with a plain read so a stale cache is never mapped
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // keep reading
+            }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != FORMAT) {
+                return null;
+            }
+            byte[] storedKey = new byte[32];
+            header.get(storedKey);
+            if (!Arrays.equals(storedKey, key)) {
+                return null;
+            }
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.position(HEADER_SIZE);
+            return decode(buffer);
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException
+                 | IndexOutOfBoundsException | JsonParseException e) {
+            System.err.println("RandomEncounters: Ignoring unreadable config cache: " + e);
+            return null;
+        }
+    }
+
+    private ParallelConfigLoader.Result decode(ByteBuffer buffer) {
+        String[] strings = new String[readVarInt(buffer)];
+        for (int i = 0; i < strings.length; i++) {
+            byte[] bytes = new byte[readVarInt(buffer)];
+            buffer.get(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        int errorCount = readVarInt(buffer);
+        List<ParallelConfigLoader.LoadError> errors = new ArrayList<>(errorCount);
+        for (int i = 0; i < errorCount; i++) {
+            File file = new File(configDir, strings[readVarInt(buffer)]);
+            String message = strings[readVarInt(buffer)];
+            errors.add(new ParallelConfigLoader.LoadError(file, message, buffer.get() != 0));
+        }
+        int fileCount = readVarInt(buffer);
+        int originCount = readVarInt(buffer);
+        Map<String, File> origins = new HashMap<>();
+        for (int i = 0; i < originCount; i++) {
+            String id = strings[readVarInt(buffer)];
+            origins.put(id, new File(configDir, strings[readVarInt(buffer)]));
+        }
+
+        EncounterConfig config = GSON.fromJson(readElement(buffer, strings), EncounterConfig.class);
+        if (config.encounters == null) {
+            config.encounters = new ArrayList<>();
+        }
+        return new ParallelConfigLoader.Result(config, Collections.unmodifiableList(errors), fileCount,
+            Collections.unmodifiableMap(origins));
+    }
+
+    private static JsonElement readElement(ByteBuffer buffer, String[] strings) {
+        byte tag = buffer.get();
+        switch (tag) {
+            case NULL:
+                return JsonNull.INSTANCE;
+            case TRUE:
+                return new JsonPrimitive(Boolean.TRUE);
+            case FALSE:
+                return new JsonPrimitive(Boolean.FALSE);
+            case LONG:
+                return new JsonPrimitive(buffer.getLong());
+            case DOUBLE:
+                return new JsonPrimitive(buffer.getDouble());
+            case STRING:
+                return new JsonPrimitive(strings[readVarInt(buffer)]);
+            case ARRAY: {
+                int size = readVarInt(buffer);
+                JsonArray array = new JsonArray();
+                for (int i = 0; i < size; i++) {
+                    array.add(readElement(buffer, strings));
+                }
+                return array;
+            }
+            case OBJECT: {
+                int size = readVarInt(buffer);
+                JsonObject object = new JsonObject();
+                for (int i = 0; i < size; i++) {
+                    String name = strings[readVarInt(buffer)];
+                    object.add(name, readElement(buffer, strings));
+                }
+                return object;
+            }
+            default:
+                throw new IllegalArgumentException("unknown tag " + tag);
+        }
+    }
+
+    private static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+            if (shift > 28) {
+                throw new IllegalArgumentException("malformed varint");
+            }
+        }
+    }
+
+    // ---- Writing ----
+
+    private void write(byte[] key, ParallelConfigLoader.Result result) {
+        Map<String, Integer> stringIndex = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream(64 * 1024);
+        File temp = new File(cacheFile.getPath() + ".tmp");
+        try {
+            DataOutputStream body = new DataOutputStream(bodyBytes);
+            writeVarInt(body, result.getErrors().size());
+            for (ParallelConfigLoader.LoadError error : result.getErrors()) {
+                writeVarInt(body, intern(relative(error.file), stringIndex, strings));
+                writeVarInt(body, intern(error.message, stringIndex, strings));
+                body.writeByte(error.fileSkipped ? 1 : 0);
+            }
+            writeVarInt(body, result.getFileCount());
+            writeVarInt(body, result.getOrigins().size());
+            for (Map.Entry<String, File> origin : result.getOrigins().entrySet()) {
+                writeVarInt(body, intern(origin.getKey(), stringIndex, strings));
+                writeVarInt(body, intern(relative(origin.getValue()), stringIndex, strings));
+            }
+            writeElement(body, GSON.toJsonTree(result.getConfig()), stringIndex, strings);
+
+            ByteArrayOutputStream fileBytes = new ByteArrayOutputStream(bodyBytes.size() + 16 * strings.size() + HEADER_SIZE);
+            DataOutputStream out = new DataOutputStream(fileBytes);
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.write(key);
+            writeVarInt(out, strings.size());
+            for (String string : strings) {
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                writeVarInt(out, bytes.length);
+                out.write(bytes);
+            }
+            bodyBytes.writeTo(out);
+
+            Files.write(temp.toPath(), fileBytes.toByteArray());
+            Files.move(temp.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // A stale cache is harmless: its key no longer matches
+            System.err.println("RandomEncounters: Failed to write config cache: " + e.getMessage());
+            temp.delete();
+        }
+    }
+
+    private static void writeElement(DataOutputStream out, JsonElement element, Map<String, Integer> stringIndex,
+                                     List<String> strings) throws IOException {
+        if (element == null || element.isJsonNull()) {
+            out.writeByte(NULL);
+        } else if (element.isJsonArray()) {
+            JsonArray array = element.getAsJsonArray();
+            out.writeByte(ARRAY);
+            writeVarInt(out, array.size());
+            for (JsonElement child : array) {
+                writeElement(out, child, stringIndex, strings);
+            }
+        } else if (element.isJsonObject()) {
+            JsonObject object = element.getAsJsonObject();
+            out.writeByte(OBJECT);
+            writeVarInt(out, object.size());
+            for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+                writeVarInt(out, intern(entry.getKey(), stringIndex, strings));
+                writeElement(out, entry.getValue(), stringIndex, strings);
+            }
+        } else {
+            JsonPrimitive primitive = element.getAsJsonPrimitive();
+            if (primitive.isBoolean()) {
+                out.writeByte(primitive.getAsBoolean() ? TRUE : FALSE);
+            } else if (primitive.isNumber()) {
+                // Numbers parsed into JsonElement fields are lazy; their literal decides long vs double
+                Long integral = parseIntegral(primitive.getAsString());
+                if (integral != null) {
+                    out.writeByte(LONG);
+                    out.writeLong(integral);
+                } else {
+                    out.writeByte(DOUBLE);
+                    out.writeDouble(primitive.getAsDouble());
+                }
+            } else {
+                out.writeByte(STRING);
+                writeVarInt(out, intern(primitive.getAsString(), stringIndex, strings));
+            }
+        }
+    }
+
+    private static Long parseIntegral(String literal) {
+        try {
+            return Long.valueOf(literal);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static int intern(String string, Map<String, Integer> stringIndex, List<String> strings) {
+        Integer index = stringIndex.get(string);
+        if (index == null) {
+            index = strings.size();
+            strings.add(string);
+            stringIndex.put(string, index);
+        }
+        return index;
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+}
@@ -0,0 +1,140 @@
+package ai.torchlite.randomencounters.config.json;
+
+import com.google.gson.JsonElement;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Deduplicates a loaded {@link EncounterConfig} in place: equal strings and
+ * structurally identical blocks, lists and maps (e.g. the same action or
+ * equipment copied into many encounter files) end up as one shared instance.
+ *
+ * The graph is canonicalized bottom-up, so once an object's children are
+ * shared, two objects are identical exactly when their field values are the
+ * same instances; the lookup key is the class plus those values. Map entry
+ * order is part of a map's identity. The result must be treated as
+ * read-only, which the rest of the mod already does after loading.
+ */
+public final class ConfigInterner {
+
+    private static final String MODEL_CLASS_PREFIX = EncounterConfig.class.getName();
+
+    private final Map<Object, Object> pool = new HashMap<>();
+    private final Map<Class<?>, Field[]> fieldsByClass = new HashMap<>();
+    private int shared;
+
+    private ConfigInterner() {
+    }
+
+    /**
+     * @return how many strings, blocks, lists and maps were replaced by an equal shared instance
+     */
+    public static int intern(EncounterConfig config) {
+        if (config == null) {
+            return 0;
+        }
+        ConfigInterner interner = new ConfigInterner();
+        // The root itself is never shared, only what hangs off it
+        interner.canonicalizeFields(config);
+        return interner.shared;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object canonical(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof String || value instanceof JsonElement) {
+            // JsonElement equality is structural already
+            return pooled(value, value);
+        }
+        if (value instanceof List) {
+            List<Object> list = (List<Object>) value;
+            for (int i = 0; i < list.size(); i++) {
+                list.set(i, canonical(list.get(i)));
+            }
+            return pooled(list, list);
+        }
+        if (value instanceof Map) {
+            Map<Object, Object> map = (Map<Object, Object>) value;
+            Map<Object, Object> rebuilt = new LinkedHashMap<>(Math.max(4, map.size() * 4 / 3 + 1));
+            List<Object> key = new ArrayList<>(map.size() * 2 + 1);
+            key.add(Map.class);
+            for (Map.Entry<Object, Object> entry : map.entrySet()) {
+                Object entryKey = canonical(entry.getKey());
+                Object entryValue = canonical(entry.getValue());
+                rebuilt.put(entryKey, entryValue);
+                key.add(entryKey);
+                key.add(entryValue);
+            }
+            return pooled(key, rebuilt);
+        }
+        if (value.getClass().getName().startsWith(MODEL_CLASS_PREFIX)) {
+            return pooled(canonicalizeFields(value), value);
+        }
+        return value;
+    }
+
+    /**
+     * Replace every field value with its canonical instance.
+     *
+     * @return the object's structural key
+     */
+    private List<Object> canonicalizeFields(Object object) {
+        Field[] fields = fieldsOf(object.getClass());
+        Object[] key = new Object[fields.length + 1];
+        key[0] = object.getClass();
+        try {
+            for (int i = 0; i < fields.length; i++) {
+                Field field = fields[i];
+                Object value = field.get(object);
+                if (!field.getType().isPrimitive()) {
+                    Object canonical = canonical(value);
+                    if (canonical != value) {
+                        field.set(object, canonical);
+                    }
+                    value = canonical;
+                }
+                key[i + 1] = value;
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Cannot intern " + object.getClass().getName(), e);
+        }
+        return Arrays.asList(key);
+    }
+
+    private Object pooled(Object key, Object value) {
+        Object existing = pool.putIfAbsent(key, value);
+        if (existing != null) {
+            shared++;
+            return existing;
+        }
+        return value;
+    }
+
+    private Field[] fieldsOf(Class<?> type) {
+        Field[] fields = fieldsByClass.get(type);
+        if (fields == null) {
+            List<Field> collected = new ArrayList<>();
+            for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers) && !field.isSynthetic()) {
+                        field.setAccessible(true);
+                        collected.add(field);
+                    }
+                }
+            }
+            fields = collected.toArray(new Field[0]);
+            fieldsByClass.put(type, fields);
+        }
+        return fields;
+    }
+}
@@ -0,0 +1,314 @@
+package ai.torchlite.randomencounters.config.json;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Loads the whole config directory with one parse task per file on a
+ * {@link ForkJoinPool}:
+ * <ul>
+ *   <li>{@code *.json} in the directory itself are block libraries
+ *       (defaults, globalVariables, blocks and optionally encounters)</li>
+ *   <li>{@code encounters/**.json} hold one encounter object, or an array of them</li>
+ * </ul>
+ * Files are bound straight from a streaming {@link JsonReader}, so no file is
+ * held as a JSON tree. Results are merged in path order, independent of which
+ * task finished first: later libraries override earlier keys, and the first
+ * definition of an encounter id wins. A broken file is reported in
+ * {@link Result#getErrors()} and skipped; it never aborts the load.
+ */
+public class ParallelConfigLoader {
+
+    public static final String ENCOUNTER_DIRECTORY = "encounters";
+
+    private static final Gson GSON = new Gson();
+
+    private final ForkJoinPool pool;
+
+    public ParallelConfigLoader() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public ParallelConfigLoader(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public static final class LoadError {
+        public final File file;
+        public final String message;
+        /** True if the whole file could not be read, false for a problem with one entry */
+        public final boolean fileSkipped;
+
+        LoadError(File file, String message, boolean fileSkipped) {
+            this.file = file;
+            this.message = message;
+            this.fileSkipped = fileSkipped;
+        }
+
+        @Override
+        public String toString() {
+            return file.getName() + ": " + message;
+        }
+    }
+
+    public static final class Result {
+        private final EncounterConfig config;
+        private final List<LoadError> errors;
+        private final int fileCount;
+        private final Map<String, File> origins;
+
+        Result(EncounterConfig config, List<LoadError> errors, int fileCount, Map<String, File> origins) {
+            this.config = config;
+            this.errors = errors;
+            this.fileCount = fileCount;
+            this.origins = origins;
+        }
+
+        public EncounterConfig getConfig() {
+            return config;
+        }
+
+        public List<LoadError> getErrors() {
+            return errors;
+        }
+
+        public int getFileCount() {
+            return fileCount;
+        }
+
+        /**
+         * @return the file each merged encounter was read from, by encounter id
+         */
+        public Map<String, File> getOrigins() {
+            return origins;
+        }
+
+        /**
+         * @return true if at least one file could not be parsed and was left out
+         */
+        public boolean hasSkippedFiles() {
+            for (LoadError error : errors) {
+                if (error.fileSkipped) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * What one file contributed; exactly one of the fields is set.
+     */
+    private static final class Parsed {
+        final File file;
+        EncounterConfig library;
+        List<EncounterConfig.Encounter> encounters;
+        String error;
+
+        Parsed(File file) {
+            this.file = file;
+        }
+    }
+
+    /**
+     * @return every file {@link #load} reads, in merge order
+     */
+    static List<File> listInputs(File configDir) {
+        List<File> files = new ArrayList<>(listJson(configDir));
+        collectJson(new File(configDir, ENCOUNTER_DIRECTORY), files);
+        return files;
+    }
+
+    public Result load(File configDir) {
+        List<File> libraries = listJson(configDir);
+        List<File> encounterFiles = new ArrayList<>();
+        collectJson(new File(configDir, ENCOUNTER_DIRECTORY), encounterFiles);
+
+        List<ForkJoinTask<Parsed>> tasks = new ArrayList<>(libraries.size() + encounterFiles.size());
+        for (File file : libraries) {
+            tasks.add(pool.submit((Callable<Parsed>) () -> parseLibrary(file)));
+        }
+        for (File file : encounterFiles) {
+            tasks.add(pool.submit((Callable<Parsed>) () -> parseEncounters(file)));
+        }
+
+        EncounterConfig merged = new EncounterConfig();
+        merged.encounters = new ArrayList<>();
+        List<LoadError> errors = new ArrayList<>();
+        Map<String, File> encounterOrigins = new HashMap<>();
+
+        // Join in submission (path) order so the merge is deterministic
+        for (ForkJoinTask<Parsed> task : tasks) {
+            Parsed parsed = task.join();
+            if (parsed.error != null) {
+                errors.add(new LoadError(parsed.file, parsed.error, true));
+                continue;
+            }
+            if (parsed.library != null) {
+                mergeLibrary(merged, parsed.library);
+                addEncounters(merged, parsed.library.encounters, parsed.file, encounterOrigins, errors);
+            } else {
+                addEncounters(merged, parsed.encounters, parsed.file, encounterOrigins, errors);
+            }
+        }
+
+        return new Result(merged, Collections.unmodifiableList(errors), tasks.size(),
+            Collections.unmodifiableMap(encounterOrigins));
+    }
+
+    // ---- Parsing (pool threads) ----
+
+    private static Parsed parseLibrary(File file) {
+        Parsed parsed = new Parsed(file);
+        try (JsonReader reader = open(file)) {
+            parsed.library = GSON.fromJson(reader, EncounterConfig.class);
+            if (parsed.library == null) {
+                parsed.error = "file is empty";
+            }
+        } catch (IOException | JsonParseException | IllegalStateException e) {
+            parsed.error = describe(e);
+        }
+        return parsed;
+    }
+
+    private static Parsed parseEncounters(File file) {
+        Parsed parsed = new Parsed(file);
+        try (JsonReader reader = open(file)) {
+            List<EncounterConfig.Encounter> encounters = new ArrayList<>(1);
+            if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    encounters.add(GSON.<EncounterConfig.Encounter>fromJson(reader, EncounterConfig.Encounter.class));
+                }
+                reader.endArray();
+            } else {
+                encounters.add(GSON.<EncounterConfig.Encounter>fromJson(reader, EncounterConfig.Encounter.class));
+            }
+            parsed.encounters = encounters;
+        } catch (IOException | JsonParseException | IllegalStateException e) {
+            parsed.error = describe(e);
+        }
+        return parsed;
+    }
+
+    private static JsonReader open(File file) throws IOException {
+        JsonReader reader = new JsonReader(Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8));
+        reader.setLenient(true);
+        return reader;
+    }
+
+    private static String describe(Exception e) {
+        Throwable cause = e.getCause() != null && e.getMessage() == null ? e.getCause() : e;
+        return cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+    }
+
+    // ---- Merging (calling thread) ----
+
+    private static void mergeLibrary(EncounterConfig into, EncounterConfig library) {
+        if (library.version != null) {
+            into.version = library.version;
+        }
+        if (library.defaults != null) {
+            into.defaults = library.defaults;
+        }
+        if (library.globalVariables != null) {
+            if (into.globalVariables == null) {
+                into.globalVariables = new LinkedHashMap<>();
+            }
+            into.globalVariables.putAll(library.globalVariables);
+        }
+        if (library.blocks != null) {
+            if (into.blocks == null) {
+                into.blocks = new EncounterConfig.Blocks();
+            }
+            into.blocks.selectors = putAll(into.blocks.selectors, library.blocks.selectors);
+            into.blocks.routes = putAll(into.blocks.routes, library.blocks.routes);
+            into.blocks.spawns = putAll(into.blocks.spawns, library.blocks.spawns);
+            into.blocks.behaviors = putAll(into.blocks.behaviors, library.blocks.behaviors);
+            into.blocks.actions = putAll(into.blocks.actions, library.blocks.actions);
+        }
+    }
+
+    private static <V> Map<String, V> putAll(Map<String, V> into, Map<String, V> from) {
+        if (from == null) {
+            return into;
+        }
+        if (into == null) {
+            into = new LinkedHashMap<>();
+        }
+        into.putAll(from);
+        return into;
+    }
+
+    private static void addEncounters(EncounterConfig into, List<EncounterConfig.Encounter> encounters, File file,
+                                      Map<String, File> origins, List<LoadError> errors) {
+        if (encounters == null) {
+            return;
+        }
+        for (EncounterConfig.Encounter encounter : encounters) {
+            if (encounter == null) {
+                continue;
+            }
+            if (encounter.id == null) {
+                errors.add(new LoadError(file, "encounter without an id", false));
+                continue;
+            }
+            File previous = origins.putIfAbsent(encounter.id, file);
+            if (previous != null) {
+                errors.add(new LoadError(file, "duplicate encounter id " + encounter.id
+                    + " (already defined in " + previous.getName() + ")", false));
+                continue;
+            }
+            into.encounters.add(encounter);
+        }
+    }
+
+    // ---- Discovery ----
+
+    private static List<File> listJson(File dir) {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".json"));
+        if (files == null) {
+            return Collections.emptyList();
+        }
+        Arrays.sort(files);
+        List<File> result = new ArrayList<>(files.length);
+        for (File file : files) {
+            if (file.isFile()) {
+                result.add(file);
+            }
+        }
+        return result;
+    }
+
+    private static void collectJson(File dir, List<File> out) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            if (file.isDirectory()) {
+                collectJson(file, out);
+            } else if (file.getName().endsWith(".json")) {
+                out.add(file);
+            }
+        }
+    }
+}
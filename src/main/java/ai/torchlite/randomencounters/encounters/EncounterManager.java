@@ -4,68 +4,264 @@ import net.minecraft.entity.player.EntityPlayer;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.World;
 import ai.torchlite.randomencounters.config.ConfigHandler;
-import ai.torchlite.randomencounters.config.json.JsonEncounterLoader;
+import ai.torchlite.randomencounters.config.ConfigWatcher;
+import ai.torchlite.randomencounters.config.json.ConfigCache;
 import ai.torchlite.randomencounters.config.json.EncounterConfig;
+import ai.torchlite.randomencounters.config.json.ParallelConfigLoader;
+import ai.torchlite.randomencounters.encounters.runtime.EncounterRuntime;
+import ai.torchlite.randomencounters.encounters.selection.EncounterSelectionIndex;
+import ai.torchlite.randomencounters.encounters.selection.SelectionSnapshot;
 import ai.torchlite.randomencounters.encounters.types.JsonEncounter;
 import ai.torchlite.randomencounters.hologram.HologramSpeech;
+import net.minecraftforge.common.DimensionManager;
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 public class EncounterManager {
     
-    private final Map<UUID, Long> playerCooldowns = new ConcurrentHashMap<>();
-    private final Map<UUID, Integer> dailyEncounterCounts = new ConcurrentHashMap<>();
-    private final Map<UUID, Long> lastDayCheck = new ConcurrentHashMap<>();
+    /** Cooldown table slots examined per tick when evicting expired chunk cooldowns */
+    private static final int COOLDOWN_EXPIRY_BUDGET = 64;
+    private static final int JOURNAL_FLUSH_TICKS = 20;
+    private static final int JOURNAL_COMPACT_CHECK_TICKS = 6000;
+    
+    private final PlayerStateStore playerState = new PlayerStateStore();
+    private final Map<UUID, PlayerStateJournal.Record> offlineState = new HashMap<>();
+    private PlayerStateJournal journal;
+    private int journalTicks;
     private final Random random = new Random();
     
-    private final List<IEncounter> availableEncounters = new ArrayList<>();
-    private JsonEncounterLoader jsonLoader;
+    private final SelectionSnapshot snapshot = new SelectionSnapshot();
+    private final EncounterRuntime runtime = new EncounterRuntime();
+    private final EncounterScheduler scheduler = new EncounterScheduler();
+    private final File configDirectory;
+    
+    // Current configuration; replaced as a whole on reload
+    private volatile EncounterSnapshot current;
+    private final AtomicReference<PendingReload> pendingReload = new AtomicReference<>();
+    private ExecutorService reloadExecutor;
+    private ConfigWatcher watcher;
     
-    public EncounterManager() {
+    /**
+     * Result of a reload built off the server thread, waiting to be installed on it.
+     */
+    private static final class PendingReload {
+        final EncounterSnapshot snapshot; // null if the reload was rejected
+        final List<String> messages;
+        final Consumer<String> report;
+        
+        PendingReload(EncounterSnapshot snapshot, List<String> messages, Consumer<String> report) {
+            this.snapshot = snapshot;
+            this.messages = messages;
+            this.report = report;
+        }
+        
+        /**
+         * @return this reload, also reporting to whoever was waiting for {@code older}
+         */
+        PendingReload supersede(PendingReload older) {
+            if (older == null || older.report == null) {
+                return this;
+            }
+            return new PendingReload(snapshot, messages, report != null ? older.report.andThen(report) : older.report);
+        }
+    }
+    
+    public EncounterManager(File configDirectory) {
+        this.configDirectory = configDirectory;
         initializeEncounters();
     }
     
     private void initializeEncounters() {
-        // Get JSON loader from main class
-        jsonLoader = ai.torchlite.randomencounters.RandomEncounters.jsonLoader;
+        // Compile the configuration loaded by the main class; the selection index waits for the registries
+        EncounterConfig config = ai.torchlite.randomencounters.RandomEncounters.encounterConfig;
+        current = EncounterSnapshot.build(1, config, ai.torchlite.randomencounters.RandomEncounters.encounterOrigins,
+            runtime, false);
+        for (String problem : current.getProblems()) {
+            System.err.println("RandomEncounters: " + problem);
+        }
+        runtime.getRegistry().configure(config != null ? config.defaults : null, current.getEncounters());
         
-        // Load JSON encounters
-        if (!loadJsonEncounters()) {
+        if (current.getEncounters().isEmpty()) {
             System.err.println("RandomEncounters: WARNING - No encounters loaded from JSON!");
             System.err.println("RandomEncounters: Please check your config/randomencounters/encounters.json file");
         } else {
-            System.out.println("RandomEncounters: Loaded " + availableEncounters.size() + " encounter(s) from JSON configuration");
+            System.out.println("RandomEncounters: Loaded " + current.getEncounters().size() + " encounter(s) from JSON configuration");
         }
     }
     
-    private boolean loadJsonEncounters() {
-        try {
-            if (jsonLoader == null || jsonLoader.getConfig() == null) {
-                return false;
+    /**
+     * Build the selection index once biome and dimension registries are final,
+     * then start watching the config directory for changes.
+     */
+    public void onServerStarting() {
+        EncounterSnapshot linked = current.withSelectionIndex();
+        // Spawn blocks naming no living entity are only found once the entity registry is final
+        List<String> problems = linked.getProblems();
+        for (String problem : problems.subList(current.getProblems().size(), problems.size())) {
+            System.err.println("RandomEncounters: " + problem);
+        }
+        current = linked;
+        openJournal();
+        
+        reloadExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "RandomEncounters config reload");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (configDirectory != null) {
+            watcher = new ConfigWatcher(configDirectory, () -> requestReload(null));
+            watcher.start();
+        }
+    }
+    
+    /**
+     * Reload the config directory in the background. The new configuration
+     * is installed on the server thread during a later tick; {@code report}
+     * (may be null) then receives the outcome, also on the server thread.
+     */
+    public void requestReload(Consumer<String> report) {
+        ExecutorService executor = reloadExecutor;
+        if (executor == null || configDirectory == null) {
+            if (report != null) {
+                report.accept("Reloading is only available while the server is running");
             }
-            
-            EncounterConfig config = jsonLoader.getConfig();
-            if (config.encounters == null || config.encounters.isEmpty()) {
-                return false;
+            return;
+        }
+        try {
+            // A newer reload replaces one not yet installed; its requester gets the newer outcome
+            executor.execute(() -> {
+                PendingReload built = buildReload(report);
+                pendingReload.getAndUpdate(older -> built.supersede(older));
+            });
+        } catch (RejectedExecutionException e) {
+            // Server is stopping
+        }
+    }
+    
+    /**
+     * Runs on the reload thread. A configuration with unreadable files or
+     * invalid expressions is rejected so a typo never unloads encounters.
+     */
+    private PendingReload buildReload(Consumer<String> report) {
+        long start = System.nanoTime();
+        List<String> messages = new ArrayList<>();
+        ParallelConfigLoader.Result result = new ConfigCache(configDirectory,
+            ai.torchlite.randomencounters.RandomEncounters.VERSION).load(new ParallelConfigLoader());
+        for (ParallelConfigLoader.LoadError error : result.getErrors()) {
+            messages.add(error.toString());
+        }
+        if (result.hasSkippedFiles()) {
+            messages.add("Reload aborted, keeping the current configuration");
+            return new PendingReload(null, messages, report);
+        }
+        
+        EncounterSnapshot built = EncounterSnapshot.build(current.getGeneration() + 1, result.getConfig(),
+            result.getOrigins(), runtime, true);
+        messages.addAll(built.getProblems());
+        if (!built.getProblems().isEmpty()) {
+            messages.add("Reload aborted, keeping the current configuration");
+            return new PendingReload(null, messages, report);
+        }
+        
+        messages.add("Reloaded " + built.getEncounters().size() + " encounter(s) from " + result.getFileCount()
+            + " file(s) in " + (System.nanoTime() - start) / 1000000L + " ms");
+        return new PendingReload(built, messages, report);
+    }
+    
+    private void installPendingReload() {
+        PendingReload reload = pendingReload.getAndSet(null);
+        if (reload == null) {
+            return;
+        }
+        
+        EncounterSnapshot next = reload.snapshot;
+        if (next != null) {
+            EncounterSelectionIndex previousIndex = current.getSelectionIndex();
+            if (previousIndex != null && next.getSelectionIndex() != null) {
+                next.getSelectionIndex().inheritCooldowns(previousIndex);
             }
-            
-            // Load JSON encounters
-            for (EncounterConfig.Encounter encounterDef : config.encounters) {
-                if (encounterDef.enabled) {
-                    JsonEncounter jsonEncounter = new JsonEncounter(encounterDef, jsonLoader);
-                    availableEncounters.add(jsonEncounter);
-                }
+            EncounterConfig config = next.getConfig();
+            runtime.getRegistry().configure(config != null ? config.defaults : null, next.getEncounters());
+            // Running encounters keep the JsonEncounter, and so the config, they started with
+            current = next;
+            ai.torchlite.randomencounters.RandomEncounters.encounterConfig = config;
+        }
+        
+        for (String message : reload.messages) {
+            if (reload.report != null) {
+                reload.report.accept(message);
             }
-            
-            return !availableEncounters.isEmpty();
-            
-        } catch (Exception e) {
-            System.err.println("RandomEncounters: Failed to load JSON encounters: " + e.getMessage());
-            e.printStackTrace();
-            return false;
+            System.out.println("RandomEncounters: " + message);
         }
     }
     
+    public EncounterSnapshot getSnapshot() {
+        return current;
+    }
+    
+    public EncounterConfig getConfig() {
+        return current.getConfig();
+    }
+    
+    /**
+     * Replay saved cooldowns and daily counts from the world's player journal.
+     */
+    private void openJournal() {
+        File saveDir = DimensionManager.getCurrentSaveRootDirectory();
+        if (saveDir == null) {
+            return;
+        }
+        
+        journal = new PlayerStateJournal(new File(saveDir, "randomencounters/players.journal"));
+        offlineState.clear();
+        try {
+            long start = System.nanoTime();
+            offlineState.putAll(journal.replay());
+            System.out.println("RandomEncounters: Loaded state of " + offlineState.size() + " player(s) in "
+                + (System.nanoTime() - start) / 1000000L + " ms");
+        } catch (IOException e) {
+            System.err.println("RandomEncounters: Failed to read player journal: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Remove all live encounter entities before the worlds are saved.
+     */
+    public void onServerStopping() {
+        if (watcher != null) {
+            watcher.stop();
+            watcher = null;
+        }
+        if (reloadExecutor != null) {
+            reloadExecutor.shutdownNow();
+            reloadExecutor = null;
+        }
+        pendingReload.set(null);
+        // Players of this session must not stay scheduled into the next integrated server
+        scheduler.clear();
+        runtime.shutdown();
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+        offlineState.clear();
+        playerState.clear();
+    }
+    
+    public EncounterRuntime getRuntime() {
+        return runtime;
+    }
+    
+    public EncounterScheduler getScheduler() {
+        return scheduler;
+    }
+    
     public boolean shouldTriggerEncounter(EntityPlayer player) {
         UUID playerId = player.getUniqueID();
         long currentTime = System.currentTimeMillis();
@@ -75,13 +271,20 @@ public class EncounterManager {
             return false;
         }
         
-        // Check cooldown
-        if (isOnCooldown(playerId, currentTime)) {
+        // Check active encounter limits (global and for the player's chunk)
+        BlockPos playerPos = player.getPosition();
+        if (!runtime.getRegistry().hasCapacity(player.world.provider.getDimension(),
+                playerPos.getX() >> 4, playerPos.getZ() >> 4)) {
+            return false;
+        }
+        
+        // Check cooldown and daily limit from the player's record
+        int slot = playerState.slotOf(playerId);
+        if (isOnCooldown(slot, currentTime)) {
             return false;
         }
         
-        // Check daily limit
-        if (hasReachedDailyLimit(playerId, currentTime)) {
+        if (hasReachedDailyLimit(slot, currentTime)) {
             return false;
         }
         
@@ -99,28 +302,14 @@ public class EncounterManager {
         return random.nextInt(100) < ConfigHandler.baseEncounterChance;
     }
     
-    private boolean isOnCooldown(UUID playerId, long currentTime) {
-        Long lastEncounter = playerCooldowns.get(playerId);
-        if (lastEncounter == null) {
-            return false;
-        }
-        return (currentTime - lastEncounter) < (ConfigHandler.encounterCooldown * 1000L);
+    private boolean isOnCooldown(int slot, long currentTime) {
+        long lastEncounter = playerState.getLastEncounter(slot);
+        return lastEncounter != 0 && (currentTime - lastEncounter) < (ConfigHandler.encounterCooldown * 1000L);
     }
     
-    private boolean hasReachedDailyLimit(UUID playerId, long currentTime) {
-        // Check if it's a new day
-        Long lastDay = lastDayCheck.get(playerId);
-        long currentDay = currentTime / (24 * 60 * 60 * 1000L); // Days since epoch
-        
-        if (lastDay == null || lastDay < currentDay) {
-            // Reset daily count for new day
-            dailyEncounterCounts.put(playerId, 0);
-            lastDayCheck.put(playerId, currentDay);
-            return false;
-        }
-        
-        Integer count = dailyEncounterCounts.get(playerId);
-        return count != null && count >= ConfigHandler.maxEncountersPerDay;
+    private boolean hasReachedDailyLimit(int slot, long currentTime) {
+        // The count resets by itself once the stored day is over
+        return playerState.getDailyCount(slot, currentTime) >= ConfigHandler.maxEncountersPerDay;
     }
     
     private boolean isValidDistance(EntityPlayer player) {
@@ -151,20 +340,23 @@ public class EncounterManager {
     }
     
     public void triggerEncounter(EntityPlayer player) {
-        if (availableEncounters.isEmpty()) {
+        EncounterSelectionIndex selectionIndex = current.getSelectionIndex();
+        if (selectionIndex == null) {
             return;
         }
         
+        // Weighted pick among encounters whose selector accepts the player right now
+        JsonEncounter encounter = selectionIndex.select(snapshot.capture(player), random, runtime.getRegistry());
+        if (encounter == null) {
+            return;
+        }
+        selectionIndex.recordTriggered(encounter, snapshot);
+        
         UUID playerId = player.getUniqueID();
         long currentTime = System.currentTimeMillis();
         
         // Update cooldown and daily count
-        playerCooldowns.put(playerId, currentTime);
-        dailyEncounterCounts.put(playerId, 
-            dailyEncounterCounts.getOrDefault(playerId, 0) + 1);
-        
-        // Select random encounter
-        IEncounter encounter = availableEncounters.get(random.nextInt(availableEncounters.size()));
+        recordEncounter(playerId, currentTime);
         
         // Calculate difficulty
         double difficulty = calculateDifficulty(player);
@@ -178,30 +370,13 @@ public class EncounterManager {
         long currentTime = System.currentTimeMillis();
         
         // Update cooldown and daily count for testing
-        playerCooldowns.put(playerId, currentTime);
-        dailyEncounterCounts.put(playerId, 
-            dailyEncounterCounts.getOrDefault(playerId, 0) + 1);
-        
-        IEncounter encounter = null;
-        
-        // Find matching encounter by ID or type from loaded JSON encounters
-        for (IEncounter enc : availableEncounters) {
-            if (enc instanceof JsonEncounter) {
-                JsonEncounter jsonEnc = (JsonEncounter) enc;
-                String encId = jsonEnc.getEncounterId();
-                
-                // Match by ID or by type keyword
-                if (encId != null) {
-                    // Check if the encounter ID contains the type keyword
-                    if (encId.toLowerCase().contains(encounterType.toLowerCase()) ||
-                        encounterType.equalsIgnoreCase(encId) ||
-                        encounterType.equalsIgnoreCase(encId.replace("enc_", ""))) {
-                        encounter = enc;
-                        break;
-                    }
-                }
-            }
-        }
+        recordEncounter(playerId, currentTime);
+        
+        // Find matching encounter by exact ID, or by ID / ID word prefix
+        EncounterSnapshot loaded = current;
+        EncounterSelectionIndex selectionIndex = loaded.getSelectionIndex();
+        List<JsonEncounter> availableEncounters = loaded.getEncounters();
+        IEncounter encounter = selectionIndex != null ? selectionIndex.findById(encounterType) : null;
         
         // If no specific match found and "random" or "json" was requested, pick a random one
         if (encounter == null && ("random".equalsIgnoreCase(encounterType) || "json".equalsIgnoreCase(encounterType))) {
@@ -242,24 +417,95 @@ public class EncounterManager {
         return Math.max(0.1, difficulty); // Minimum difficulty of 0.1
     }
     
-    public void cleanupOldData() {
-        long currentTime = System.currentTimeMillis();
-        long dayAgo = currentTime - (24 * 60 * 60 * 1000L);
-        
-        // Remove old cooldowns (older than 1 day)
-        playerCooldowns.entrySet().removeIf(entry -> entry.getValue() < dayAgo);
+    /**
+     * Stop checking the player and drop their cooldown and daily count once they are offline.
+     */
+    public void onPlayerLoggedOut(UUID playerId) {
+        scheduler.removePlayer(playerId);
+        int slot = playerState.slotOf(playerId);
+        if (slot >= 0) {
+            offlineState.put(playerId, new PlayerStateJournal.Record(playerId, playerState.getLastEncounter(slot),
+                playerState.getDayEpoch(slot), playerState.getStoredDailyCount(slot)));
+            playerState.remove(playerId);
+        }
+    }
+    
+    /**
+     * Schedule the player's checks and bring back the cooldown and daily count saved when they last left.
+     */
+    public void onPlayerLoggedIn(UUID playerId) {
+        scheduler.addPlayer(playerId);
+        PlayerStateJournal.Record record = offlineState.remove(playerId);
+        if (record != null) {
+            playerState.restore(playerState.acquire(playerId), record.lastEncounter, record.dayEpoch, record.dailyCount);
+        }
+    }
+    
+    private void recordEncounter(UUID playerId, long currentTime) {
+        int slot = playerState.acquire(playerId);
+        playerState.recordEncounter(slot, currentTime);
+        if (journal != null) {
+            journal.append(playerId, currentTime, playerState.getDayEpoch(slot), playerState.getStoredDailyCount(slot));
+        }
+    }
+    
+    private void tickJournal() {
+        if (journal == null) {
+            return;
+        }
+        journalTicks++;
+        if (journalTicks % JOURNAL_FLUSH_TICKS == 0) {
+            journal.flush();
+        }
+        if (journalTicks % JOURNAL_COMPACT_CHECK_TICKS == 0
+            && journal.shouldCompact(offlineState.size() + playerState.size())) {
+            // Records whose cooldown and day are both over carry no state; leave them out
+            long now = System.currentTimeMillis();
+            long cooldownMillis = ConfigHandler.encounterCooldown * 1000L;
+            long today = now / PlayerStateStore.DAY_MILLIS;
+            List<PlayerStateJournal.Record> live = new ArrayList<>(offlineState.size() + playerState.size());
+            for (Iterator<PlayerStateJournal.Record> it = offlineState.values().iterator(); it.hasNext(); ) {
+                PlayerStateJournal.Record record = it.next();
+                if (now - record.lastEncounter >= cooldownMillis && record.dayEpoch != today) {
+                    it.remove();
+                } else {
+                    live.add(record);
+                }
+            }
+            for (UUID playerId : playerState.getPlayers()) {
+                int slot = playerState.slotOf(playerId);
+                live.add(new PlayerStateJournal.Record(playerId, playerState.getLastEncounter(slot),
+                    playerState.getDayEpoch(slot), playerState.getStoredDailyCount(slot)));
+            }
+            journal.compact(live);
+        }
     }
     
     public void tick() {
         // Tick hologram speech system
         HologramSpeech.tickHolograms();
         
+        // Advance live encounter timers (waits, triggers, despawns)
+        runtime.tick();
+        
+        // Hand recorded player state to the journal writer
+        tickJournal();
+        
+        // Swap in a configuration reloaded in the background
+        installPendingReload();
+        
+        // Evict a bounded number of expired chunk cooldowns
+        EncounterSelectionIndex selectionIndex = current.getSelectionIndex();
+        if (selectionIndex != null) {
+            selectionIndex.expireCooldowns(System.currentTimeMillis(), COOLDOWN_EXPIRY_BUDGET);
+        }
+        
         // Other per-tick operations could go here
     }
     
     public int getRemainingCooldown(UUID playerId) {
-        Long lastEncounter = playerCooldowns.get(playerId);
-        if (lastEncounter == null) {
+        long lastEncounter = playerState.getLastEncounter(playerState.slotOf(playerId));
+        if (lastEncounter == 0) {
             return 0;
         }
         
@@ -268,6 +514,11 @@ public class EncounterManager {
     }
     
     public int getDailyEncounterCount(UUID playerId) {
-        return dailyEncounterCounts.getOrDefault(playerId, 0);
+        return playerState.getDailyCount(playerState.slotOf(playerId), System.currentTimeMillis());
+    }
+    
+    public List<String> getEncounterIds() {
+        EncounterSelectionIndex selectionIndex = current.getSelectionIndex();
+        return selectionIndex != null ? selectionIndex.getEncounterIds() : Collections.<String>emptyList();
     }
 }
@@ -0,0 +1,98 @@
+package ai.torchlite.randomencounters.encounters;
+
+import ai.torchlite.randomencounters.RandomEncounters;
+import ai.torchlite.randomencounters.config.ConfigHandler;
+import net.minecraft.entity.player.EntityPlayerMP;
+import net.minecraft.server.MinecraftServer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Central encounter scheduler driven once per server tick.
+ * Online players are spread over a time wheel with one slot per tick of the
+ * check interval, so each tick only checks the players in its slot instead of
+ * counting ticks for every player.
+ */
+public class EncounterScheduler {
+
+    public static final int CHECK_INTERVAL_TICKS = 1200; // 1 minute
+
+    private final List<List<UUID>> slots = new ArrayList<>(CHECK_INTERVAL_TICKS);
+    private final Map<UUID, Integer> playerSlots = new HashMap<>();
+    private int currentSlot = 0;
+
+    public EncounterScheduler() {
+        for (int i = 0; i < CHECK_INTERVAL_TICKS; i++) {
+            slots.add(new ArrayList<UUID>(2));
+        }
+    }
+
+    public void addPlayer(UUID playerId) {
+        if (playerSlots.containsKey(playerId)) {
+            return;
+        }
+
+        int slot = findLeastLoadedSlot();
+        slots.get(slot).add(playerId);
+        playerSlots.put(playerId, slot);
+    }
+
+    public void removePlayer(UUID playerId) {
+        Integer slot = playerSlots.remove(playerId);
+        if (slot != null) {
+            slots.get(slot).remove(playerId);
+        }
+    }
+
+    public void clear() {
+        for (List<UUID> slot : slots) {
+            slot.clear();
+        }
+        playerSlots.clear();
+    }
+
+    /**
+     * Must be called exactly once per server tick.
+     */
+    public void tick(MinecraftServer server) {
+        EncounterManager encounterManager = RandomEncounters.encounterManager;
+        if (encounterManager == null || server == null) {
+            return;
+        }
+
+        List<UUID> due = slots.get(currentSlot);
+        currentSlot = (currentSlot + 1) % CHECK_INTERVAL_TICKS;
+
+        if (ConfigHandler.enableRandomEncounters && !due.isEmpty()) {
+            for (int i = 0; i < due.size(); i++) {
+                EntityPlayerMP player = server.getPlayerList().getPlayerByUUID(due.get(i));
+                if (player != null && encounterManager.shouldTriggerEncounter(player)) {
+                    encounterManager.triggerEncounter(player);
+                }
+            }
+        }
+
+        // Tick encounter manager systems once per server tick
+        encounterManager.tick();
+    }
+
+    private int findLeastLoadedSlot() {
+        // Scan forward from the current position; on ties the slot furthest
+        // away wins, so a new player waits close to a full interval.
+        int best = currentSlot;
+        int bestSize = Integer.MAX_VALUE;
+        for (int i = 0; i < CHECK_INTERVAL_TICKS; i++) {
+            int slot = (currentSlot + i) % CHECK_INTERVAL_TICKS;
+            int size = slots.get(slot).size();
+            if (size <= bestSize) {
+                best = slot;
+                bestSize = size;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,130 @@
+package ai.torchlite.randomencounters.encounters;
+
+import ai.torchlite.randomencounters.config.json.ConfigInterner;
+import ai.torchlite.randomencounters.config.json.EncounterConfig;
+import ai.torchlite.randomencounters.encounters.runtime.EncounterRuntime;
+import ai.torchlite.randomencounters.encounters.selection.EncounterSelectionIndex;
+import ai.torchlite.randomencounters.encounters.spawning.EntityFactoryRegistry;
+import ai.torchlite.randomencounters.encounters.types.JsonEncounter;
+import ai.torchlite.randomencounters.expression.ExpressionException;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One loaded configuration: the merged config, its compiled encounters and
+ * the selection index over them. Immutable once built, so it can be built on
+ * a reload thread and published to the server thread by swapping a single
+ * reference. Running encounters keep the {@link JsonEncounter} (and through
+ * it the config) they were started from, so a reload never changes them.
+ */
+public final class EncounterSnapshot {
+
+    private final int generation;
+    private final EncounterConfig config;
+    private final List<JsonEncounter> encounters;
+    private final EncounterSelectionIndex selectionIndex;
+    private final List<String> problems;
+
+    private EncounterSnapshot(int generation, EncounterConfig config, List<JsonEncounter> encounters,
+                              EncounterSelectionIndex selectionIndex, List<String> problems) {
+        this.generation = generation;
+        this.config = config;
+        this.encounters = encounters;
+        this.selectionIndex = selectionIndex;
+        this.problems = problems;
+    }
+
+    /**
+     * Intern {@code config} and compile every enabled encounter of it.
+     * Encounters with invalid expressions, dangling block references or,
+     * once entities are linked, spawn blocks naming no living entity are
+     * left out and listed in {@link #getProblems()}.
+     *
+     * @param buildIndex whether the biome, dimension and entity registries are ready for
+     *                   {@link EncounterSelectionIndex#build} and entity factories
+     */
+    public static EncounterSnapshot build(int generation, EncounterConfig config, Map<String, File> origins,
+                                          EncounterRuntime runtime, boolean buildIndex) {
+        List<JsonEncounter> encounters = new ArrayList<>();
+        List<String> problems = new ArrayList<>();
+        ConfigInterner.intern(config);
+        if (config != null && config.encounters != null) {
+            for (EncounterConfig.Encounter encounterDef : config.encounters) {
+                if (encounterDef.enabled) {
+                    try {
+                        encounters.add(new JsonEncounter(encounterDef, config, origins.get(encounterDef.id), runtime));
+                    } catch (ExpressionException e) {
+                        problems.add("Skipping encounter " + encounterDef.id + ": " + e.getMessage());
+                    }
+                }
+            }
+        }
+        if (buildIndex) {
+            linkEntities(encounters, problems);
+        }
+        List<JsonEncounter> frozen = Collections.unmodifiableList(encounters);
+        return new EncounterSnapshot(generation, config, frozen,
+            buildIndex ? EncounterSelectionIndex.build(frozen) : null,
+            Collections.unmodifiableList(problems));
+    }
+
+    /**
+     * @return this snapshot with entity factories linked and its selection index built, e.g. once
+     *         the server starts; encounters that fail to link are left out and added to the problems
+     */
+    public EncounterSnapshot withSelectionIndex() {
+        List<JsonEncounter> linked = new ArrayList<>(encounters);
+        List<String> allProblems = new ArrayList<>(problems);
+        linkEntities(linked, allProblems);
+        List<JsonEncounter> frozen = Collections.unmodifiableList(linked);
+        return new EncounterSnapshot(generation, config, frozen, EncounterSelectionIndex.build(frozen),
+            Collections.unmodifiableList(allProblems));
+    }
+
+    /**
+     * Link entity factories, which need the final entity registry.
+     */
+    private static void linkEntities(List<JsonEncounter> encounters, List<String> problems) {
+        EntityFactoryRegistry factories = new EntityFactoryRegistry();
+        for (Iterator<JsonEncounter> it = encounters.iterator(); it.hasNext(); ) {
+            JsonEncounter encounter = it.next();
+            try {
+                encounter.getCompiled().linkEntities(factories);
+            } catch (ExpressionException e) {
+                problems.add("Skipping encounter " + encounter.getEncounterId() + ": " + e.getMessage());
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Increases with every successful reload.
+     */
+    public int getGeneration() {
+        return generation;
+    }
+
+    public EncounterConfig getConfig() {
+        return config;
+    }
+
+    public List<JsonEncounter> getEncounters() {
+        return encounters;
+    }
+
+    /**
+     * @return the selection index, or null before the server has started
+     */
+    public EncounterSelectionIndex getSelectionIndex() {
+        return selectionIndex;
+    }
+
+    public List<String> getProblems() {
+        return problems;
+    }
+}
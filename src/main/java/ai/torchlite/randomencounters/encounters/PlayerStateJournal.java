@@ -0,0 +1,284 @@
+package ai.torchlite.randomencounters.encounters;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only binary journal of per-player encounter state, kept in the
+ * world save so cooldowns and daily counts survive restarts.
+ *
+ * The file is a 16-byte header followed by fixed 40-byte records (UUID,
+ * last encounter, day epoch, daily count, checksum); the last record for a
+ * player wins. The server thread only copies records into an in-memory
+ * buffer; {@link #flush()} hands the bytes to a single writer thread, so no
+ * file I/O ever happens on a tick. {@link #compact} rewrites the file from
+ * a snapshot of the live records on the same writer thread, which keeps it
+ * ordered with the appends around it.
+ *
+ * Appending, flushing and compacting must be called from the server thread.
+ */
+public class PlayerStateJournal {
+
+    public static final int RECORD_SIZE = 40;
+    private static final int HEADER_SIZE = 16;
+    private static final int MAGIC = 0x52454a31; // "REJ1"
+    private static final int VERSION = 1;
+
+    private final File file;
+    private final ExecutorService writer;
+    private ByteBuffer pending = ByteBuffer.allocate(64 * RECORD_SIZE);
+    private FileChannel channel; // only touched by the writer thread
+    private long appendedRecords;
+
+    public static final class Record {
+        public final UUID playerId;
+        public final long lastEncounter;
+        public final long dayEpoch;
+        public final int dailyCount;
+
+        public Record(UUID playerId, long lastEncounter, long dayEpoch, int dailyCount) {
+            this.playerId = playerId;
+            this.lastEncounter = lastEncounter;
+            this.dayEpoch = dayEpoch;
+            this.dailyCount = dailyCount;
+        }
+    }
+
+    public PlayerStateJournal(File file) {
+        this.file = file;
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "RandomEncounters journal writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Read every valid record, latest per player. A torn record at the end
+     * (e.g. after a crash) and records failing their checksum are skipped.
+     * Must be called before the first append.
+     */
+    public Map<UUID, Record> replay() throws IOException {
+        Map<UUID, Record> records = new HashMap<>();
+        if (!file.isFile()) {
+            return records;
+        }
+
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (bytes.length < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            System.err.println("RandomEncounters: Ignoring unreadable player journal " + file);
+            return records;
+        }
+        buffer.position(HEADER_SIZE);
+
+        int corrupt = 0;
+        while (buffer.remaining() >= RECORD_SIZE) {
+            long most = buffer.getLong();
+            long least = buffer.getLong();
+            long lastEncounter = buffer.getLong();
+            long dayEpoch = buffer.getLong();
+            int dailyCount = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (checksum != checksum(most, least, lastEncounter, dayEpoch, dailyCount)) {
+                corrupt++;
+                continue;
+            }
+            UUID playerId = new UUID(most, least);
+            records.put(playerId, new Record(playerId, lastEncounter, dayEpoch, dailyCount));
+        }
+        appendedRecords = (bytes.length - HEADER_SIZE) / RECORD_SIZE;
+
+        if (corrupt > 0 || buffer.remaining() > 0) {
+            System.err.println("RandomEncounters: Skipped " + corrupt + " corrupt record(s) and "
+                + buffer.remaining() + " trailing byte(s) in " + file);
+        }
+        return records;
+    }
+
+    /**
+     * Queue one player's state. Only copies 40 bytes; nothing is written until {@link #flush()}.
+     */
+    public void append(UUID playerId, long lastEncounter, long dayEpoch, int dailyCount) {
+        if (pending.remaining() < RECORD_SIZE) {
+            ByteBuffer grown = ByteBuffer.allocate(pending.capacity() * 2);
+            pending.flip();
+            grown.put(pending);
+            pending = grown;
+        }
+        writeRecord(pending, playerId, lastEncounter, dayEpoch, dailyCount);
+        appendedRecords++;
+    }
+
+    /**
+     * Hand the queued records to the writer thread.
+     */
+    public void flush() {
+        if (pending.position() == 0) {
+            return;
+        }
+        final byte[] bytes = Arrays.copyOf(pending.array(), pending.position());
+        pending.clear();
+        writer.execute(() -> {
+            try {
+                FileChannel out = openForAppend();
+                ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+            } catch (IOException e) {
+                System.err.println("RandomEncounters: Failed to write player journal: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Whether the file holds enough superseded records to be worth rewriting.
+     */
+    public boolean shouldCompact(int liveRecords) {
+        return appendedRecords > 1024 && appendedRecords > liveRecords * 4L;
+    }
+
+    /**
+     * Replace the file with exactly {@code records}. Records still queued are
+     * dropped, so the snapshot must already include them.
+     */
+    public void compact(Iterable<Record> records) {
+        pending.clear();
+        int count = 0;
+        ByteBuffer snapshot = ByteBuffer.allocate(HEADER_SIZE + 64 * RECORD_SIZE);
+        writeHeader(snapshot);
+        for (Record record : records) {
+            if (snapshot.remaining() < RECORD_SIZE) {
+                ByteBuffer grown = ByteBuffer.allocate(snapshot.capacity() * 2);
+                snapshot.flip();
+                grown.put(snapshot);
+                snapshot = grown;
+            }
+            writeRecord(snapshot, record.playerId, record.lastEncounter, record.dayEpoch, record.dailyCount);
+            count++;
+        }
+        appendedRecords = count;
+
+        final ByteBuffer bytes = (ByteBuffer) snapshot.flip();
+        final int written = count;
+        writer.execute(() -> {
+            File temp = new File(file.getPath() + ".tmp");
+            try {
+                closeChannel();
+                createParent();
+                try (FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    while (bytes.hasRemaining()) {
+                        out.write(bytes);
+                    }
+                    out.force(true);
+                }
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+                System.out.println("RandomEncounters: Compacted player journal to " + written + " record(s)");
+            } catch (IOException e) {
+                System.err.println("RandomEncounters: Failed to compact player journal: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Flush and wait for the writer to finish. Blocks; only call on shutdown.
+     */
+    public void close() {
+        flush();
+        writer.execute(this::closeChannel);
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(10, TimeUnit.SECONDS)) {
+                System.err.println("RandomEncounters: Timed out writing player journal");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ---- Writer thread ----
+
+    private FileChannel openForAppend() throws IOException {
+        if (channel == null) {
+            createParent();
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                writeHeader(header);
+                header.flip();
+                channel.truncate(0);
+                channel.write(header, 0);
+                size = HEADER_SIZE;
+            }
+            // Drop a torn trailing record so new records stay aligned
+            long aligned = HEADER_SIZE + (size - HEADER_SIZE) / RECORD_SIZE * RECORD_SIZE;
+            channel.truncate(aligned);
+            channel.position(aligned);
+        }
+        return channel;
+    }
+
+    private void createParent() throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+    }
+
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("RandomEncounters: Failed to close player journal: " + e.getMessage());
+            }
+            channel = null;
+        }
+    }
+
+    // ---- Format ----
+
+    private static void writeHeader(ByteBuffer buffer) {
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(RECORD_SIZE);
+        buffer.putInt(0);
+    }
+
+    private static void writeRecord(ByteBuffer buffer, UUID playerId, long lastEncounter, long dayEpoch, int dailyCount) {
+        long most = playerId.getMostSignificantBits();
+        long least = playerId.getLeastSignificantBits();
+        buffer.putLong(most);
+        buffer.putLong(least);
+        buffer.putLong(lastEncounter);
+        buffer.putLong(dayEpoch);
+        buffer.putInt(dailyCount);
+        buffer.putInt(checksum(most, least, lastEncounter, dayEpoch, dailyCount));
+    }
+
+    private static int checksum(long most, long least, long lastEncounter, long dayEpoch, int dailyCount) {
+        long h = 0x9E3779B97F4A7C15L;
+        h = (h ^ most) * 0xff51afd7ed558ccdL;
+        h = (h ^ least) * 0xff51afd7ed558ccdL;
+        h = (h ^ lastEncounter) * 0xff51afd7ed558ccdL;
+        h = (h ^ dayEpoch) * 0xff51afd7ed558ccdL;
+        h = (h ^ dailyCount) * 0xff51afd7ed558ccdL;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,143 @@
+package ai.torchlite.randomencounters.encounters;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Per-player encounter bookkeeping: time of the last encounter and the
+ * number of encounters on the current day.
+ *
+ * Each online player owns a slot index into parallel primitive arrays, so a
+ * check is one hash lookup followed by array reads. The daily count belongs
+ * to the day epoch stored next to it and reads as zero once that day is
+ * over; there is no separate rollover write. Slots are freed on logout and
+ * reused by the next player.
+ *
+ * Must only be used from the server thread.
+ */
+public class PlayerStateStore {
+
+    public static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+
+    private final Map<UUID, Integer> slots = new HashMap<>();
+    private long[] lastEncounter = new long[16];
+    private long[] dayEpoch = new long[16];
+    private int[] dailyCount = new int[16];
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+    private int highWater;
+
+    /**
+     * @return the player's slot, or -1 if nothing is stored for them
+     */
+    public int slotOf(UUID playerId) {
+        Integer slot = slots.get(playerId);
+        return slot != null ? slot : -1;
+    }
+
+    /**
+     * @return the player's slot, allocating an empty record if needed
+     */
+    public int acquire(UUID playerId) {
+        Integer existing = slots.get(playerId);
+        if (existing != null) {
+            return existing;
+        }
+
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            slot = highWater++;
+            if (slot == lastEncounter.length) {
+                int capacity = lastEncounter.length << 1;
+                lastEncounter = Arrays.copyOf(lastEncounter, capacity);
+                dayEpoch = Arrays.copyOf(dayEpoch, capacity);
+                dailyCount = Arrays.copyOf(dailyCount, capacity);
+            }
+        }
+        lastEncounter[slot] = 0;
+        dayEpoch[slot] = 0;
+        dailyCount[slot] = 0;
+        slots.put(playerId, slot);
+        return slot;
+    }
+
+    /**
+     * Forget a player, e.g. when they log out.
+     */
+    public void remove(UUID playerId) {
+        Integer slot = slots.remove(playerId);
+        if (slot == null) {
+            return;
+        }
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeSlots.length << 1);
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    public void clear() {
+        slots.clear();
+        freeCount = 0;
+        highWater = 0;
+    }
+
+    /**
+     * @return wall clock millis of the last encounter, or 0 if none
+     */
+    public long getLastEncounter(int slot) {
+        return slot >= 0 ? lastEncounter[slot] : 0;
+    }
+
+    /**
+     * @return encounters on the day containing {@code now}
+     */
+    public int getDailyCount(int slot, long now) {
+        return slot >= 0 && dayEpoch[slot] == now / DAY_MILLIS ? dailyCount[slot] : 0;
+    }
+
+    /**
+     * Start the cooldown and count one encounter for the current day.
+     */
+    public void recordEncounter(int slot, long now) {
+        long day = now / DAY_MILLIS;
+        lastEncounter[slot] = now;
+        if (dayEpoch[slot] != day) {
+            dayEpoch[slot] = day;
+            dailyCount[slot] = 0;
+        }
+        dailyCount[slot]++;
+    }
+
+    /**
+     * Load a record saved earlier, e.g. from {@link PlayerStateJournal}.
+     */
+    public void restore(int slot, long lastEncounter, long dayEpoch, int dailyCount) {
+        this.lastEncounter[slot] = lastEncounter;
+        this.dayEpoch[slot] = dayEpoch;
+        this.dailyCount[slot] = dailyCount;
+    }
+
+    public long getDayEpoch(int slot) {
+        return dayEpoch[slot];
+    }
+
+    /**
+     * @return the count stored for {@link #getDayEpoch(int)}, whether or not that day is over
+     */
+    public int getStoredDailyCount(int slot) {
+        return dailyCount[slot];
+    }
+
+    public Set<UUID> getPlayers() {
+        return slots.keySet();
+    }
+
+    public int size() {
+        return slots.size();
+    }
+}
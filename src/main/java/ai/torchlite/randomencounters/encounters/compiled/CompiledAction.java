@@ -0,0 +1,96 @@
+package ai.torchlite.randomencounters.encounters.compiled;
+
+import ai.torchlite.randomencounters.actions.ActionCompiler;
+import ai.torchlite.randomencounters.actions.ActionHandler;
+import ai.torchlite.randomencounters.actions.EncounterContext;
+import ai.torchlite.randomencounters.actions.LabelTable;
+import ai.torchlite.randomencounters.config.json.EncounterConfig;
+import ai.torchlite.randomencounters.expression.CompiledExpression;
+import ai.torchlite.randomencounters.expression.ExpressionException;
+import ai.torchlite.randomencounters.expression.ExpressionScope;
+import ai.torchlite.randomencounters.expression.ExpressionSource;
+import ai.torchlite.randomencounters.expression.JsonExpressions;
+import ai.torchlite.randomencounters.expression.VariableLayout;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One entry of an action list with its {@code ref} resolved to the shared
+ * action block, its {@code spawnRef} to the spawn block, and compiled into
+ * an {@link ActionHandler}.
+ */
+public class CompiledAction {
+
+    static final CompiledAction[] NONE = new CompiledAction[0];
+
+    private final String type;
+    private final ActionHandler handler;
+
+    private CompiledAction(String type, ActionHandler handler) {
+        this.type = type;
+        this.handler = handler;
+    }
+
+    /**
+     * Actions that cannot do anything (unknown type, missing arguments) are left out.
+     *
+     * @param blocks the config's {@code blocks}, for action and spawn blocks; may be null
+     * @param labels the encounter's label table; labels named by the actions are added
+     * @throws ExpressionException if a message is invalid, a ref names no action block or a
+     *                             spawnRef no spawn block
+     */
+    static CompiledAction[] compileAll(List<EncounterConfig.Encounter.ActionRef> refs,
+                                       EncounterConfig.Blocks blocks, LabelTable labels,
+                                       VariableLayout layout, ExpressionSource source, String field) {
+        if (refs == null || refs.isEmpty()) {
+            return NONE;
+        }
+        Map<String, EncounterConfig.Action> library = blocks != null ? blocks.actions : null;
+        CompiledAction[] actions = new CompiledAction[refs.size()];
+        int count = 0;
+        for (int i = 0; i < refs.size(); i++) {
+            EncounterConfig.Encounter.ActionRef ref = refs.get(i);
+            if (ref == null) {
+                continue;
+            }
+            ExpressionSource entrySource = source.child(field + "[" + i + "]");
+            EncounterConfig.Action action = ref;
+            if (ref.ref != null) {
+                action = library != null ? library.get(ref.ref) : null;
+                if (action == null) {
+                    throw new ExpressionException(entrySource.describe(null) + ": action reference not found: " + ref.ref);
+                }
+            }
+            EncounterConfig.Spawn spawn = null;
+            if (action.spawnRef != null) {
+                spawn = blocks != null && blocks.spawns != null ? blocks.spawns.get(action.spawnRef) : null;
+                if (spawn == null) {
+                    throw new ExpressionException(entrySource.describe(null) + ": spawn reference not found: "
+                        + action.spawnRef);
+                }
+            }
+            // An inline message on the ref overrides the block's own
+            CompiledExpression message = ref.message != null
+                ? JsonExpressions.text(ref.message, layout, entrySource.child("message")) : null;
+            ActionHandler handler = ActionCompiler.compile(action, message, spawn, labels);
+            if (handler != null) {
+                actions[count++] = new CompiledAction(action.type, handler);
+            }
+        }
+        return count == actions.length ? actions : Arrays.copyOf(actions, count);
+    }
+
+    /**
+     * Run the action; failures are logged and do not stop the action list.
+     */
+    public void run(EncounterContext context, ExpressionScope scope) {
+        try {
+            handler.run(context, scope);
+        } catch (Exception e) {
+            System.err.println("RandomEncounters: Error executing action '" + type + "': " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package ai.torchlite.randomencounters.encounters.compiled;
+
+import ai.torchlite.randomencounters.config.json.EncounterConfig;
+import ai.torchlite.randomencounters.expression.ExpressionException;
+import ai.torchlite.randomencounters.expression.ExpressionSource;
+
+/**
+ * A {@code behaviors} entry linked to its behavior block and, for route
+ * behaviors, to the route it follows.
+ */
+public class CompiledBehavior {
+
+    private final String applyTo;
+    private final EncounterConfig.Behavior behavior;
+    private final EncounterConfig.Route route;
+
+    private CompiledBehavior(String applyTo, EncounterConfig.Behavior behavior, EncounterConfig.Route route) {
+        this.applyTo = applyTo;
+        this.behavior = behavior;
+        this.route = route;
+    }
+
+    /**
+     * @throws ExpressionException if the behavior or its route is not defined in {@code blocks}
+     */
+    static CompiledBehavior link(EncounterConfig.Encounter.BehaviorRef ref, EncounterConfig.Blocks blocks,
+                                 ExpressionSource source) {
+        EncounterConfig.Behavior behavior = ref.ref != null && blocks != null && blocks.behaviors != null
+            ? blocks.behaviors.get(ref.ref) : null;
+        if (behavior == null) {
+            throw new ExpressionException(source.describe(null) + ": behavior reference not found: " + ref.ref);
+        }
+
+        EncounterConfig.Route route = null;
+        if (behavior.routeRef != null || "moveToRoute".equals(behavior.type)) {
+            route = behavior.routeRef != null && blocks.routes != null ? blocks.routes.get(behavior.routeRef) : null;
+            if (route == null) {
+                throw new ExpressionException(source.describe(null) + ": behavior " + ref.ref
+                    + " refers to an unknown route: " + behavior.routeRef);
+            }
+        }
+        return new CompiledBehavior(ref.applyTo, behavior, route);
+    }
+
+    /**
+     * @return the spawn label the behavior applies to, or null / {@code "all"} for every member
+     */
+    public String getApplyTo() {
+        return applyTo;
+    }
+
+    public EncounterConfig.Behavior getBehavior() {
+        return behavior;
+    }
+
+    /**
+     * @return the linked route, or null if the behavior has none
+     */
+    public EncounterConfig.Route getRoute() {
+        return route;
+    }
+}
@@ -0,0 +1,315 @@
+package ai.torchlite.randomencounters.encounters.compiled;
+
+import ai.torchlite.randomencounters.actions.LabelTable;
+import ai.torchlite.randomencounters.config.json.EncounterConfig;
+import ai.torchlite.randomencounters.encounters.spawning.EntityFactoryRegistry;
+import ai.torchlite.randomencounters.expression.CompiledExpression;
+import ai.torchlite.randomencounters.expression.ExpressionCompiler;
+import ai.torchlite.randomencounters.expression.ExpressionException;
+import ai.torchlite.randomencounters.expression.ExpressionScope;
+import ai.torchlite.randomencounters.expression.ExpressionSource;
+import ai.torchlite.randomencounters.expression.JsonExpressions;
+import ai.torchlite.randomencounters.expression.VariableGraph;
+import ai.torchlite.randomencounters.expression.VariableLayout;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+import net.minecraft.entity.player.EntityPlayer;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Load-time compiled form of an encounter definition: its variables, spawn
+ * entries, triggers, despawn limit, AI level-of-detail distances and action
+ * messages, with every block reference (selector, spawns, behaviors, routes,
+ * actions) linked to the block itself. Compiling surfaces every syntax error
+ * and dangling reference when the config is loaded rather than when the
+ * encounter first fires.
+ */
+public class CompiledEncounter {
+
+    /** Label words of spawn entries that should appear before the rest of their group */
+    private static final String[] LEADER_LABELS = {"leader", "commander", "captain", "chief", "boss"};
+
+    private final VariableLayout layout;
+    private final EncounterConfig.Selector selector;
+    private final CompiledSpawnEntry[] spawns;
+    private final int[] spawnOrder;
+    private final CompiledBehavior[] behaviors;
+    private final CompiledTrigger[] triggers;
+    private final CompiledAction[] onStart;
+    private final CompiledAction[] onTimeout;
+    private final CompiledAction[] onCleanup;
+    private final CompiledExpression despawnAfterSeconds;
+    private final CompiledExpression lodNearDistance;
+    private final CompiledExpression lodFarDistance;
+    private final LabelTable labels;
+
+    private CompiledEncounter(EncounterConfig.Encounter def, VariableLayout layout, EncounterConfig.Selector selector,
+                              LabelTable labels, CompiledSpawnEntry[] spawns,
+                              CompiledBehavior[] behaviors, CompiledTrigger[] triggers, CompiledAction[] onStart,
+                              CompiledAction[] onTimeout, CompiledAction[] onCleanup,
+                              CompiledExpression despawnAfterSeconds, CompiledExpression lodNearDistance,
+                              CompiledExpression lodFarDistance) {
+        this.layout = layout;
+        this.selector = selector;
+        this.labels = labels;
+        this.spawns = spawns;
+        this.spawnOrder = spawnOrder(def);
+        this.behaviors = behaviors;
+        this.triggers = triggers;
+        this.onStart = onStart;
+        this.onTimeout = onTimeout;
+        this.onCleanup = onCleanup;
+        this.despawnAfterSeconds = despawnAfterSeconds;
+        this.lodNearDistance = lodNearDistance;
+        this.lodFarDistance = lodFarDistance;
+    }
+
+    /**
+     * @param config the config the encounter was loaded with, for its {@code globalVariables} and
+     *               {@code blocks}; may be null
+     * @param file   the file the encounter was read from, for error locations; may be null
+     * @throws ExpressionException if any expression is invalid, variables form a cycle or a
+     *                             reference names a block that does not exist
+     */
+    public static CompiledEncounter compile(EncounterConfig.Encounter def, EncounterConfig config, File file) {
+        VariableLayout layout = new VariableLayout();
+        ExpressionSource source = new ExpressionSource(file, def.id, null);
+        defineVariables(config != null ? config.globalVariables : null, def.variables, layout, source);
+        EncounterConfig.Blocks blocks = config != null ? config.blocks : null;
+
+        EncounterConfig.Selector selector = null;
+        if (def.selectorRef != null) {
+            selector = blocks != null && blocks.selectors != null ? blocks.selectors.get(def.selectorRef) : null;
+            if (selector == null) {
+                throw new ExpressionException(source.describe(null) + ": selector reference not found: " + def.selectorRef);
+            }
+        }
+
+        // Spawn labels take the first slots; action compilation adds any other labels actions name
+        LabelTable labels = new LabelTable();
+        CompiledSpawnEntry[] spawns = new CompiledSpawnEntry[def.spawn != null ? def.spawn.size() : 0];
+        for (int i = 0; i < spawns.length; i++) {
+            spawns[i] = CompiledSpawnEntry.compile(def.spawn.get(i), blocks != null ? blocks.spawns : null, labels,
+                layout, source.child("spawn[" + i + "]"));
+        }
+
+        List<CompiledBehavior> behaviors = new ArrayList<>();
+        if (def.behaviors != null) {
+            for (int i = 0; i < def.behaviors.size(); i++) {
+                if (def.behaviors.get(i) != null) {
+                    behaviors.add(CompiledBehavior.link(def.behaviors.get(i), blocks, source.child("behaviors[" + i + "]")));
+                }
+            }
+        }
+
+        List<CompiledTrigger> triggers = new ArrayList<>();
+        if (def.triggers != null) {
+            for (int i = 0; i < def.triggers.size(); i++) {
+                CompiledTrigger trigger = CompiledTrigger.compile(i, def.triggers.get(i), blocks, labels, layout,
+                    source.child("triggers[" + i + "]"));
+                if (trigger != null) {
+                    triggers.add(trigger);
+                }
+            }
+        }
+
+        EncounterConfig.Encounter.Limits limits = def.limits;
+        CompiledExpression despawn = limits != null && limits.despawnAfterSeconds != null
+            ? JsonExpressions.number(limits.despawnAfterSeconds, 0, layout, source.child("limits.despawnAfterSeconds"))
+            : null;
+        CompiledExpression lodNear = limits != null && limits.lodNearDistance != null
+            ? JsonExpressions.number(limits.lodNearDistance, 0, layout, source.child("limits.lodNearDistance"))
+            : null;
+        CompiledExpression lodFar = limits != null && limits.lodFarDistance != null
+            ? JsonExpressions.number(limits.lodFarDistance, 0, layout, source.child("limits.lodFarDistance"))
+            : null;
+
+        CompiledAction[] onStart = CompiledAction.compileAll(def.onStart, blocks, labels, layout, source, "onStart");
+        CompiledAction[] onTimeout = CompiledAction.compileAll(def.onTimeout, blocks, labels, layout, source, "onTimeout");
+        CompiledAction[] onCleanup = CompiledAction.compileAll(def.onCleanup, blocks, labels, layout, source, "onCleanup");
+        return new CompiledEncounter(def, layout, selector, labels, spawns, behaviors.toArray(new CompiledBehavior[0]),
+            triggers.toArray(new CompiledTrigger[0]), onStart, onTimeout, onCleanup, despawn, lodNear, lodFar);
+    }
+
+    /**
+     * Spawn entries whose label marks a leader come first, the rest keep their
+     * declaration order.
+     */
+    private static int[] spawnOrder(EncounterConfig.Encounter def) {
+        int size = def.spawn != null ? def.spawn.size() : 0;
+        int[] order = new int[size];
+        int next = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < size; i++) {
+                EncounterConfig.Encounter.SpawnEntry entry = def.spawn.get(i);
+                if (isLeader(entry != null ? entry.label : null) == (pass == 0)) {
+                    order[next++] = i;
+                }
+            }
+        }
+        return order;
+    }
+
+    private static boolean isLeader(String label) {
+        if (label == null) {
+            return false;
+        }
+        String lower = label.toLowerCase(Locale.ROOT);
+        for (String keyword : LEADER_LABELS) {
+            if (lower.contains(keyword)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Define globals and the encounter's own variables (which win on a name
+     * clash) in dependency order, so declaration order does not matter.
+     */
+    private static void defineVariables(Map<String, JsonElement> globals, Map<String, JsonElement> locals,
+                                        VariableLayout layout, ExpressionSource source) {
+        Map<String, JsonElement> values = new LinkedHashMap<>();
+        Map<String, ExpressionSource> sources = new HashMap<>();
+        if (globals != null) {
+            for (Map.Entry<String, JsonElement> entry : globals.entrySet()) {
+                values.put(entry.getKey(), entry.getValue());
+                sources.put(entry.getKey(), source.child("globalVariables." + entry.getKey()));
+            }
+        }
+        if (locals != null) {
+            for (Map.Entry<String, JsonElement> entry : locals.entrySet()) {
+                values.put(entry.getKey(), entry.getValue());
+                sources.put(entry.getKey(), source.child("variables." + entry.getKey()));
+            }
+        }
+
+        Map<String, Set<String>> dependencies = new LinkedHashMap<>();
+        for (Map.Entry<String, JsonElement> entry : values.entrySet()) {
+            JsonElement value = entry.getValue();
+            boolean text = value != null && value.isJsonPrimitive() && value.getAsJsonPrimitive().isString();
+            dependencies.put(entry.getKey(), text
+                ? ExpressionCompiler.referencedNames(value.getAsString()) : Collections.<String>emptySet());
+        }
+
+        for (String name : VariableGraph.order(dependencies, sources)) {
+            layout.define(name, compileVariable(values.get(name), layout, sources.get(name)));
+        }
+    }
+
+    private static CompiledExpression compileVariable(JsonElement value, VariableLayout layout, ExpressionSource source) {
+        if (value != null && value.isJsonPrimitive()) {
+            JsonPrimitive primitive = value.getAsJsonPrimitive();
+            if (primitive.isBoolean()) {
+                return CompiledExpression.constant(primitive.getAsBoolean());
+            }
+            if (primitive.isNumber()) {
+                return CompiledExpression.constant(primitive.getAsDouble());
+            }
+            return JsonExpressions.value(primitive.getAsString(), layout, source);
+        }
+        throw new ExpressionException(source.describe(null) + ": variables must be numbers, booleans or expression strings");
+    }
+
+    /**
+     * Bind each spawn entry to its entity factories. Needs the final entity
+     * registry, so it runs when the selection index is built.
+     *
+     * @throws ExpressionException if a spawn block resolves to no living entity
+     */
+    public void linkEntities(EntityFactoryRegistry factories) {
+        for (CompiledSpawnEntry spawn : spawns) {
+            spawn.linkFactories(factories);
+        }
+    }
+
+    /**
+     * Create a scope for one run of the encounter. Built-ins are filled from
+     * the player; the encounter's variables are evaluated on first use.
+     */
+    public ExpressionScope newScope(EntityPlayer player, double difficulty, Random random) {
+        ExpressionScope scope = new ExpressionScope(layout, random);
+        scope.setBuiltins(player, difficulty);
+        return scope;
+    }
+
+    public VariableLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * @return the encounter's spawn and action labels; contexts for its runs are laid out by it
+     */
+    public LabelTable getLabels() {
+        return labels;
+    }
+
+    /**
+     * @return the selector block named by {@code selectorRef}, or null if the encounter has none
+     */
+    public EncounterConfig.Selector getSelector() {
+        return selector;
+    }
+
+    public CompiledSpawnEntry[] getSpawns() {
+        return spawns;
+    }
+
+    /**
+     * @return indexes into {@link #getSpawns()} in the order they should be spawned
+     */
+    public int[] getSpawnOrder() {
+        return spawnOrder;
+    }
+
+    public CompiledBehavior[] getBehaviors() {
+        return behaviors;
+    }
+
+    public CompiledTrigger[] getTriggers() {
+        return triggers;
+    }
+
+    public CompiledAction[] getOnStart() {
+        return onStart;
+    }
+
+    public CompiledAction[] getOnTimeout() {
+        return onTimeout;
+    }
+
+    public CompiledAction[] getOnCleanup() {
+        return onCleanup;
+    }
+
+    /**
+     * @return seconds until the encounter despawns, or -1 when it has no limit
+     */
+    public int getDespawnAfterSeconds(ExpressionScope scope) {
+        return despawnAfterSeconds != null ? despawnAfterSeconds.evalInt(scope) : -1;
+    }
+
+    /**
+     * @return the distance up to which mobs keep their full AI, or -1 for the default
+     */
+    public double getLodNearDistance(ExpressionScope scope) {
+        return lodNearDistance != null ? lodNearDistance.evalNumber(scope) : -1;
+    }
+
+    /**
+     * @return the distance beyond which mobs' AI is frozen, or -1 for the default
+     */
+    public double getLodFarDistance(ExpressionScope scope) {
+        return lodFarDistance != null ? lodFarDistance.evalNumber(scope) : -1;
+    }
+}
@@ -0,0 +1,489 @@
+package ai.torchlite.randomencounters.encounters.compiled;
+
+import ai.torchlite.randomencounters.actions.LabelTable;
+import ai.torchlite.randomencounters.config.json.EncounterConfig;
+import ai.torchlite.randomencounters.encounters.spawning.EntityFactory;
+import ai.torchlite.randomencounters.encounters.spawning.EntityFactoryRegistry;
+import ai.torchlite.randomencounters.encounters.spawning.SpawnPrototype;
+import ai.torchlite.randomencounters.expression.CompiledExpression;
+import ai.torchlite.randomencounters.expression.ExpressionException;
+import ai.torchlite.randomencounters.expression.ExpressionScope;
+import ai.torchlite.randomencounters.expression.ExpressionSource;
+import ai.torchlite.randomencounters.expression.JsonExpressions;
+import ai.torchlite.randomencounters.expression.VariableLayout;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import net.minecraft.enchantment.Enchantment;
+import net.minecraft.entity.SharedMonsterAttributes;
+import net.minecraft.entity.ai.attributes.IAttribute;
+import net.minecraft.inventory.EntityEquipmentSlot;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compiled expressions of one {@code spawn} entry: its count, condition,
+ * custom name, equipment and attribute overrides, and the spawn block it
+ * names split into {@link Part}s.
+ *
+ * An {@code entity} block is one part. A {@code group} block has a part per
+ * member, each spawning its own count for every unit of the entry's count.
+ * A {@code randomChoice} block, on its own or as a group member, picks one
+ * of its weighted options for every entity it spawns.
+ */
+public class CompiledSpawnEntry {
+
+    private final EncounterConfig.Spawn spawn;
+    private final Part[] parts;
+    private final ExpressionSource source;
+    private final CompiledExpression count;
+    private final CompiledExpression condition;
+    private final CompiledExpression customName;
+    private final Equipment[] equipment;
+    private final Attribute[] attributes;
+    private final int labelSlot;
+
+    private CompiledSpawnEntry(EncounterConfig.Spawn spawn, Part[] parts, ExpressionSource source, int labelSlot,
+                               CompiledExpression count, CompiledExpression condition, CompiledExpression customName,
+                               Equipment[] equipment, Attribute[] attributes) {
+        this.spawn = spawn;
+        this.parts = parts;
+        this.source = source;
+        this.labelSlot = labelSlot;
+        this.count = count;
+        this.condition = condition;
+        this.customName = customName;
+        this.equipment = equipment;
+        this.attributes = attributes;
+    }
+
+    /**
+     * @param spawnLibrary the config's {@code blocks.spawns}, may be null
+     * @throws ExpressionException if an expression is invalid, or the block or any block it
+     *                             names does not exist or cannot spawn anything
+     */
+    static CompiledSpawnEntry compile(EncounterConfig.Encounter.SpawnEntry entry,
+                                      Map<String, EncounterConfig.Spawn> spawnLibrary, LabelTable labels,
+                                      VariableLayout layout, ExpressionSource source) {
+        EncounterConfig.Spawn spawn = entry.ref != null && spawnLibrary != null ? spawnLibrary.get(entry.ref) : null;
+        if (spawn == null) {
+            throw new ExpressionException(source.describe(null) + ": spawn reference not found: " + entry.ref);
+        }
+        Part[] parts = Part.compile(entry.ref, spawn, spawnLibrary, source);
+        CompiledExpression count = entry.count != null
+            ? JsonExpressions.number(entry.count, 1, layout, source.child("count")) : null;
+        CompiledExpression condition = JsonExpressions.condition(entry.condition, layout, source.child("condition"));
+        CompiledExpression customName = JsonExpressions.text(entry.customName, layout, source.child("customName"));
+
+        Equipment[] equipment = new Equipment[entry.equipment != null ? entry.equipment.size() : 0];
+        if (entry.equipment != null) {
+            int i = 0;
+            for (Map.Entry<String, EncounterConfig.Encounter.Equipment> slot : entry.equipment.entrySet()) {
+                equipment[i++] = Equipment.compile(slot.getKey(), slot.getValue(), layout,
+                    source.child("equipment." + slot.getKey()));
+            }
+        }
+
+        Attribute[] attributes = new Attribute[entry.attributes != null ? entry.attributes.size() : 0];
+        if (entry.attributes != null) {
+            int i = 0;
+            for (Map.Entry<String, JsonElement> attribute : entry.attributes.entrySet()) {
+                attributes[i++] = Attribute.compile(attribute.getKey(), attribute.getValue(), layout,
+                    source.child("attributes." + attribute.getKey()));
+            }
+        }
+
+        return new CompiledSpawnEntry(spawn, parts, source, labels.add(entry.label), count, condition, customName, equipment,
+            attributes);
+    }
+
+    /**
+     * @return the spawn block this entry refers to
+     */
+    public EncounterConfig.Spawn getSpawn() {
+        return spawn;
+    }
+
+    /**
+     * @return the entry's label slot, or {@link LabelTable#NONE} if it is unlabeled
+     */
+    public int getLabelSlot() {
+        return labelSlot;
+    }
+
+    /**
+     * @return what the spawn block is made of, at least one part
+     */
+    public Part[] getParts() {
+        return parts;
+    }
+
+    /**
+     * @throws ExpressionException if a part resolves to no living entity
+     */
+    void linkFactories(EntityFactoryRegistry factories) {
+        for (Part part : parts) {
+            part.link(factories);
+            if (part.factory == null) {
+                throw new ExpressionException(source.describe(null) + ": spawn block " + part.ref
+                    + " resolves to no living entity");
+            }
+        }
+    }
+
+    public boolean isEnabled(ExpressionScope scope) {
+        return condition.evalBoolean(scope);
+    }
+
+    /**
+     * @return the entry's count, or {@code fallback} if the entry does not set one
+     */
+    public int getCount(ExpressionScope scope, int fallback) {
+        return count != null ? count.evalInt(scope) : fallback;
+    }
+
+    /**
+     * Evaluate the entry's name, equipment and attribute overrides once for
+     * this encounter instance. Every entity of the group is stamped from the
+     * result, so expressions here (including {@code Math.random()}) yield
+     * the same value for the whole group.
+     */
+    public SpawnPrototype prototype(ExpressionScope scope) {
+        String name = customName != null ? customName.evalString(scope) : null;
+        SpawnPrototype prototype = new SpawnPrototype(name != null ? name : spawn.customName, spawn.persistence);
+        for (Equipment item : equipment) {
+            item.addTo(prototype, scope);
+        }
+        for (Attribute attribute : attributes) {
+            attribute.addTo(prototype, scope);
+        }
+        return prototype;
+    }
+
+    /**
+     * One kind of entity an entry spawns: an entity or randomChoice block, on
+     * its own or as a member of a group.
+     */
+    public static final class Part {
+        private final String ref;
+        private final EncounterConfig.Spawn block;
+        private final int minCount;
+        private final int maxCount;
+        private final String[] entityIds;
+        private final int[] weights;
+        private EntityFactory factory;
+
+        private Part(String ref, EncounterConfig.Spawn block, int minCount, int maxCount, String[] entityIds,
+                     int[] weights) {
+            this.ref = ref;
+            this.block = block;
+            this.minCount = minCount;
+            this.maxCount = maxCount;
+            this.entityIds = entityIds;
+            this.weights = weights;
+        }
+
+        static Part[] compile(String ref, EncounterConfig.Spawn spawn, Map<String, EncounterConfig.Spawn> library,
+                              ExpressionSource source) {
+            if (!"group".equals(spawn.type)) {
+                return new Part[] { choice(ref, spawn, 1, 1, library, source) };
+            }
+            if (spawn.members == null || spawn.members.isEmpty()) {
+                throw new ExpressionException(source.describe(null) + ": group " + ref + " has no members");
+            }
+            Part[] parts = new Part[spawn.members.size()];
+            for (int i = 0; i < parts.length; i++) {
+                EncounterConfig.Spawn.Member member = spawn.members.get(i);
+                ExpressionSource memberSource = source.child(ref + ".members[" + i + "]");
+                EncounterConfig.Spawn block = member != null ? lookup(member.ref, library, memberSource) : null;
+                if (block == null || "group".equals(block.type)) {
+                    throw new ExpressionException(memberSource.describe(null) + ": group members must name an "
+                        + "entity or randomChoice block");
+                }
+                int[] range = countRange(member.count, memberSource);
+                parts[i] = choice(member.ref, block, range[0], range[1], library, memberSource);
+            }
+            return parts;
+        }
+
+        private static Part choice(String ref, EncounterConfig.Spawn block, int minCount, int maxCount,
+                                   Map<String, EncounterConfig.Spawn> library, ExpressionSource source) {
+            if (!"randomChoice".equals(block.type)) {
+                if (block.entityId == null) {
+                    throw new ExpressionException(source.describe(null) + ": spawn block " + ref + " has no entityId");
+                }
+                return new Part(ref, block, minCount, maxCount, new String[] { block.entityId }, new int[] { 1 });
+            }
+            if (block.options == null || block.options.isEmpty()) {
+                throw new ExpressionException(source.describe(null) + ": randomChoice " + ref + " has no options");
+            }
+            String[] entityIds = new String[block.options.size()];
+            int[] weights = new int[entityIds.length];
+            for (int i = 0; i < entityIds.length; i++) {
+                EncounterConfig.Spawn.Option option = block.options.get(i);
+                ExpressionSource optionSource = source.child(ref + ".options[" + i + "]");
+                EncounterConfig.Spawn chosen = option != null ? lookup(option.ref, library, optionSource) : null;
+                if (chosen == null || chosen.entityId == null) {
+                    throw new ExpressionException(optionSource.describe(null) + ": options must name an entity block");
+                }
+                entityIds[i] = chosen.entityId;
+                // Like encounters, an option without a weight counts once
+                weights[i] = option.weight > 0 ? option.weight : 1;
+            }
+            return new Part(ref, block, minCount, maxCount, entityIds, weights);
+        }
+
+        private static EncounterConfig.Spawn lookup(String ref, Map<String, EncounterConfig.Spawn> library,
+                                                    ExpressionSource source) {
+            EncounterConfig.Spawn block = ref != null && library != null ? library.get(ref) : null;
+            if (block == null) {
+                throw new ExpressionException(source.describe(null) + ": spawn reference not found: " + ref);
+            }
+            return block;
+        }
+
+        /**
+         * A member count is a number or {@code {"min": a, "max": b}}; it defaults to 1.
+         */
+        private static int[] countRange(JsonElement count, ExpressionSource source) {
+            if (count == null || count.isJsonNull()) {
+                return new int[] { 1, 1 };
+            }
+            try {
+                if (count.isJsonObject()) {
+                    JsonObject range = count.getAsJsonObject();
+                    int min = range.has("min") ? range.get("min").getAsInt() : 1;
+                    int max = range.has("max") ? range.get("max").getAsInt() : min;
+                    return new int[] { Math.max(0, min), Math.max(min, max) };
+                }
+                int fixed = Math.max(0, count.getAsInt());
+                return new int[] { fixed, fixed };
+            } catch (RuntimeException e) {
+                throw new ExpressionException(source.describe(null) + ": count must be a number or {min, max}");
+            }
+        }
+
+        void link(EntityFactoryRegistry factories) {
+            EntityFactory[] choices = new EntityFactory[entityIds.length];
+            for (int i = 0; i < choices.length; i++) {
+                choices[i] = factories.get(entityIds[i]);
+            }
+            factory = EntityFactoryRegistry.weighted(choices, weights);
+        }
+
+        /**
+         * @return the block naming this part's entities; its aiToggles and persistence apply to them
+         */
+        public EncounterConfig.Spawn getBlock() {
+            return block;
+        }
+
+        /**
+         * @return the factory, or null before {@link CompiledEncounter#linkEntities}
+         */
+        public EntityFactory getFactory() {
+            return factory;
+        }
+
+        /**
+         * @return how many entities this part spawns for {@code units} of the entry's count
+         */
+        public int count(int units, Random random) {
+            if (minCount == maxCount) {
+                return units * minCount;
+            }
+            int total = 0;
+            for (int i = 0; i < units; i++) {
+                total += minCount + random.nextInt(maxCount - minCount + 1);
+            }
+            return total;
+        }
+    }
+
+    static final class Equipment {
+        private final EntityEquipmentSlot slot;
+        private final CompiledExpression item;
+        private final CompiledExpression count;
+        private final CompiledExpression customName;
+        private final CompiledExpression condition;
+        private final Enchant[] enchantments;
+        private final Map<String, Item> items = new HashMap<>();
+
+        private Equipment(EntityEquipmentSlot slot, CompiledExpression item, CompiledExpression count,
+                          CompiledExpression customName, CompiledExpression condition, Enchant[] enchantments) {
+            this.slot = slot;
+            this.item = item;
+            this.count = count;
+            this.customName = customName;
+            this.condition = condition;
+            this.enchantments = enchantments;
+        }
+
+        static Equipment compile(String slotName, EncounterConfig.Encounter.Equipment def, VariableLayout layout,
+                                 ExpressionSource source) {
+            EntityEquipmentSlot slot = parseSlot(slotName);
+            if (slot == null) {
+                throw new ExpressionException(source.describe(null) + ": unknown equipment slot '" + slotName + "'");
+            }
+            if (def == null || def.item == null) {
+                throw new ExpressionException(source.describe(null) + ": equipment needs an item");
+            }
+
+            List<EncounterConfig.Encounter.EnchantmentEntry> defs = def.enchantments;
+            Enchant[] enchantments = new Enchant[defs != null ? defs.size() : 0];
+            for (int i = 0; i < enchantments.length; i++) {
+                enchantments[i] = Enchant.compile(defs.get(i), layout, source.child("enchantments[" + i + "]"));
+            }
+
+            return new Equipment(slot,
+                JsonExpressions.text(def.item, layout, source.child("item")),
+                JsonExpressions.number(def.count, 1, layout, source.child("count")),
+                JsonExpressions.text(def.customName, layout, source.child("customName")),
+                JsonExpressions.condition(def.condition, layout, source.child("condition")),
+                enchantments);
+        }
+
+        private static EntityEquipmentSlot parseSlot(String name) {
+            switch (name) {
+                case "mainhand": return EntityEquipmentSlot.MAINHAND;
+                case "offhand": return EntityEquipmentSlot.OFFHAND;
+                case "head": case "helmet": return EntityEquipmentSlot.HEAD;
+                case "chest": case "chestplate": return EntityEquipmentSlot.CHEST;
+                case "legs": case "leggings": return EntityEquipmentSlot.LEGS;
+                case "feet": case "boots": return EntityEquipmentSlot.FEET;
+                default: return null;
+            }
+        }
+
+        void addTo(SpawnPrototype prototype, ExpressionScope scope) {
+            if (!condition.evalBoolean(scope)) {
+                return;
+            }
+
+            String itemId = item.evalString(scope);
+            Item resolved = items.get(itemId);
+            if (resolved == null && !items.containsKey(itemId)) {
+                resolved = Item.getByNameOrId(itemId);
+                if (resolved == null) {
+                    System.err.println("RandomEncounters: Unknown item in equipment: " + itemId);
+                }
+                items.put(itemId, resolved);
+            }
+            if (resolved == null) {
+                return;
+            }
+
+            ItemStack stack = new ItemStack(resolved, Math.max(1, count.evalInt(scope)));
+            for (Enchant enchantment : enchantments) {
+                enchantment.apply(stack, scope);
+            }
+            if (customName != null) {
+                stack.setStackDisplayName(customName.evalString(scope));
+            }
+            prototype.addEquipment(slot, stack);
+        }
+    }
+
+    static final class Enchant {
+        private final String id;
+        private final CompiledExpression level;
+        private final CompiledExpression condition;
+        private Enchantment enchantment;
+        private boolean resolved;
+
+        private Enchant(String id, CompiledExpression level, CompiledExpression condition) {
+            this.id = id;
+            this.level = level;
+            this.condition = condition;
+        }
+
+        static Enchant compile(EncounterConfig.Encounter.EnchantmentEntry def, VariableLayout layout,
+                               ExpressionSource source) {
+            if (def.id == null) {
+                throw new ExpressionException(source.describe(null) + ": enchantment needs an id");
+            }
+            return new Enchant(def.id,
+                JsonExpressions.number(def.level, 1, layout, source.child("level")),
+                JsonExpressions.condition(def.condition, layout, source.child("condition")));
+        }
+
+        void apply(ItemStack stack, ExpressionScope scope) {
+            if (!condition.evalBoolean(scope)) {
+                return;
+            }
+            int value = level.evalInt(scope);
+            if (value <= 0) {
+                return;
+            }
+
+            // The enchantment registry is not populated when configs load, so resolve on first use
+            if (!resolved) {
+                enchantment = Enchantment.getEnchantmentByLocation(id);
+                resolved = true;
+                if (enchantment == null) {
+                    System.err.println("RandomEncounters: Unknown enchantment: " + id);
+                }
+            }
+            if (enchantment != null) {
+                stack.addEnchantment(enchantment, value);
+            }
+        }
+    }
+
+    static final class Attribute {
+        private final IAttribute attribute;
+        private final CompiledExpression value;    // absolute base value, or null
+        private final CompiledExpression multiply; // used when value is null
+        private final CompiledExpression add;
+
+        private Attribute(IAttribute attribute, CompiledExpression value, CompiledExpression multiply,
+                          CompiledExpression add) {
+            this.attribute = attribute;
+            this.value = value;
+            this.multiply = multiply;
+            this.add = add;
+        }
+
+        /**
+         * Attributes are either an absolute value ({@code "health": "20 + difficulty"})
+         * or a scaling of the mob's default ({@code "health": {"multiply": "2.0", "add": "4"}}).
+         */
+        static Attribute compile(String name, JsonElement value, VariableLayout layout, ExpressionSource source) {
+            IAttribute attribute = parseAttribute(name);
+            if (attribute == null) {
+                throw new ExpressionException(source.describe(null) + ": unknown attribute '" + name + "'");
+            }
+            if (value != null && value.isJsonObject()) {
+                JsonObject object = value.getAsJsonObject();
+                return new Attribute(attribute, null,
+                    JsonExpressions.number(object.get("multiply"), 1, layout, source.child("multiply")),
+                    JsonExpressions.number(object.get("add"), 0, layout, source.child("add")));
+            }
+            return new Attribute(attribute, JsonExpressions.number(value, 0, layout, source), null, null);
+        }
+
+        private static IAttribute parseAttribute(String name) {
+            switch (name) {
+                case "health": case "maxHealth": return SharedMonsterAttributes.MAX_HEALTH;
+                case "attackDamage": return SharedMonsterAttributes.ATTACK_DAMAGE;
+                case "followRange": return SharedMonsterAttributes.FOLLOW_RANGE;
+                case "movementSpeed": return SharedMonsterAttributes.MOVEMENT_SPEED;
+                case "armor": return SharedMonsterAttributes.ARMOR;
+                case "knockbackResistance": return SharedMonsterAttributes.KNOCKBACK_RESISTANCE;
+                default: return null;
+            }
+        }
+
+        void addTo(SpawnPrototype prototype, ExpressionScope scope) {
+            if (value != null) {
+                prototype.setAttribute(attribute, value.evalNumber(scope));
+            } else {
+                prototype.scaleAttribute(attribute, multiply.evalNumber(scope), add.evalNumber(scope));
+            }
+        }
+    }
+}
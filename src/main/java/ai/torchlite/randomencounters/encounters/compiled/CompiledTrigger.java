@@ -0,0 +1,154 @@
+package ai.torchlite.randomencounters.encounters.compiled;
+
+import ai.torchlite.randomencounters.actions.LabelTable;
+import ai.torchlite.randomencounters.config.json.EncounterConfig;
+import ai.torchlite.randomencounters.expression.CompiledExpression;
+import ai.torchlite.randomencounters.expression.ExpressionSource;
+import ai.torchlite.randomencounters.expression.JsonExpressions;
+import ai.torchlite.randomencounters.expression.VariableLayout;
+
+
+/**
+ * A trigger's {@code when} clause parsed into an event kind at load time, so
+ * the runtime dispatches on an enum instead of matching strings per event.
+ */
+public class CompiledTrigger {
+
+    public enum Kind {
+        /** A member entity died; {@link #getLabel()} restricts which one */
+        KILLED,
+        /** A member entity took damage */
+        HURT,
+        /** An involved player took damage */
+        PLAYER_HURT,
+        /** A route behavior reached its final waypoint */
+        ARRIVED,
+        /** A fixed number of seconds after the encounter started */
+        ELAPSED,
+        /** Right after onStart */
+        START,
+        /** Together with onTimeout */
+        TIMEOUT
+    }
+
+    private final int index;
+    private final Kind kind;
+    private final String label;
+    private final int seconds;
+    private final int cooldownTicks;
+    private final boolean once;
+    private final CompiledExpression condition;
+    private final CompiledAction[] actions;
+
+    private CompiledTrigger(int index, Kind kind, String label, int seconds, int cooldownTicks, boolean once,
+                            CompiledExpression condition, CompiledAction[] actions) {
+        this.index = index;
+        this.kind = kind;
+        this.label = label;
+        this.seconds = seconds;
+        this.cooldownTicks = cooldownTicks;
+        this.once = once;
+        this.condition = condition;
+        this.actions = actions;
+    }
+
+    /**
+     * @return the compiled trigger, or null if its {@code when} is not recognised
+     */
+    static CompiledTrigger compile(int index, EncounterConfig.Encounter.Trigger def,
+                                   EncounterConfig.Blocks blocks, LabelTable labels,
+                                   VariableLayout layout, ExpressionSource source) {
+        String when = def.when != null ? def.when.replace(" ", "") : "";
+        Kind kind;
+        String label = def.target;
+        int seconds = 0;
+        boolean once = false;
+
+        if (when.equals("onStart")) {
+            kind = Kind.START;
+        } else if (when.equals("onTimeout")) {
+            kind = Kind.TIMEOUT;
+        } else if (when.equals("arrivedAtRouteEnd")) {
+            kind = Kind.ARRIVED;
+        } else if (when.startsWith("secondsSinceStart>=")) {
+            kind = Kind.ELAPSED;
+            try {
+                seconds = Integer.parseInt(when.substring("secondsSinceStart>=".length()));
+            } catch (NumberFormatException e) {
+                System.err.println("RandomEncounters: Invalid trigger '" + def.when + "' in " + source.describe(null));
+                return null;
+            }
+        } else if (when.equals("playerNearDeath")) {
+            kind = Kind.PLAYER_HURT;
+            once = true;
+        } else if (when.equals("armyReduced")) {
+            // Fires on the kill that makes its condition (usually on remainingUnits) true
+            kind = Kind.KILLED;
+            label = null;
+            once = true;
+        } else if (when.equals("entityKilled") || when.equals("anyEntityKilled") || when.equals("anyUnitKilled")) {
+            kind = Kind.KILLED;
+            if (!when.equals("entityKilled")) {
+                label = null;
+            }
+        } else if (when.equals("entityHurt") || when.equals("entityDamaged")) {
+            kind = Kind.HURT;
+        } else if (when.endsWith("Killed")) {
+            kind = Kind.KILLED;
+            label = when.substring(0, when.length() - "Killed".length());
+        } else if (when.endsWith("Damaged") || when.endsWith("Hurt")) {
+            kind = Kind.HURT;
+            label = when.substring(0, when.length() - (when.endsWith("Hurt") ? 4 : 7));
+        } else {
+            System.err.println("RandomEncounters: Unknown trigger '" + def.when + "' in " + source.describe(null));
+            return null;
+        }
+
+        // Repeated conditional triggers only re-arm when a cooldown is given
+        if (def.cooldownSeconds > 0) {
+            once = false;
+        }
+
+        return new CompiledTrigger(index, kind, label, seconds, def.cooldownSeconds * 20, once,
+            JsonExpressions.condition(def.condition, layout, source.child("condition")),
+            CompiledAction.compileAll(def.actions, blocks, labels, layout, source, "actions"));
+    }
+
+    /**
+     * Position of this trigger in the encounter's {@code triggers} list.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return the spawn label this trigger is restricted to, or null for any member
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    public int getSeconds() {
+        return seconds;
+    }
+
+    public int getCooldownTicks() {
+        return cooldownTicks;
+    }
+
+    public boolean isOnce() {
+        return once;
+    }
+
+    public CompiledExpression getCondition() {
+        return condition;
+    }
+
+    public CompiledAction[] getActions() {
+        return actions;
+    }
+}
@@ -0,0 +1,202 @@
+package ai.torchlite.randomencounters.encounters.runtime;
+
+import ai.torchlite.randomencounters.config.json.EncounterConfig;
+import ai.torchlite.randomencounters.encounters.selection.EncounterSelectionIndex;
+import ai.torchlite.randomencounters.encounters.selection.SelectionSnapshot;
+import ai.torchlite.randomencounters.encounters.types.JsonEncounter;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Counts live encounters so the limits from the config can be enforced:
+ * {@code defaults.maxActiveGlobal} and {@code defaults.maxActivePerChunk}
+ * over all encounters, and {@code limits.maxActiveGlobal} and
+ * {@code limits.maxActivePerPlayer} per encounter. A limit of 0 means
+ * unlimited.
+ *
+ * Every admission check is a handful of array and hash lookups on
+ * primitive counters. Counts are taken when {@link EncounterRuntime} reserves
+ * an instance, as its spawn job is submitted, and given back when it
+ * finishes, however it finishes (spawning rolled back or spawning nothing,
+ * defeat, timeout, cleanup actions, its members unloading or server stop).
+ *
+ * Must only be used from the server thread.
+ */
+public class ActiveEncounterRegistry implements EncounterSelectionIndex.Filter {
+
+    private int maxActiveGlobal;
+    private int maxActivePerChunk;
+    private int active;
+
+    private final Map<String, Slot> slots = new HashMap<>(); // by encounter id, so counts survive reloads
+    private final Map<UUID, int[]> playerCounts = new HashMap<>();
+    private final LongIntCounter chunkCounts = new LongIntCounter();
+
+    /**
+     * Per-encounter limits and live count.
+     */
+    static final class Slot {
+        final int index;
+        int maxGlobal;
+        int maxPerPlayer;
+        int active;
+
+        Slot(int index) {
+            this.index = index;
+        }
+    }
+
+    /**
+     * Read the global defaults and every encounter's limits. May be called
+     * again after a reload; counts of running encounters are kept, matched
+     * by encounter id.
+     */
+    public void configure(EncounterConfig.Defaults defaults, List<JsonEncounter> encounters) {
+        maxActiveGlobal = defaults != null ? Math.max(0, defaults.maxActiveGlobal) : 0;
+        maxActivePerChunk = defaults != null ? Math.max(0, defaults.maxActivePerChunk) : 0;
+
+        for (JsonEncounter encounter : encounters) {
+            if (encounter.getEncounterId() == null) {
+                continue;
+            }
+            Slot slot = slots.get(encounter.getEncounterId());
+            if (slot == null) {
+                slot = new Slot(slots.size());
+                slots.put(encounter.getEncounterId(), slot);
+            }
+            EncounterConfig.Encounter.Limits limits = encounter.getDefinition().limits;
+            slot.maxGlobal = limits != null ? Math.max(0, limits.maxActiveGlobal) : 0;
+            slot.maxPerPlayer = limits != null ? Math.max(0, limits.maxActivePerPlayer) : 0;
+        }
+    }
+
+    /**
+     * Cheap pre-check before any encounter is selected: is there room for
+     * one more encounter at all, and in this chunk?
+     */
+    public boolean hasCapacity(int dimension, int chunkX, int chunkZ) {
+        if (maxActiveGlobal > 0 && active >= maxActiveGlobal) {
+            return false;
+        }
+        return maxActivePerChunk <= 0 || chunkCounts.get(chunkKey(dimension, chunkX, chunkZ)) < maxActivePerChunk;
+    }
+
+    /**
+     * Whether {@code encounter} is below its own limits, globally and for the player.
+     */
+    public boolean admits(JsonEncounter encounter, UUID playerId) {
+        Slot slot = slotOf(encounter);
+        if (slot == null) {
+            return true;
+        }
+        if (slot.maxGlobal > 0 && slot.active >= slot.maxGlobal) {
+            return false;
+        }
+        if (slot.maxPerPlayer > 0 && playerId != null) {
+            int[] counts = playerCounts.get(playerId);
+            return counts == null || slot.index >= counts.length - 1 || counts[slot.index] < slot.maxPerPlayer;
+        }
+        return true;
+    }
+
+    private Slot slotOf(JsonEncounter encounter) {
+        String id = encounter.getEncounterId();
+        return id != null ? slots.get(id) : null;
+    }
+
+    @Override
+    public boolean accepts(JsonEncounter encounter, SelectionSnapshot snapshot) {
+        return admits(encounter, snapshot.playerId);
+    }
+
+    void acquire(EncounterInstance instance) {
+        Slot slot = slotOf(instance.getEncounter());
+        instance.setRegistrySlot(slot);
+        active++;
+        chunkCounts.increment(instance.getChunkKey());
+        if (slot != null) {
+            slot.active++;
+        }
+
+        UUID playerId = instance.getPlayerId();
+        if (playerId != null) {
+            // Last element is the player's total, so the array can be dropped at zero
+            int[] counts = playerCounts.get(playerId);
+            int needed = (slot != null ? slot.index + 1 : 0) + 1;
+            if (counts == null || counts.length < needed) {
+                int[] grown = new int[Math.max(needed, slots.size() + 1)];
+                if (counts != null) {
+                    System.arraycopy(counts, 0, grown, 0, counts.length - 1);
+                    grown[grown.length - 1] = counts[counts.length - 1];
+                }
+                counts = grown;
+                playerCounts.put(playerId, counts);
+            }
+            if (slot != null) {
+                counts[slot.index]++;
+            }
+            counts[counts.length - 1]++;
+        }
+    }
+
+    void release(EncounterInstance instance) {
+        Slot slot = instance.getRegistrySlot();
+        active = Math.max(0, active - 1);
+        chunkCounts.decrement(instance.getChunkKey());
+        if (slot != null) {
+            slot.active = Math.max(0, slot.active - 1);
+        }
+
+        UUID playerId = instance.getPlayerId();
+        int[] counts = playerId != null ? playerCounts.get(playerId) : null;
+        if (counts != null) {
+            if (slot != null && slot.index < counts.length - 1 && counts[slot.index] > 0) {
+                counts[slot.index]--;
+            }
+            if (--counts[counts.length - 1] <= 0) {
+                playerCounts.remove(playerId);
+            }
+        }
+    }
+
+    void clear() {
+        active = 0;
+        for (Slot slot : slots.values()) {
+            slot.active = 0;
+        }
+        playerCounts.clear();
+        chunkCounts.clear();
+    }
+
+    public int getActiveCount() {
+        return active;
+    }
+
+    public int getActiveInChunk(long chunkKey) {
+        return chunkCounts.get(chunkKey);
+    }
+
+    /**
+     * @return the number of live instances of {@code encounter}
+     */
+    public int getActiveCount(JsonEncounter encounter) {
+        Slot slot = slotOf(encounter);
+        return slot != null ? slot.active : 0;
+    }
+
+    public int getPlayerCount(UUID playerId) {
+        int[] counts = playerCounts.get(playerId);
+        return counts != null ? counts[counts.length - 1] : 0;
+    }
+
+    /**
+     * Pack a dimension and chunk position into one key. Chunk coordinates
+     * stay within 22 bits for any position inside the world border.
+     */
+    public static long chunkKey(int dimension, int chunkX, int chunkZ) {
+        return ((long) dimension << 44) | ((long) (chunkZ & 0x3FFFFF) << 22) | (chunkX & 0x3FFFFF);
+    }
+}
@@ -0,0 +1,178 @@
+package ai.torchlite.randomencounters.encounters.runtime;
+
+import net.minecraft.entity.EntityLiving;
+import net.minecraft.entity.EntityLivingBase;
+import net.minecraft.entity.player.EntityPlayer;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Distance-based level of detail for encounter mobs. Every second each mob
+ * is put in a band by its distance to the nearest player:
+ * <ul>
+ *   <li>FULL, within the near distance: updated every tick.</li>
+ *   <li>REDUCED, up to the far distance: updated every {@value #REDUCED_INTERVAL}th tick.</li>
+ *   <li>FROZEN, beyond the far distance: updated every {@value #FROZEN_INTERVAL}th tick,
+ *       enough for despawn checks to run.</li>
+ * </ul>
+ * A skipped update skips movement, gravity, fire and potion ticks too, so
+ * only idle mobs are ever skipped: standing on the ground with no path, no
+ * pending move (a formation follower steering to its slot), no target, no
+ * recent damage, not burning, not in water and no active effect.
+ * Anything else updates every tick whatever its band.
+ *
+ * Skipped updates leave nothing on the entity, so a mob saved while frozen
+ * loads as a normal one. Getting hurt puts a mob back into FULL at once.
+ *
+ * Must only be used from the server thread.
+ */
+public class AiLevelOfDetail {
+
+    public enum Band { FULL, REDUCED, FROZEN }
+
+    /** Band distances for encounters that do not set limits.lodNearDistance / limits.lodFarDistance */
+    public static final double DEFAULT_NEAR_DISTANCE = 32;
+    public static final double DEFAULT_FAR_DISTANCE = 64;
+
+    private static final int CHECK_TICKS = 20;
+    private static final int REDUCED_INTERVAL = 4;
+    private static final int FROZEN_INTERVAL = 20;
+
+    /** Entities hash by entity id, so this lookup is cheap for every living update */
+    private final Map<EntityLivingBase, Tracked> tracked = new HashMap<>();
+    private int checkCountdown = 0;
+
+    private static final class Tracked {
+        final EntityLiving entity;
+        final EncounterInstance instance;
+        final double nearSq;
+        final double farSq;
+        Band band = Band.FULL;
+
+        Tracked(EntityLiving entity, EncounterInstance instance, double nearSq, double farSq) {
+            this.entity = entity;
+            this.instance = instance;
+            this.nearSq = nearSq;
+            this.farSq = farSq;
+        }
+    }
+
+    /**
+     * Squared band distances of one encounter instance.
+     */
+    public static final class Bands {
+        final double nearSq;
+        final double farSq;
+
+        /**
+         * @param near distance up to which mobs keep their full AI; defaults when not positive
+         * @param far  distance beyond which mobs are frozen; defaults when not positive, at least {@code near}
+         */
+        public Bands(double near, double far) {
+            if (near <= 0) {
+                near = DEFAULT_NEAR_DISTANCE;
+            }
+            if (far <= 0) {
+                far = Math.max(near, DEFAULT_FAR_DISTANCE);
+            }
+            far = Math.max(near, far);
+            this.nearSq = near * near;
+            this.farSq = far * far;
+        }
+    }
+
+    /**
+     * Start managing {@code entity}, a member that just joined {@code instance}.
+     */
+    public void add(EncounterInstance instance, EntityLiving entity) {
+        if (!entity.isDead) {
+            Bands bands = instance.getLodBands();
+            tracked.put(entity, new Tracked(entity, instance, bands.nearSq, bands.farSq));
+        }
+    }
+
+    /**
+     * Return every mob of {@code instance} to normal updates.
+     */
+    public void remove(EncounterInstance instance) {
+        if (!tracked.isEmpty()) {
+            tracked.values().removeIf(t -> t.instance == instance);
+        }
+    }
+
+    public void remove(EntityLivingBase entity) {
+        tracked.remove(entity);
+    }
+
+    /**
+     * Put {@code entity} back into the FULL band until the next check, e.g. because it was attacked.
+     */
+    public void wake(EntityLivingBase entity) {
+        Tracked t = tracked.get(entity);
+        if (t != null) {
+            t.band = Band.FULL;
+        }
+    }
+
+    public void clear() {
+        tracked.clear();
+    }
+
+    /**
+     * Re-band every managed mob once a second. Call once per server tick.
+     */
+    public void tick() {
+        if (--checkCountdown > 0 || tracked.isEmpty()) {
+            return;
+        }
+        checkCountdown = CHECK_TICKS;
+        for (Iterator<Tracked> it = tracked.values().iterator(); it.hasNext(); ) {
+            Tracked t = it.next();
+            if (t.entity.isDead) {
+                it.remove();
+                continue;
+            }
+            double distanceSq = nearestPlayerSq(t.entity);
+            t.band = distanceSq <= t.nearSq ? Band.FULL : distanceSq <= t.farSq ? Band.REDUCED : Band.FROZEN;
+        }
+    }
+
+    /**
+     * @return whether the living update of {@code entity} should be skipped this tick
+     */
+    public boolean shouldSkipUpdate(EntityLivingBase entity) {
+        if (tracked.isEmpty()) {
+            return false;
+        }
+        Tracked t = tracked.get(entity);
+        if (t == null || t.band == Band.FULL) {
+            return false;
+        }
+        // Offset by entity id so a group's wake-up ticks are spread out
+        long phase = entity.world.getTotalWorldTime() + entity.getEntityId();
+        int interval = t.band == Band.FROZEN ? FROZEN_INTERVAL : REDUCED_INTERVAL;
+        return phase % interval != 0 && isIdle(t.entity);
+    }
+
+    private static boolean isIdle(EntityLiving entity) {
+        return entity.onGround && entity.hurtTime == 0 && !entity.isBurning() && !entity.isInWater()
+            && entity.getAttackTarget() == null && entity.getNavigator().noPath()
+            && !entity.getMoveHelper().isUpdating()
+            && entity.getActivePotionEffects().isEmpty();
+    }
+
+    private static double nearestPlayerSq(EntityLiving entity) {
+        List<EntityPlayer> players = entity.world.playerEntities;
+        double nearest = Double.MAX_VALUE;
+        for (int i = 0; i < players.size(); i++) {
+            EntityPlayer player = players.get(i);
+            if (!player.isSpectator()) {
+                nearest = Math.min(nearest, entity.getDistanceSq(player));
+            }
+        }
+        return nearest;
+    }
+}
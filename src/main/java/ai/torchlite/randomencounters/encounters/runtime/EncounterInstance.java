@@ -0,0 +1,186 @@
+package ai.torchlite.randomencounters.encounters.runtime;
+
+import ai.torchlite.randomencounters.actions.EncounterContext;
+import ai.torchlite.randomencounters.ai.RoutePlan;
+import ai.torchlite.randomencounters.encounters.compiled.CompiledTrigger;
+import ai.torchlite.randomencounters.encounters.types.JsonEncounter;
+import ai.torchlite.randomencounters.expression.ExpressionScope;
+import net.minecraft.entity.EntityLiving;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * One live run of a {@link JsonEncounter}: its spawned entities, evaluation
+ * scope and the timers pending for it. Owned by {@link EncounterRuntime}.
+ */
+public class EncounterInstance {
+
+    /** SPAWNING while its spawn job is queued; counted against the limits from then on */
+    public enum State { SPAWNING, RUNNING, TIMING_OUT, FINISHED }
+
+    private final long id;
+    private final JsonEncounter encounter;
+    private final EncounterContext context;
+    private final ExpressionScope scope;
+    private final UUID playerId;
+    private long startTick;
+    private final long chunkKey;
+
+    private final boolean[] triggerFired;
+    private final long[] triggerReadyTick;
+    private final List<TimerWheel.Timer<Runnable>> timers = new ArrayList<>();
+    private final List<UUID> memberIds = new ArrayList<>();
+    private final List<UUID> playerIds = new ArrayList<>();
+    private final List<RoutePlan> routePlans = new ArrayList<>(0);
+    private State state = State.SPAWNING;
+    private int aliveMembers;
+    private ActiveEncounterRegistry.Slot registrySlot;
+    private AiLevelOfDetail.Bands lodBands;
+
+    EncounterInstance(long id, JsonEncounter encounter, EncounterContext context, ExpressionScope scope,
+                      UUID playerId, long chunkKey) {
+        this.id = id;
+        this.encounter = encounter;
+        this.context = context;
+        this.scope = scope;
+        this.playerId = playerId;
+        this.chunkKey = chunkKey;
+
+        int triggerCount = encounter.getDefinition().triggers != null ? encounter.getDefinition().triggers.size() : 0;
+        this.triggerFired = new boolean[triggerCount];
+        this.triggerReadyTick = new long[triggerCount];
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public JsonEncounter getEncounter() {
+        return encounter;
+    }
+
+    public EncounterContext getContext() {
+        return context;
+    }
+
+    public ExpressionScope getScope() {
+        return scope;
+    }
+
+    public UUID getPlayerId() {
+        return playerId;
+    }
+
+    public long getStartTick() {
+        return startTick;
+    }
+
+    void setStartTick(long startTick) {
+        this.startTick = startTick;
+    }
+
+    /**
+     * @see ActiveEncounterRegistry#chunkKey(int, int, int)
+     */
+    public long getChunkKey() {
+        return chunkKey;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    void setState(State state) {
+        this.state = state;
+    }
+
+    public boolean isActive() {
+        return state != State.FINISHED;
+    }
+
+    public int getAliveMembers() {
+        return aliveMembers;
+    }
+
+    void memberJoined() {
+        aliveMembers++;
+    }
+
+    int memberDied() {
+        return aliveMembers = Math.max(0, aliveMembers - 1);
+    }
+
+    ActiveEncounterRegistry.Slot getRegistrySlot() {
+        return registrySlot;
+    }
+
+    void setRegistrySlot(ActiveEncounterRegistry.Slot registrySlot) {
+        this.registrySlot = registrySlot;
+    }
+
+    AiLevelOfDetail.Bands getLodBands() {
+        return lodBands;
+    }
+
+    void setLodBands(AiLevelOfDetail.Bands lodBands) {
+        this.lodBands = lodBands;
+    }
+
+    boolean canFire(CompiledTrigger trigger, long now) {
+        int index = trigger.getIndex();
+        return !(trigger.isOnce() && triggerFired[index]) && now >= triggerReadyTick[index];
+    }
+
+    void markFired(CompiledTrigger trigger, long now) {
+        int index = trigger.getIndex();
+        triggerFired[index] = true;
+        triggerReadyTick[index] = now + trigger.getCooldownTicks();
+    }
+
+    /**
+     * Entity and player ids registered with the runtime; kept here because
+     * cleanup actions may clear the context before the instance finishes.
+     */
+    List<UUID> getMemberIds() {
+        return memberIds;
+    }
+
+    List<UUID> getPlayerIds() {
+        return playerIds;
+    }
+
+    /**
+     * Route plans created for this run's behaviors; released when it finishes.
+     */
+    List<RoutePlan> getRoutePlans() {
+        return routePlans;
+    }
+
+    /**
+     * @return whether any entity is still alive and in its world; despawned or unloaded ones do not count
+     */
+    boolean hasLivingMembers() {
+        for (EntityLiving entity : context.getAllEntities()) {
+            if (!entity.isDead && entity.isAddedToWorld()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void addTimer(TimerWheel.Timer<Runnable> timer) {
+        if (timers.size() >= 16) {
+            timers.removeIf(t -> !t.isPending());
+        }
+        timers.add(timer);
+    }
+
+    void cancelTimers() {
+        for (TimerWheel.Timer<Runnable> timer : timers) {
+            timer.cancel();
+        }
+        timers.clear();
+    }
+}
@@ -0,0 +1,504 @@
+package ai.torchlite.randomencounters.encounters.runtime;
+
+import ai.torchlite.randomencounters.actions.EncounterContext;
+import ai.torchlite.randomencounters.actions.LabelTable;
+import ai.torchlite.randomencounters.ai.AIMoveToRoute;
+import ai.torchlite.randomencounters.ai.Formation;
+import ai.torchlite.randomencounters.ai.RoutePlan;
+import ai.torchlite.randomencounters.ai.RoutePlanRegistry;
+import ai.torchlite.randomencounters.config.json.EncounterConfig;
+import ai.torchlite.randomencounters.encounters.compiled.CompiledAction;
+import ai.torchlite.randomencounters.encounters.compiled.CompiledBehavior;
+import ai.torchlite.randomencounters.encounters.compiled.CompiledTrigger;
+import ai.torchlite.randomencounters.encounters.spawning.ColumnHeightCache;
+import ai.torchlite.randomencounters.encounters.spawning.SpawnPositionSolver;
+import ai.torchlite.randomencounters.encounters.spawning.SpawnQueue;
+import ai.torchlite.randomencounters.encounters.types.JsonEncounter;
+import ai.torchlite.randomencounters.expression.ExpressionScope;
+import ai.torchlite.randomencounters.expression.VariableLayout;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.EntityCreature;
+import net.minecraft.entity.EntityLiving;
+import net.minecraft.entity.EntityLivingBase;
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Keeps live encounter instances and drives their phases after the initial
+ * spawn: onStart, route behaviors, triggers, waitSeconds, onTimeout and
+ * onCleanup.
+ *
+ * Everything time-based (waits, despawn deadlines, secondsSinceStart
+ * triggers) is a timer on one {@link TimerWheel}, and everything else is
+ * event driven (entity death/damage/removal, route arrival), so the
+ * per-tick cost does not depend on how many instances are active.
+ *
+ * Must only be used from the server thread.
+ */
+public class EncounterRuntime {
+
+    /** Lifetime for encounters that do not set limits.despawnAfterSeconds */
+    public static final int DEFAULT_LIFETIME_SECONDS = 20 * 60;
+
+    private static final int ROUTE_TASK_PRIORITY = 3;
+
+    private final TimerWheel<Runnable> wheel = new TimerWheel<>();
+    private final Map<Long, EncounterInstance> instances = new HashMap<>();
+    private final Map<UUID, Member> members = new HashMap<>();
+    private final Map<UUID, List<EncounterInstance>> playerInstances = new HashMap<>();
+    private final ActiveEncounterRegistry registry = new ActiveEncounterRegistry();
+    private final SpawnQueue spawnQueue = new SpawnQueue();
+    private final ColumnHeightCache heights = new ColumnHeightCache();
+    private final SpawnPositionSolver positionSolver = new SpawnPositionSolver(heights);
+    private final RoutePlanRegistry routePlans = new RoutePlanRegistry();
+    private final AiLevelOfDetail lod = new AiLevelOfDetail();
+    private final MemberRemovalListener removals = new MemberRemovalListener(this::onEntityRemoved);
+    private long nextId = 1;
+
+    private static final class Member {
+        final EncounterInstance instance;
+        final String label;
+
+        Member(EncounterInstance instance, String label) {
+            this.instance = instance;
+            this.label = label;
+        }
+    }
+
+    /**
+     * Count an encounter against the limits as soon as its spawn job is
+     * submitted, so encounters chosen while it is still spawning see it.
+     * The result goes to {@link #start} once the job completes, or to
+     * {@link #cancel} if the job is rolled back or spawns nothing.
+     */
+    public EncounterInstance reserve(JsonEncounter encounter, EntityPlayer player, EncounterContext context,
+                                     ExpressionScope scope) {
+        BlockPos origin = context.getOriginPos();
+        long chunkKey = ActiveEncounterRegistry.chunkKey(context.getWorld().provider.getDimension(),
+            origin.getX() >> 4, origin.getZ() >> 4);
+        EncounterInstance instance = new EncounterInstance(nextId++, encounter, context, scope,
+            player.getUniqueID(), chunkKey);
+        registry.acquire(instance);
+        return instance;
+    }
+
+    /**
+     * Give back the limits taken by {@link #reserve} for an encounter that never started.
+     */
+    public void cancel(EncounterInstance instance) {
+        if (instance.getState() == EncounterInstance.State.SPAWNING) {
+            instance.setState(EncounterInstance.State.FINISHED);
+            registry.release(instance);
+        }
+    }
+
+    /**
+     * Take over a reserved encounter whose entities have just been spawned
+     * into its context, run its onStart actions and schedule its deadlines.
+     */
+    public void start(EncounterInstance instance) {
+        if (instance.getState() != EncounterInstance.State.SPAWNING) {
+            return;
+        }
+        JsonEncounter encounter = instance.getEncounter();
+        EncounterContext context = instance.getContext();
+        ExpressionScope scope = instance.getScope();
+        instance.setState(EncounterInstance.State.RUNNING);
+        instance.setStartTick(wheel.getCurrentTick());
+        instances.put(instance.getId(), instance);
+        removals.acquire(context.getWorld());
+        instance.setLodBands(new AiLevelOfDetail.Bands(encounter.getCompiled().getLodNearDistance(scope),
+            encounter.getCompiled().getLodFarDistance(scope)));
+
+        LabelTable labels = context.getLabels();
+        for (int slot = 0; slot < labels.size(); slot++) {
+            for (EntityLiving entity : context.getEntities(slot)) {
+                addMember(instance, entity, labels.getName(slot));
+            }
+        }
+        for (EntityLiving entity : context.getAllEntities()) {
+            if (!members.containsKey(entity.getUniqueID())) {
+                addMember(instance, entity, null);
+            }
+        }
+        for (EntityPlayer involved : context.getAllPlayers()) {
+            instance.getPlayerIds().add(involved.getUniqueID());
+            playerInstances.computeIfAbsent(involved.getUniqueID(), k -> new ArrayList<>(1)).add(instance);
+        }
+        scope.setNumber(VariableLayout.REMAINING_UNITS, instance.getAliveMembers());
+
+        applyBehaviors(instance);
+
+        int lifetime = encounter.getCompiled().getDespawnAfterSeconds(scope);
+        schedule(instance, (lifetime > 0 ? lifetime : DEFAULT_LIFETIME_SECONDS) * 20L, () -> timeout(instance));
+
+        for (CompiledTrigger trigger : encounter.getCompiled().getTriggers()) {
+            if (trigger.getKind() == CompiledTrigger.Kind.ELAPSED) {
+                schedule(instance, trigger.getSeconds() * 20L, () -> fire(instance, trigger));
+            }
+        }
+
+        run(new ActionSequence(instance, encounter.getCompiled().getOnStart(), () -> {
+            fireAll(instance, CompiledTrigger.Kind.START, null);
+            // Nothing spawned and nothing to react to: the encounter is over once onStart is done
+            if (instance.getMemberIds().isEmpty() && encounter.getCompiled().getTriggers().length == 0) {
+                finish(instance);
+            }
+        }));
+    }
+
+    /**
+     * Every entity joins its instance here, so it is also banded for AI level of detail.
+     */
+    private void addMember(EncounterInstance instance, EntityLiving entity, String label) {
+        members.put(entity.getUniqueID(), new Member(instance, label));
+        instance.getMemberIds().add(entity.getUniqueID());
+        if (!entity.isDead) {
+            instance.memberJoined();
+        }
+        lod.add(instance, entity);
+    }
+
+    /**
+     * Advance all encounter timers by one tick. Call once per server tick.
+     */
+    public void tick() {
+        wheel.advance(Runnable::run);
+        spawnQueue.tick();
+        lod.tick();
+    }
+
+    /**
+     * @return whether this tick's living update of {@code entity} should be skipped
+     * @see AiLevelOfDetail
+     */
+    public boolean shouldSkipUpdate(EntityLivingBase entity) {
+        return lod.shouldSkipUpdate(entity);
+    }
+
+    public void onEntityDeath(EntityLivingBase entity) {
+        Member member = members.remove(entity.getUniqueID());
+        lod.remove(entity);
+        if (member == null || !member.instance.isActive()) {
+            return;
+        }
+
+        EncounterInstance instance = member.instance;
+        int remaining = instance.memberDied();
+        instance.getScope().setNumber(VariableLayout.REMAINING_UNITS, remaining);
+        fireAll(instance, CompiledTrigger.Kind.KILLED, member.label);
+
+        if (remaining == 0 && instance.getState() == EncounterInstance.State.RUNNING) {
+            finish(instance);
+        }
+    }
+
+    /**
+     * A member left its world without dying (despawned, unloaded with its
+     * chunk, changed dimension): it no longer counts as alive, but fires no
+     * killed trigger.
+     */
+    private void onEntityRemoved(Entity entity) {
+        if (!(entity instanceof EntityLivingBase)) {
+            return;
+        }
+        Member member = members.remove(entity.getUniqueID());
+        if (member == null) {
+            return;
+        }
+        lod.remove((EntityLivingBase) entity);
+        EncounterInstance instance = member.instance;
+        if (!instance.isActive()) {
+            return;
+        }
+        int remaining = instance.memberDied();
+        instance.getScope().setNumber(VariableLayout.REMAINING_UNITS, remaining);
+        if (remaining == 0) {
+            // The world is still walking its listeners; finish once it is done
+            schedule(instance, 1, () -> finishIfEmpty(instance));
+        }
+    }
+
+    public void onEntityHurt(EntityLivingBase entity, float amount) {
+        if (entity instanceof EntityPlayer) {
+            List<EncounterInstance> involved = playerInstances.get(entity.getUniqueID());
+            if (involved == null) {
+                return;
+            }
+            for (EncounterInstance instance : new ArrayList<>(involved)) {
+                ExpressionScope scope = instance.getScope();
+                scope.setNumber(VariableLayout.PLAYER_HEALTH, Math.max(0, entity.getHealth() - amount));
+                scope.setNumber(VariableLayout.PLAYER_MAX_HEALTH, entity.getMaxHealth());
+                fireAll(instance, CompiledTrigger.Kind.PLAYER_HURT, null);
+            }
+            return;
+        }
+
+        Member member = members.get(entity.getUniqueID());
+        if (member != null && member.instance.isActive()) {
+            lod.wake(entity);
+            fireAll(member.instance, CompiledTrigger.Kind.HURT, member.label);
+        }
+    }
+
+    /**
+     * Release the members standing in an unloading chunk, the same way as
+     * any other member leaving its world. They are saved with the chunk and
+     * left alone; members elsewhere keep the encounter running, and it ends
+     * once none are left.
+     */
+    public void onChunkUnload(World world, int chunkX, int chunkZ) {
+        spawnQueue.onChunkUnload(world, chunkX, chunkZ);
+        heights.onChunkUnload(world, chunkX, chunkZ);
+        if (members.isEmpty()) {
+            return;
+        }
+        List<EntityLiving> unloading = new ArrayList<>();
+        for (EncounterInstance instance : instances.values()) {
+            if (instance.getContext().getWorld() != world) {
+                continue;
+            }
+            for (EntityLiving entity : instance.getContext().getAllEntities()) {
+                if (entity.chunkCoordX == chunkX && entity.chunkCoordZ == chunkZ) {
+                    unloading.add(entity);
+                }
+            }
+        }
+        for (EntityLiving entity : unloading) {
+            onEntityRemoved(entity);
+        }
+    }
+
+    private void onRouteCompleted(EncounterInstance instance) {
+        fireAll(instance, CompiledTrigger.Kind.ARRIVED, null);
+    }
+
+    /**
+     * End every live encounter without running its actions, e.g. on server stop.
+     */
+    public void shutdown() {
+        spawnQueue.clear();
+        heights.clear();
+        routePlans.clear();
+        lod.clear();
+        removals.clear();
+        for (EncounterInstance instance : instances.values()) {
+            instance.setState(EncounterInstance.State.FINISHED);
+            instance.cancelTimers();
+            instance.getContext().cleanup();
+        }
+        instances.clear();
+        members.clear();
+        playerInstances.clear();
+        registry.clear();
+    }
+
+    /**
+     * Encounters spawn through this queue; {@link #start} runs once their last entity is in the world.
+     */
+    public SpawnQueue getSpawnQueue() {
+        return spawnQueue;
+    }
+
+    public SpawnPositionSolver getPositionSolver() {
+        return positionSolver;
+    }
+
+    public ActiveEncounterRegistry getRegistry() {
+        return registry;
+    }
+
+    public int getActiveCount() {
+        return instances.size();
+    }
+
+    public Collection<EncounterInstance> getInstances() {
+        return Collections.unmodifiableCollection(instances.values());
+    }
+
+    public int getPendingTimerCount() {
+        return wheel.size();
+    }
+
+    // ---- Phases ----
+
+    private void timeout(EncounterInstance instance) {
+        if (instance.getState() != EncounterInstance.State.RUNNING) {
+            return;
+        }
+        instance.setState(EncounterInstance.State.TIMING_OUT);
+        run(new ActionSequence(instance, instance.getEncounter().getCompiled().getOnTimeout(), () -> {
+            fireAll(instance, CompiledTrigger.Kind.TIMEOUT, null);
+            finish(instance);
+        }));
+    }
+
+    /**
+     * Run onCleanup, remove whatever the encounter left behind and forget the instance.
+     */
+    private void finish(EncounterInstance instance) {
+        if (!instance.isActive()) {
+            return;
+        }
+        instance.setState(EncounterInstance.State.FINISHED);
+        instance.cancelTimers();
+
+        // Cleanup actions run immediately; waits inside onCleanup are ignored
+        for (CompiledAction action : instance.getEncounter().getCompiled().getOnCleanup()) {
+            action.run(instance.getContext(), instance.getScope());
+        }
+
+        for (UUID memberId : instance.getMemberIds()) {
+            members.remove(memberId);
+        }
+        for (UUID playerId : instance.getPlayerIds()) {
+            List<EncounterInstance> involved = playerInstances.get(playerId);
+            if (involved != null) {
+                involved.remove(instance);
+                if (involved.isEmpty()) {
+                    playerInstances.remove(playerId);
+                }
+            }
+        }
+        for (RoutePlan plan : instance.getRoutePlans()) {
+            routePlans.release(plan);
+        }
+        lod.remove(instance);
+        removals.release(instance.getContext().getWorld());
+        EncounterContext context = instance.getContext();
+        context.cleanup();
+        instances.remove(instance.getId());
+        registry.release(instance);
+    }
+
+    private void fireAll(EncounterInstance instance, CompiledTrigger.Kind kind, String label) {
+        for (CompiledTrigger trigger : instance.getEncounter().getCompiled().getTriggers()) {
+            if (trigger.getKind() == kind && (trigger.getLabel() == null || trigger.getLabel().equals(label))) {
+                fire(instance, trigger);
+            }
+        }
+    }
+
+    private void fire(EncounterInstance instance, CompiledTrigger trigger) {
+        if (!instance.isActive()) {
+            return;
+        }
+        long now = wheel.getCurrentTick();
+        if (!instance.canFire(trigger, now) || !trigger.getCondition().evalBoolean(instance.getScope())) {
+            return;
+        }
+        instance.markFired(trigger, now);
+        run(new ActionSequence(instance, trigger.getActions(), null));
+    }
+
+    private void applyBehaviors(EncounterInstance instance) {
+        EncounterContext context = instance.getContext();
+        for (CompiledBehavior linked : instance.getEncounter().getCompiled().getBehaviors()) {
+            EncounterConfig.Behavior behavior = linked.getBehavior();
+            // Only route following is driven by the runtime so far
+            if (!"moveToRoute".equals(behavior.type)) {
+                continue;
+            }
+
+            EncounterConfig.Route route = linked.getRoute();
+            String applyTo = linked.getApplyTo();
+            Collection<EntityLiving> targets = applyTo == null || "all".equals(applyTo)
+                ? context.getAllEntities() : context.getEntities(applyTo);
+            int maxTicks = behavior.timeoutSeconds > 0 ? behavior.timeoutSeconds * 20 : Integer.MAX_VALUE;
+            // Waypoints and paths are resolved once and shared by everyone on the route
+            RoutePlan plan = new RoutePlan(context.getWorld(), route, context.getOriginPos(), heights);
+            routePlans.register(plan);
+            instance.getRoutePlans().add(plan);
+            double speed = behavior.speed > 0 ? behavior.speed : 1.0;
+            List<EntityCreature> creatures = new ArrayList<>();
+            for (EntityLiving entity : targets) {
+                if (entity instanceof EntityCreature) {
+                    creatures.add((EntityCreature) entity);
+                }
+            }
+            if (creatures.size() == 1) {
+                AIMoveToRoute task = new AIMoveToRoute(creatures.get(0), plan, speed, maxTicks);
+                task.setOnCompleted(() -> onRouteCompleted(instance));
+                creatures.get(0).tasks.addTask(ROUTE_TASK_PRIORITY, task);
+            } else if (!creatures.isEmpty()) {
+                // A group walks in formation: only the leader (spawned first) pathfinds
+                Formation formation = new Formation(creatures, (leader, startWaypoint) -> {
+                    AIMoveToRoute task = new AIMoveToRoute(leader, plan, speed, maxTicks, startWaypoint);
+                    task.setOnCompleted(() -> onRouteCompleted(instance));
+                    return task;
+                }, ROUTE_TASK_PRIORITY);
+                formation.start(speed);
+            }
+        }
+    }
+
+    // ---- Action sequences ----
+
+    private void schedule(EncounterInstance instance, long delayTicks, Runnable task) {
+        instance.addTimer(wheel.schedule(delayTicks, task));
+    }
+
+    /**
+     * Run a sequence until it finishes or hits a waitSeconds; the rest is
+     * resumed from the timer wheel.
+     */
+    private void run(ActionSequence sequence) {
+        EncounterInstance instance = sequence.instance;
+        EncounterContext context = instance.getContext();
+        while (sequence.next < sequence.actions.length) {
+            if (!instance.isActive()) {
+                return;
+            }
+            sequence.actions[sequence.next++].run(context, instance.getScope());
+
+            if (context.hasDelay()) {
+                int ticks = context.getDelayTicks();
+                context.reduceDelay(ticks);
+                schedule(instance, ticks, sequence);
+                finishIfEmpty(instance);
+                return;
+            }
+        }
+        if (sequence.then != null && instance.isActive()) {
+            sequence.then.run();
+        }
+        finishIfEmpty(instance);
+    }
+
+    /**
+     * Actions like cleanup/removeEntities kill members without a death event.
+     */
+    private void finishIfEmpty(EncounterInstance instance) {
+        if (instance.getState() == EncounterInstance.State.RUNNING && !instance.getMemberIds().isEmpty()
+            && !instance.hasLivingMembers()) {
+            finish(instance);
+        }
+    }
+
+    private final class ActionSequence implements Runnable {
+        final EncounterInstance instance;
+        final CompiledAction[] actions;
+        final Runnable then;
+        int next;
+
+        ActionSequence(EncounterInstance instance, CompiledAction[] actions, Runnable then) {
+            this.instance = instance;
+            this.actions = actions;
+            this.then = then;
+        }
+
+        @Override
+        public void run() {
+            EncounterRuntime.this.run(this);
+        }
+    }
+}
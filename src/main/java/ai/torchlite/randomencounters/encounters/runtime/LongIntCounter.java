@@ -0,0 +1,132 @@
+package ai.torchlite.randomencounters.encounters.runtime;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing map from a long key to a positive int count, without
+ * boxing. Keys whose count drops to zero are removed, so the table only
+ * holds keys that are currently in use.
+ *
+ * Not thread safe; use from the server thread only.
+ */
+public final class LongIntCounter {
+
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] keys;
+    private int[] counts; // 0 marks an empty slot
+    private int mask;
+    private int size;
+
+    public LongIntCounter() {
+        this(16);
+    }
+
+    public LongIntCounter(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expected / LOAD_FACTOR)) - 1) << 1;
+        keys = new long[capacity];
+        counts = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    public int get(long key) {
+        for (int slot = slot(key); counts[slot] != 0; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return counts[slot];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return the count after incrementing
+     */
+    public int increment(long key) {
+        int slot = slot(key);
+        for (; counts[slot] != 0; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return ++counts[slot];
+            }
+        }
+        keys[slot] = key;
+        counts[slot] = 1;
+        if (++size > (mask + 1) * LOAD_FACTOR) {
+            rehash(keys.length << 1);
+        }
+        return 1;
+    }
+
+    /**
+     * @return the count after decrementing; never below zero
+     */
+    public int decrement(long key) {
+        for (int slot = slot(key); counts[slot] != 0; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                if (--counts[slot] == 0) {
+                    size--;
+                    shiftBack(slot);
+                    return 0;
+                }
+                return counts[slot];
+            }
+        }
+        return 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(counts, 0);
+        size = 0;
+    }
+
+    private int slot(long key) {
+        // Murmur3 finalizer; chunk keys are highly regular
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h & mask;
+    }
+
+    /**
+     * Backward-shift deletion: move later entries of the probe run into the
+     * freed slot so lookups never need tombstones.
+     */
+    private void shiftBack(int free) {
+        int slot = (free + 1) & mask;
+        while (counts[slot] != 0) {
+            int home = slot(keys[slot]);
+            // Move the entry if its home is not cyclically within (free, slot]
+            if (((slot - home) & mask) >= ((slot - free) & mask)) {
+                keys[free] = keys[slot];
+                counts[free] = counts[slot];
+                counts[slot] = 0;
+                free = slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldCounts = counts;
+        keys = new long[capacity];
+        counts = new int[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldCounts[i] != 0) {
+                int slot = slot(oldKeys[i]);
+                while (counts[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package ai.torchlite.randomencounters.encounters.runtime;
+
+/**
+ * Open-addressing map from a long key to an expiry time, without boxing.
+ *
+ * Expired entries read as absent immediately, but are only removed by
+ * {@link #expire(long, int)}, which resumes a sweep from where the last call
+ * stopped and examines a bounded number of slots. Calling it once per tick
+ * keeps the table proportional to the live entries without ever scanning the
+ * whole table in one go. Rehashing drops expired entries as well, and the
+ * table shrinks again after a sweep finds it mostly empty.
+ *
+ * Not thread safe; use from the server thread only.
+ */
+public final class LongTtlMap {
+
+    private static final int MIN_CAPACITY = 16;
+    private static final long EMPTY = 0L; // expiry of an empty slot; real expiries are always > 0
+
+    private long[] keys;
+    private long[] expiries;
+    private int mask;
+    private int size;
+    private int cursor;
+
+    public LongTtlMap() {
+        keys = new long[MIN_CAPACITY];
+        expiries = new long[MIN_CAPACITY];
+        mask = MIN_CAPACITY - 1;
+    }
+
+    /**
+     * @return the expiry time of {@code key}, or 0 if it is absent or expired at {@code now}
+     */
+    public long get(long key, long now) {
+        for (int slot = slot(key); expiries[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return expiries[slot] > now ? expiries[slot] : 0;
+            }
+        }
+        return 0;
+    }
+
+    public boolean contains(long key, long now) {
+        return get(key, now) != 0;
+    }
+
+    /**
+     * Set {@code key} to expire at {@code expiresAt}, replacing any earlier expiry.
+     */
+    public void put(long key, long expiresAt, long now) {
+        if (expiresAt <= now) {
+            return;
+        }
+        int slot = slot(key);
+        for (; expiries[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                expiries[slot] = expiresAt;
+                return;
+            }
+        }
+        keys[slot] = key;
+        expiries[slot] = expiresAt;
+        if (++size > (mask + 1) >> 1) {
+            rehash(keys.length << 1, now);
+        }
+    }
+
+    /**
+     * Examine up to {@code budget} slots and remove the expired entries found there.
+     * @return the number of entries removed
+     */
+    public int expire(long now, int budget) {
+        if (size == 0) {
+            if (keys.length > MIN_CAPACITY) {
+                clear();
+            }
+            return 0;
+        }
+        int removed = 0;
+        for (int i = 0; i < budget && size > 0; i++) {
+            long expiry = expiries[cursor];
+            if (expiry != EMPTY && expiry <= now) {
+                removeAt(cursor);
+                removed++;
+                // Backward shift may have moved a later entry into this slot; check it again
+                continue;
+            }
+            cursor = (cursor + 1) & mask;
+            if (cursor == 0 && keys.length > MIN_CAPACITY && size < (mask + 1) >> 3) {
+                rehash(capacityFor(size), now);
+                break;
+            }
+        }
+        return removed;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return keys.length;
+    }
+
+    public void clear() {
+        keys = new long[MIN_CAPACITY];
+        expiries = new long[MIN_CAPACITY];
+        mask = MIN_CAPACITY - 1;
+        size = 0;
+        cursor = 0;
+    }
+
+    private int slot(long key) {
+        // Murmur3 finalizer; chunk keys are highly regular
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h & mask;
+    }
+
+    private void removeAt(int free) {
+        size--;
+        expiries[free] = EMPTY;
+        // Backward-shift deletion keeps probe runs intact without tombstones
+        int slot = (free + 1) & mask;
+        while (expiries[slot] != EMPTY) {
+            int home = slot(keys[slot]);
+            if (((slot - home) & mask) >= ((slot - free) & mask)) {
+                keys[free] = keys[slot];
+                expiries[free] = expiries[slot];
+                expiries[slot] = EMPTY;
+                free = slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private static int capacityFor(int entries) {
+        int capacity = MIN_CAPACITY;
+        while (capacity >> 1 < entries + 1) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private void rehash(int capacity, long now) {
+        long[] oldKeys = keys;
+        long[] oldExpiries = expiries;
+        keys = new long[capacity];
+        expiries = new long[capacity];
+        mask = capacity - 1;
+        size = 0;
+        cursor = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldExpiries[i] > now) {
+                int slot = slot(oldKeys[i]);
+                while (expiries[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                expiries[slot] = oldExpiries[i];
+                size++;
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package ai.torchlite.randomencounters.encounters.runtime;
+
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.util.SoundCategory;
+import net.minecraft.util.SoundEvent;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.IWorldEventListener;
+import net.minecraft.world.World;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Reports entities leaving a world without dying: despawned, unloaded with
+ * their chunk or moved to another dimension. Listens only to worlds that
+ * have a live encounter, counted by {@link #acquire} / {@link #release}.
+ *
+ * Must only be used from the server thread.
+ */
+class MemberRemovalListener implements IWorldEventListener {
+
+    private final Consumer<Entity> onRemoved;
+    private final Map<World, Integer> users = new HashMap<>();
+
+    MemberRemovalListener(Consumer<Entity> onRemoved) {
+        this.onRemoved = onRemoved;
+    }
+
+    void acquire(World world) {
+        Integer count = users.get(world);
+        if (count == null) {
+            world.addEventListener(this);
+            count = 0;
+        }
+        users.put(world, count + 1);
+    }
+
+    void release(World world) {
+        Integer count = users.get(world);
+        if (count == null) {
+            return;
+        }
+        if (count <= 1) {
+            users.remove(world);
+            world.removeEventListener(this);
+        } else {
+            users.put(world, count - 1);
+        }
+    }
+
+    void clear() {
+        for (World world : users.keySet()) {
+            world.removeEventListener(this);
+        }
+        users.clear();
+    }
+
+    @Override
+    public void onEntityRemoved(Entity entity) {
+        onRemoved.accept(entity);
+    }
+
+    // ---- Not needed for member tracking ----
+
+    @Override
+    public void notifyBlockUpdate(World world, BlockPos pos, IBlockState oldState, IBlockState newState, int flags) {
+    }
+
+    @Override
+    public void notifyLightSet(BlockPos pos) {
+    }
+
+    @Override
+    public void markBlockRangeForRenderUpdate(int x1, int y1, int z1, int x2, int y2, int z2) {
+    }
+
+    @Override
+    public void playSoundToAllNearExcept(EntityPlayer player, SoundEvent sound, SoundCategory category,
+                                         double x, double y, double z, float volume, float pitch) {
+    }
+
+    @Override
+    public void playRecord(SoundEvent sound, BlockPos pos) {
+    }
+
+    @Override
+    public void spawnParticle(int particleId, boolean ignoreRange, double x, double y, double z,
+                              double xSpeed, double ySpeed, double zSpeed, int... parameters) {
+    }
+
+    @Override
+    public void spawnParticle(int particleId, boolean ignoreRange, boolean minimiseLevel, double x, double y, double z,
+                              double xSpeed, double ySpeed, double zSpeed, int... parameters) {
+    }
+
+    @Override
+    public void onEntityAdded(Entity entity) {
+    }
+
+    @Override
+    public void broadcastSound(int soundId, BlockPos pos, int data) {
+    }
+
+    @Override
+    public void playEvent(EntityPlayer player, int type, BlockPos pos, int data) {
+    }
+
+    @Override
+    public void sendBlockBreakProgress(int breakerId, BlockPos pos, int progress) {
+    }
+}
@@ -0,0 +1,157 @@
+package ai.torchlite.randomencounters.encounters.runtime;
+
+/**
+ * Hierarchical timing wheel measured in server ticks.
+ *
+ * Four levels of 64 slots cover delays up to 2^24 ticks (about 9.7 days);
+ * longer delays are clamped to the horizon. Scheduling and cancelling are
+ * O(1). Advancing one tick touches one level-0 slot, plus a cascade of one
+ * higher-level slot every 64 ticks, so the cost per tick does not depend on
+ * how many timers are pending. Timers are intrusive list nodes and are
+ * never allocated by the wheel itself.
+ *
+ * Not thread safe; use from the server thread only.
+ */
+public class TimerWheel<T> {
+
+    public interface Handler<T> {
+        void onExpired(T payload);
+    }
+
+    private static final int LEVELS = 4;
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final long MAX_DELAY = (1L << (SLOT_BITS * LEVELS)) - 1;
+
+    private final Timer<T>[][] wheels;
+    private long currentTick;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    public TimerWheel() {
+        wheels = new Timer[LEVELS][SLOTS];
+        for (int level = 0; level < LEVELS; level++) {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                // Sentinel heads keep link/unlink branch free
+                Timer<T> head = new Timer<>(null);
+                head.next = head;
+                head.prev = head;
+                wheels[level][slot] = head;
+            }
+        }
+    }
+
+    /**
+     * Schedule {@code payload} to expire after {@code delayTicks} ticks (at least one).
+     */
+    public Timer<T> schedule(long delayTicks, T payload) {
+        Timer<T> timer = new Timer<>(payload);
+        timer.deadline = currentTick + Math.max(1, Math.min(delayTicks, MAX_DELAY));
+        timer.wheel = this;
+        insert(timer);
+        size++;
+        return timer;
+    }
+
+    /**
+     * Advance the wheel by one tick and deliver every timer that became due.
+     */
+    public void advance(Handler<T> handler) {
+        currentTick++;
+
+        // On each level boundary pull the due higher-level slot down before expiring
+        // level 0; highest level first so its timers can land in a lower slot still to cascade
+        int levels = 0;
+        while (levels < LEVELS - 1 && (currentTick & ((1L << (SLOT_BITS * (levels + 1))) - 1)) == 0) {
+            levels++;
+        }
+        for (int level = levels; level >= 1; level--) {
+            cascade(wheels[level][(int) ((currentTick >>> (SLOT_BITS * level)) & SLOT_MASK)]);
+        }
+
+        Timer<T> head = wheels[0][(int) (currentTick & SLOT_MASK)];
+        while (head.next != head) {
+            Timer<T> timer = head.next;
+            unlink(timer);
+            timer.wheel = null;
+            size--;
+            handler.onExpired(timer.payload);
+        }
+    }
+
+    public long getCurrentTick() {
+        return currentTick;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void cascade(Timer<T> head) {
+        Timer<T> timer = head.next;
+        head.next = head;
+        head.prev = head;
+        while (timer != head) {
+            Timer<T> next = timer.next;
+            insert(timer);
+            timer = next;
+        }
+    }
+
+    private void insert(Timer<T> timer) {
+        long delay = timer.deadline - currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && delay >= (1L << (SLOT_BITS * (level + 1)))) {
+            level++;
+        }
+        int slot = (int) ((timer.deadline >>> (SLOT_BITS * level)) & SLOT_MASK);
+        Timer<T> head = wheels[level][slot];
+        timer.prev = head.prev;
+        timer.next = head;
+        head.prev.next = timer;
+        head.prev = timer;
+    }
+
+    private static <T> void unlink(Timer<T> timer) {
+        timer.prev.next = timer.next;
+        timer.next.prev = timer.prev;
+        timer.prev = null;
+        timer.next = null;
+    }
+
+    public static final class Timer<T> {
+        private final T payload;
+        private long deadline;
+        private Timer<T> prev;
+        private Timer<T> next;
+        private TimerWheel<T> wheel;
+
+        private Timer(T payload) {
+            this.payload = payload;
+        }
+
+        public T getPayload() {
+            return payload;
+        }
+
+        public long getDeadline() {
+            return deadline;
+        }
+
+        public boolean isPending() {
+            return wheel != null;
+        }
+
+        /**
+         * Remove the timer if it has not fired yet. Safe to call more than once.
+         */
+        public void cancel() {
+            if (wheel != null) {
+                unlink(this);
+                wheel.size--;
+                wheel = null;
+            }
+        }
+    }
+}
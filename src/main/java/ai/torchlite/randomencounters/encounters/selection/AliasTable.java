@@ -0,0 +1,80 @@
+package ai.torchlite.randomencounters.encounters.selection;
+
+import java.util.Random;
+
+/**
+ * Walker/Vose alias table for O(1) weighted sampling over a fixed set of weights.
+ */
+public final class AliasTable {
+
+    private final double[] probability;
+    private final int[] alias;
+
+    public AliasTable(double[] weights) {
+        int n = weights.length;
+        probability = new double[n];
+        alias = new int[n];
+        if (n == 0) {
+            return;
+        }
+
+        double total = 0;
+        for (double weight : weights) {
+            total += Math.max(0, weight);
+        }
+
+        double[] scaled = new double[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int smallCount = 0;
+        int largeCount = 0;
+
+        for (int i = 0; i < n; i++) {
+            scaled[i] = total > 0 ? Math.max(0, weights[i]) * n / total : 1.0;
+            if (scaled[i] < 1.0) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+
+            probability[less] = scaled[less];
+            alias[less] = more;
+
+            scaled[more] = (scaled[more] + scaled[less]) - 1.0;
+            if (scaled[more] < 1.0) {
+                small[smallCount++] = more;
+            } else {
+                large[largeCount++] = more;
+            }
+        }
+
+        // Leftovers are numerically ~1.0
+        while (largeCount > 0) {
+            probability[large[--largeCount]] = 1.0;
+        }
+        while (smallCount > 0) {
+            probability[small[--smallCount]] = 1.0;
+        }
+    }
+
+    public int size() {
+        return probability.length;
+    }
+
+    /**
+     * @return index of the sampled weight, or -1 if the table is empty
+     */
+    public int sample(Random random) {
+        int n = probability.length;
+        if (n == 0) {
+            return -1;
+        }
+        int column = random.nextInt(n);
+        return random.nextDouble() < probability[column] ? column : alias[column];
+    }
+}
@@ -0,0 +1,262 @@
+package ai.torchlite.randomencounters.encounters.selection;
+
+import ai.torchlite.randomencounters.config.json.EncounterConfig;
+import ai.torchlite.randomencounters.encounters.runtime.LongTtlMap;
+import net.minecraft.util.ResourceLocation;
+import net.minecraft.world.biome.Biome;
+import net.minecraftforge.fml.common.registry.ForgeRegistries;
+
+import java.util.BitSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * A selector block compiled into allocation-free checks: biome and dimension
+ * sets become bitsets over registry IDs, the time window an int range and the
+ * weather list a bit mask. Unset fields accept everything.
+ *
+ * Cooldowns are the only mutable state: the time the selector may next
+ * fire anywhere, and a {@link LongTtlMap} of chunk cooldowns keyed by
+ * packed chunk position. Both are only touched from the server thread.
+ */
+public final class CompiledSelector {
+
+    /** Selector used by encounters without a selectorRef. */
+    public static final CompiledSelector ANY = new CompiledSelector("any");
+
+    private static final int DAY_LENGTH = 24000;
+    private static final int ALL_WEATHER = SelectionSnapshot.WEATHER_CLEAR
+        | SelectionSnapshot.WEATHER_RAIN | SelectionSnapshot.WEATHER_THUNDER;
+
+    private final String name;
+
+    private BitSet biomes;            // null = any biome
+    private BitSet dimensions;        // null = any dimension, index = dimension id >= 0
+    private BitSet negativeDimensions; // index = -dimension - 1
+    private int timeFrom = -1;        // -1 = any time
+    private int timeTo = -1;
+    private int weatherMask = ALL_WEATHER;
+
+    private int minLevel;
+    private double maxDistanceSqFromSpawn = Double.MAX_VALUE;
+    private int minOnlinePlayers;
+    private int maxNearbyPlayers = Integer.MAX_VALUE;
+    private boolean requireNotRiding;
+
+    private long globalCooldownMillis;
+    private long chunkCooldownMillis;
+    private long globalReadyAt;
+    private LongTtlMap chunkCooldowns; // null = no per-chunk cooldown
+
+    private CompiledSelector(String name) {
+        this.name = name;
+    }
+
+    public static CompiledSelector compile(String name, EncounterConfig.Selector selector) {
+        CompiledSelector compiled = new CompiledSelector(name);
+        if (selector == null) {
+            return compiled;
+        }
+
+        if (selector.biomes != null && !selector.biomes.isEmpty()) {
+            compiled.biomes = new BitSet();
+            for (String biomeName : selector.biomes) {
+                Biome biome = biomeName != null ? ForgeRegistries.BIOMES.getValue(new ResourceLocation(biomeName)) : null;
+                if (biome == null) {
+                    System.err.println("RandomEncounters: Unknown biome '" + biomeName + "' in selector " + name);
+                    continue;
+                }
+                compiled.biomes.set(Biome.getIdForBiome(biome));
+            }
+        }
+
+        if (selector.dimensions != null && !selector.dimensions.isEmpty()) {
+            compiled.dimensions = new BitSet();
+            compiled.negativeDimensions = new BitSet();
+            for (Integer dimension : selector.dimensions) {
+                if (dimension == null) {
+                    continue;
+                }
+                if (dimension >= 0) {
+                    compiled.dimensions.set(dimension);
+                } else {
+                    compiled.negativeDimensions.set(-dimension - 1);
+                }
+            }
+        }
+
+        if (selector.timeOfDay != null) {
+            compiled.timeFrom = Math.floorMod(selector.timeOfDay.from, DAY_LENGTH);
+            compiled.timeTo = Math.floorMod(selector.timeOfDay.to, DAY_LENGTH);
+        }
+
+        if (selector.weather != null && !selector.weather.isEmpty()) {
+            int mask = 0;
+            for (String weather : selector.weather) {
+                String key = weather != null ? weather.toLowerCase(Locale.ROOT) : "";
+                if ("clear".equals(key)) {
+                    mask |= SelectionSnapshot.WEATHER_CLEAR;
+                } else if ("rain".equals(key)) {
+                    mask |= SelectionSnapshot.WEATHER_RAIN;
+                } else if ("thunder".equals(key)) {
+                    mask |= SelectionSnapshot.WEATHER_THUNDER;
+                } else {
+                    System.err.println("RandomEncounters: Unknown weather '" + weather + "' in selector " + name);
+                }
+            }
+            compiled.weatherMask = mask;
+        }
+
+        EncounterConfig.Selector.PlayerConstraints constraints = selector.playerConstraints;
+        if (constraints != null) {
+            compiled.minLevel = constraints.minLevel;
+            if (constraints.maxDistanceFromSpawn > 0) {
+                compiled.maxDistanceSqFromSpawn = (double) constraints.maxDistanceFromSpawn * constraints.maxDistanceFromSpawn;
+            }
+            compiled.minOnlinePlayers = constraints.minOnlinePlayers;
+            if (constraints.maxNearbyPlayers > 0) {
+                compiled.maxNearbyPlayers = constraints.maxNearbyPlayers;
+            }
+            compiled.requireNotRiding = constraints.requireNotRiding;
+        }
+
+        EncounterConfig.Selector.Cooldowns cooldowns = selector.cooldowns;
+        if (cooldowns != null) {
+            compiled.globalCooldownMillis = Math.max(0, cooldowns.globalSeconds) * 1000L;
+            compiled.chunkCooldownMillis = Math.max(0, cooldowns.perChunkSeconds) * 1000L;
+            if (compiled.chunkCooldownMillis > 0) {
+                compiled.chunkCooldowns = new LongTtlMap();
+            }
+        }
+
+        return compiled;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean test(SelectionSnapshot snapshot) {
+        return testLocation(snapshot.dimension, snapshot.biomeId, snapshot.timeOfDay) && testConditions(snapshot);
+    }
+
+    /**
+     * Static part of the selector that the selection index buckets on.
+     */
+    public boolean testLocation(int dimension, int biomeId, int timeOfDay) {
+        return acceptsDimension(dimension) && acceptsBiome(biomeId) && acceptsTime(timeOfDay);
+    }
+
+    /**
+     * Dynamic part of the selector: weather, player constraints and cooldowns.
+     */
+    public boolean testConditions(SelectionSnapshot snapshot) {
+        return (weatherMask & snapshot.weatherMask) != 0
+            && snapshot.playerLevel >= minLevel
+            && snapshot.distanceSqFromSpawn <= maxDistanceSqFromSpawn
+            && snapshot.onlinePlayers >= minOnlinePlayers
+            && snapshot.nearbyPlayers <= maxNearbyPlayers
+            && !(requireNotRiding && snapshot.riding)
+            && snapshot.now >= globalReadyAt
+            && (chunkCooldowns == null || !chunkCooldowns.contains(snapshot.chunkKey, snapshot.now));
+    }
+
+    public boolean hasCooldowns() {
+        return globalCooldownMillis > 0 || chunkCooldowns != null;
+    }
+
+    /**
+     * Start the global and chunk cooldowns after an encounter using this selector ran.
+     */
+    public void recordTriggered(SelectionSnapshot snapshot) {
+        if (globalCooldownMillis > 0) {
+            globalReadyAt = snapshot.now + globalCooldownMillis;
+        }
+        if (chunkCooldowns != null) {
+            chunkCooldowns.put(snapshot.chunkKey, snapshot.now + chunkCooldownMillis, snapshot.now);
+        }
+    }
+
+    /**
+     * Carry running cooldowns over from the selector with the same name in
+     * the configuration this one replaces.
+     */
+    void inheritCooldowns(CompiledSelector previous) {
+        if (globalCooldownMillis > 0) {
+            globalReadyAt = previous.globalReadyAt;
+        }
+        if (chunkCooldowns != null && previous.chunkCooldowns != null) {
+            chunkCooldowns = previous.chunkCooldowns;
+        }
+    }
+
+    /**
+     * Evict up to {@code budget} slots' worth of expired chunk cooldowns.
+     */
+    void expireCooldowns(long now, int budget) {
+        if (chunkCooldowns != null) {
+            chunkCooldowns.expire(now, budget);
+        }
+    }
+
+    /**
+     * @return the number of chunks currently tracked for this selector's cooldown
+     */
+    public int getChunkCooldownCount() {
+        return chunkCooldowns != null ? chunkCooldowns.size() : 0;
+    }
+
+    public boolean acceptsDimension(int dimension) {
+        if (dimensions == null) {
+            return true;
+        }
+        return dimension >= 0 ? dimensions.get(dimension) : negativeDimensions.get(-dimension - 1);
+    }
+
+    public boolean acceptsBiome(int biomeId) {
+        return biomes == null || (biomeId >= 0 && biomes.get(biomeId));
+    }
+
+    public boolean acceptsTime(int timeOfDay) {
+        if (timeFrom < 0) {
+            return true;
+        }
+        if (timeFrom <= timeTo) {
+            return timeOfDay >= timeFrom && timeOfDay < timeTo;
+        }
+        // Window wraps past midnight
+        return timeOfDay >= timeFrom || timeOfDay < timeTo;
+    }
+
+    boolean hasDimensionFilter() {
+        return dimensions != null;
+    }
+
+    boolean hasBiomeFilter() {
+        return biomes != null;
+    }
+
+    void collectDimensions(Set<Integer> out) {
+        if (dimensions != null) {
+            for (int i = dimensions.nextSetBit(0); i >= 0; i = dimensions.nextSetBit(i + 1)) {
+                out.add(i);
+            }
+            for (int i = negativeDimensions.nextSetBit(0); i >= 0; i = negativeDimensions.nextSetBit(i + 1)) {
+                out.add(-i - 1);
+            }
+        }
+    }
+
+    void collectBiomes(BitSet out) {
+        if (biomes != null) {
+            out.or(biomes);
+        }
+    }
+
+    void collectTimeCuts(Set<Integer> out) {
+        if (timeFrom >= 0) {
+            out.add(timeFrom);
+            out.add(timeTo);
+        }
+    }
+}
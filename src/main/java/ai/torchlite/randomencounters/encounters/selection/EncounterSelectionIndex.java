@@ -0,0 +1,372 @@
+package ai.torchlite.randomencounters.encounters.selection;
+
+import ai.torchlite.randomencounters.encounters.types.JsonEncounter;
+
+import java.util.*;
+
+/**
+ * Encounter selection index built once the registries are available.
+ *
+ * Encounters are bucketed by dimension, biome and time-of-day segment using
+ * their compiled selector, and every bucket carries an alias table so a
+ * weighted draw is O(1) regardless of how many encounters are loaded. The
+ * remaining selector checks (weather, player constraints) run in a single pass
+ * over the bucket against a {@link SelectionSnapshot}. Encounter ids are also
+ * indexed for exact and prefix lookups used by {@code /encounters test}.
+ *
+ * The index itself is immutable; only the selectors' cooldowns change, via
+ * {@link #recordTriggered}, {@link #expireCooldowns} and {@link #inheritCooldowns}.
+ */
+public final class EncounterSelectionIndex {
+
+    private final int[] dimensionKeys;
+    private final int[] biomeSlots; // biome id -> slot, -1 = not listed by any selector
+    private final int otherBiomeSlot;
+    private final int[] timeCuts;
+    private final Bucket[][][] buckets; // [dimension][biome][time segment]
+    private final double[] scratch;
+
+    private final Map<String, JsonEncounter> exactIds;
+    private final TreeMap<String, JsonEncounter> idPrefixes;
+    private final List<String> encounterIds;
+
+    private final Map<JsonEncounter, CompiledSelector> selectorByEncounter;
+    private final CompiledSelector[] cooldownSelectors;
+    private int expiryCursor;
+
+    private EncounterSelectionIndex(int[] dimensionKeys, int[] biomeSlots, int otherBiomeSlot, int[] timeCuts,
+                                    Bucket[][][] buckets, int maxBucketSize, Map<String, JsonEncounter> exactIds,
+                                    TreeMap<String, JsonEncounter> idPrefixes, List<String> encounterIds,
+                                    Map<JsonEncounter, CompiledSelector> selectorByEncounter,
+                                    CompiledSelector[] cooldownSelectors) {
+        this.dimensionKeys = dimensionKeys;
+        this.biomeSlots = biomeSlots;
+        this.otherBiomeSlot = otherBiomeSlot;
+        this.timeCuts = timeCuts;
+        this.buckets = buckets;
+        this.scratch = new double[maxBucketSize];
+        this.exactIds = exactIds;
+        this.idPrefixes = idPrefixes;
+        this.encounterIds = encounterIds;
+        this.selectorByEncounter = selectorByEncounter;
+        this.cooldownSelectors = cooldownSelectors;
+    }
+
+    /**
+     * Pick a weighted random encounter whose selector accepts the snapshot.
+     * Must only be called from the server thread.
+     * @return the encounter, or null if nothing can run there
+     */
+    public JsonEncounter select(SelectionSnapshot snapshot, Random random) {
+        return select(snapshot, random, null);
+    }
+
+    /**
+     * Like {@link #select(SelectionSnapshot, Random)}, but candidates must also pass {@code filter}.
+     */
+    public JsonEncounter select(SelectionSnapshot snapshot, Random random, Filter filter) {
+        return bucketFor(snapshot.dimension, snapshot.biomeId, snapshot.timeOfDay).select(snapshot, random, filter, scratch);
+    }
+
+    /**
+     * Start the selector cooldowns of an encounter that was picked for the snapshot's player.
+     */
+    public void recordTriggered(JsonEncounter encounter, SelectionSnapshot snapshot) {
+        CompiledSelector selector = selectorByEncounter.get(encounter);
+        if (selector != null && selector.hasCooldowns()) {
+            selector.recordTriggered(snapshot);
+        }
+    }
+
+    /**
+     * Keep the cooldowns of selectors that also existed in {@code previous},
+     * so a reload does not let every selector fire again at once.
+     */
+    public void inheritCooldowns(EncounterSelectionIndex previous) {
+        for (CompiledSelector selector : cooldownSelectors) {
+            for (CompiledSelector old : previous.cooldownSelectors) {
+                if (old.getName().equals(selector.getName())) {
+                    selector.inheritCooldowns(old);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Evict expired chunk cooldowns, examining at most {@code budget} table
+     * slots. Selectors take turns so one busy selector cannot starve the rest.
+     */
+    public void expireCooldowns(long now, int budget) {
+        if (cooldownSelectors.length == 0) {
+            return;
+        }
+        expiryCursor = (expiryCursor + 1) % cooldownSelectors.length;
+        cooldownSelectors[expiryCursor].expireCooldowns(now, budget);
+    }
+
+    public Bucket bucketFor(int dimension, int biomeId, int timeOfDay) {
+        int d = dimensionKeys.length;
+        for (int i = 0; i < dimensionKeys.length; i++) {
+            if (dimensionKeys[i] == dimension) {
+                d = i;
+                break;
+            }
+        }
+
+        int b = biomeId >= 0 && biomeId < biomeSlots.length && biomeSlots[biomeId] >= 0
+            ? biomeSlots[biomeId] : otherBiomeSlot;
+
+        return buckets[d][b][timeSegment(timeOfDay)];
+    }
+
+    private int timeSegment(int timeOfDay) {
+        // timeCuts always starts with 0, so the result is never negative
+        int pos = Arrays.binarySearch(timeCuts, timeOfDay);
+        return pos >= 0 ? pos : -pos - 2;
+    }
+
+    /**
+     * Look up an encounter by exact id (with or without the {@code enc_} prefix),
+     * falling back to the first id or id word that starts with the query.
+     */
+    public JsonEncounter findById(String query) {
+        if (query == null || query.isEmpty()) {
+            return null;
+        }
+
+        String key = query.toLowerCase(Locale.ROOT);
+        JsonEncounter exact = exactIds.get(key);
+        if (exact != null) {
+            return exact;
+        }
+
+        Map.Entry<String, JsonEncounter> entry = idPrefixes.ceilingEntry(key);
+        if (entry != null && entry.getKey().startsWith(key)) {
+            return entry.getValue();
+        }
+        return null;
+    }
+
+    public List<String> getEncounterIds() {
+        return encounterIds;
+    }
+
+    public static EncounterSelectionIndex build(List<JsonEncounter> encounters) {
+        // Compile each referenced selector once and collect the axes they use
+        Map<String, CompiledSelector> compiledByRef = new HashMap<>();
+        CompiledSelector[] selectors = new CompiledSelector[encounters.size()];
+        Set<Integer> dimensions = new LinkedHashSet<>();
+        BitSet biomes = new BitSet();
+        TreeSet<Integer> cuts = new TreeSet<>();
+        cuts.add(0);
+
+        for (int i = 0; i < encounters.size(); i++) {
+            JsonEncounter encounter = encounters.get(i);
+            String ref = encounter.getDefinition().selectorRef;
+            CompiledSelector selector = CompiledSelector.ANY;
+            if (ref != null) {
+                selector = compiledByRef.get(ref);
+                if (selector == null) {
+                    // The selector block was linked when the encounter was compiled
+                    selector = CompiledSelector.compile(ref, encounter.getCompiled().getSelector());
+                    compiledByRef.put(ref, selector);
+                }
+            }
+            selectors[i] = selector;
+            selector.collectDimensions(dimensions);
+            selector.collectBiomes(biomes);
+            selector.collectTimeCuts(cuts);
+        }
+
+        int[] dimensionKeys = new int[dimensions.size()];
+        int k = 0;
+        for (Integer dimension : dimensions) {
+            dimensionKeys[k++] = dimension;
+        }
+
+        int[] biomeIds = new int[biomes.cardinality()];
+        int[] biomeSlots = new int[Math.max(0, biomes.length())];
+        Arrays.fill(biomeSlots, -1);
+        k = 0;
+        for (int id = biomes.nextSetBit(0); id >= 0; id = biomes.nextSetBit(id + 1)) {
+            biomeSlots[id] = k;
+            biomeIds[k++] = id;
+        }
+
+        int[] timeCuts = new int[cuts.size()];
+        k = 0;
+        for (Integer cut : cuts) {
+            timeCuts[k++] = cut;
+        }
+
+        // The extra trailing slot in each axis stands for "anything not listed"
+        int dimensionCount = dimensionKeys.length + 1;
+        int biomeCount = biomeIds.length + 1;
+        Bucket[][][] buckets = new Bucket[dimensionCount][biomeCount][timeCuts.length];
+        Map<List<Integer>, Bucket> shared = new HashMap<>();
+        int maxBucketSize = 0;
+
+        for (int d = 0; d < dimensionCount; d++) {
+            for (int b = 0; b < biomeCount; b++) {
+                for (int t = 0; t < timeCuts.length; t++) {
+                    List<Integer> members = new ArrayList<>();
+                    for (int i = 0; i < encounters.size(); i++) {
+                        CompiledSelector selector = selectors[i];
+                        boolean dimensionOk = d < dimensionKeys.length
+                            ? selector.acceptsDimension(dimensionKeys[d]) : !selector.hasDimensionFilter();
+                        boolean biomeOk = b < biomeIds.length
+                            ? selector.acceptsBiome(biomeIds[b]) : !selector.hasBiomeFilter();
+                        if (dimensionOk && biomeOk && selector.acceptsTime(timeCuts[t])) {
+                            members.add(i);
+                        }
+                    }
+
+                    // Many combinations end up with identical candidate sets; share them
+                    Bucket bucket = shared.get(members);
+                    if (bucket == null) {
+                        bucket = new Bucket(encounters, selectors, members);
+                        shared.put(members, bucket);
+                        maxBucketSize = Math.max(maxBucketSize, members.size());
+                    }
+                    buckets[d][b][t] = bucket;
+                }
+            }
+        }
+
+        Map<String, JsonEncounter> exactIds = new HashMap<>();
+        TreeMap<String, JsonEncounter> idPrefixes = new TreeMap<>();
+        List<String> encounterIds = new ArrayList<>();
+        for (JsonEncounter encounter : encounters) {
+            String id = encounter.getEncounterId();
+            if (id == null) {
+                continue;
+            }
+            encounterIds.add(id);
+
+            String key = id.toLowerCase(Locale.ROOT);
+            putIfAbsent(exactIds, key, encounter);
+            if (key.startsWith("enc_")) {
+                putIfAbsent(exactIds, key.substring(4), encounter);
+            }
+
+            // Index every word-aligned suffix so "army" finds enc_epic_skeleton_army
+            putIfAbsent(idPrefixes, key, encounter);
+            for (int i = key.indexOf('_'); i >= 0 && i + 1 < key.length(); i = key.indexOf('_', i + 1)) {
+                putIfAbsent(idPrefixes, key.substring(i + 1), encounter);
+            }
+        }
+
+        System.out.println("RandomEncounters: Built selection index with " + shared.size()
+            + " distinct bucket(s) over " + encounters.size() + " encounter(s) and "
+            + compiledByRef.size() + " selector(s)");
+
+        Map<JsonEncounter, CompiledSelector> selectorByEncounter = new IdentityHashMap<>();
+        for (int i = 0; i < encounters.size(); i++) {
+            selectorByEncounter.put(encounters.get(i), selectors[i]);
+        }
+        List<CompiledSelector> cooldownSelectors = new ArrayList<>();
+        for (CompiledSelector selector : compiledByRef.values()) {
+            if (selector.hasCooldowns()) {
+                cooldownSelectors.add(selector);
+            }
+        }
+
+        return new EncounterSelectionIndex(dimensionKeys, biomeSlots, biomeIds.length, timeCuts, buckets,
+            maxBucketSize, exactIds, idPrefixes, Collections.unmodifiableList(encounterIds), selectorByEncounter,
+            cooldownSelectors.toArray(new CompiledSelector[0]));
+    }
+
+    private static <K, V> void putIfAbsent(Map<K, V> map, K key, V value) {
+        if (!map.containsKey(key)) {
+            map.put(key, value);
+        }
+    }
+
+    /**
+     * Extra per-candidate check applied during selection, e.g. active-encounter limits.
+     */
+    public interface Filter {
+        boolean accepts(JsonEncounter encounter, SelectionSnapshot snapshot);
+    }
+
+    /**
+     * An encounter without a weight reads as 0 from the config and counts as
+     * weight 1, so it can still be picked; {@code enabled: false} turns one off.
+     */
+    static int weightOf(JsonEncounter encounter) {
+        int weight = encounter.getDefinition().weight;
+        return weight > 0 ? weight : 1;
+    }
+
+    /**
+     * Encounters eligible for one (dimension, biome, time segment) cell.
+     */
+    public static final class Bucket {
+        private final JsonEncounter[] encounters;
+        private final CompiledSelector[] selectors;
+        private final double[] weights;
+        private final AliasTable table;
+
+        Bucket(List<JsonEncounter> allEncounters, CompiledSelector[] allSelectors, List<Integer> members) {
+            encounters = new JsonEncounter[members.size()];
+            selectors = new CompiledSelector[members.size()];
+            weights = new double[members.size()];
+            for (int i = 0; i < encounters.length; i++) {
+                int index = members.get(i);
+                encounters[i] = allEncounters.get(index);
+                selectors[i] = allSelectors[index];
+                weights[i] = weightOf(encounters[i]);
+            }
+            table = new AliasTable(weights);
+        }
+
+        /**
+         * Evaluate every candidate's dynamic selector checks in one pass, then
+         * draw. When every candidate passes the precomputed alias table is used;
+         * otherwise the draw walks the cumulative weights of the survivors.
+         */
+        JsonEncounter select(SelectionSnapshot snapshot, Random random, Filter filter, double[] cumulative) {
+            int n = encounters.length;
+            if (n == 0) {
+                return null;
+            }
+
+            double total = 0;
+            boolean allPassed = true;
+            for (int i = 0; i < n; i++) {
+                if (selectors[i].testConditions(snapshot) && (filter == null || filter.accepts(encounters[i], snapshot))) {
+                    total += weights[i];
+                } else {
+                    allPassed = false;
+                }
+                cumulative[i] = total;
+            }
+
+            if (total <= 0) {
+                return null;
+            }
+            if (allPassed) {
+                return encounters[table.sample(random)];
+            }
+
+            double roll = random.nextDouble() * total;
+            for (int i = 0; i < n; i++) {
+                if (roll < cumulative[i]) {
+                    return encounters[i];
+                }
+            }
+            // Rounding fallback: last survivor
+            for (int i = n - 1; i >= 0; i--) {
+                if (i == 0 || cumulative[i] > cumulative[i - 1]) {
+                    return encounters[i];
+                }
+            }
+            return null;
+        }
+
+        public int size() {
+            return encounters.length;
+        }
+    }
+}
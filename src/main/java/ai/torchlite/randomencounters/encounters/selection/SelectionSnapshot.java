@@ -0,0 +1,86 @@
+package ai.torchlite.randomencounters.encounters.selection;
+
+import ai.torchlite.randomencounters.encounters.runtime.ActiveEncounterRegistry;
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+import net.minecraft.world.biome.Biome;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Reusable snapshot of the world and player state that selector predicates read.
+ * World-level fields are captured at most once per world per tick; player-level
+ * fields are refreshed for every check. Only touched from the server thread.
+ */
+public final class SelectionSnapshot {
+
+    public static final int WEATHER_CLEAR = 1;
+    public static final int WEATHER_RAIN = 2;
+    public static final int WEATHER_THUNDER = 4;
+
+    private static final double NEARBY_PLAYER_RADIUS_SQ = 64 * 64;
+
+    // World state
+    public int dimension;
+    public long worldTime;
+    public int timeOfDay;
+    public int weatherMask;
+    public int onlinePlayers;
+    private World capturedWorld;
+    private long capturedTick = Long.MIN_VALUE;
+
+    // Player state
+    public UUID playerId;
+    public long now;      // wall clock millis, for cooldowns
+    public long chunkKey; // see ActiveEncounterRegistry#chunkKey
+    public int biomeId;
+    public Biome biome;
+    public int playerLevel;
+    public double distanceSqFromSpawn;
+    public int nearbyPlayers;
+    public boolean riding;
+
+    public SelectionSnapshot capture(EntityPlayer player) {
+        World world = player.world;
+        long tick = world.getTotalWorldTime();
+        if (world != capturedWorld || tick != capturedTick) {
+            capturedWorld = world;
+            capturedTick = tick;
+            dimension = world.provider.getDimension();
+            worldTime = world.getWorldTime();
+            timeOfDay = (int) (worldTime % 24000L);
+            weatherMask = world.isThundering() ? WEATHER_THUNDER
+                : world.isRaining() ? WEATHER_RAIN : WEATHER_CLEAR;
+            onlinePlayers = player.getServer() != null
+                ? player.getServer().getCurrentPlayerCount() : world.playerEntities.size();
+        }
+
+        playerId = player.getUniqueID();
+        now = System.currentTimeMillis();
+        BlockPos pos = player.getPosition();
+        chunkKey = ActiveEncounterRegistry.chunkKey(dimension, pos.getX() >> 4, pos.getZ() >> 4);
+        biome = world.getBiome(pos);
+        biomeId = biome != null ? Biome.getIdForBiome(biome) : -1;
+        playerLevel = player.experienceLevel;
+        riding = player.isRiding();
+
+        BlockPos spawn = world.getSpawnPoint();
+        double dx = player.posX - spawn.getX();
+        double dz = player.posZ - spawn.getZ();
+        distanceSqFromSpawn = dx * dx + dz * dz;
+
+        int nearby = 0;
+        List<EntityPlayer> players = world.playerEntities;
+        for (int i = 0; i < players.size(); i++) {
+            EntityPlayer other = players.get(i);
+            if (other != player && other.getDistanceSq(player) <= NEARBY_PLAYER_RADIUS_SQ) {
+                nearby++;
+            }
+        }
+        nearbyPlayers = nearby;
+
+        return this;
+    }
+}
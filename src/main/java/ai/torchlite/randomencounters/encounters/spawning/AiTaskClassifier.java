@@ -0,0 +1,87 @@
+package ai.torchlite.randomencounters.encounters.spawning;
+
+import net.minecraft.entity.EntityLiving;
+import net.minecraft.entity.ai.EntityAIBase;
+import net.minecraft.entity.ai.EntityAITarget;
+import net.minecraft.entity.ai.EntityAITasks;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Sorts AI task classes into the kinds {@code aiToggles} acts on. Each task
+ * class is classified once, by walking its class hierarchy, so modded
+ * subclasses of e.g. {@code EntityAIWander} count as wander tasks. Per
+ * entity class the union of its default tasks' kinds is cached as well, so
+ * toggles for a kind the entity never has skip its task list entirely.
+ */
+public final class AiTaskClassifier {
+
+    public static final int WANDER = 1;
+    public static final int TARGET = 1 << 1;
+    public static final int FOLLOW = 1 << 2;
+
+    private static final ClassValue<Integer> TASK_KINDS = new ClassValue<Integer>() {
+        @Override
+        protected Integer computeValue(Class<?> type) {
+            int kinds = 0;
+            if (EntityAITarget.class.isAssignableFrom(type)) {
+                kinds |= TARGET;
+            }
+            for (Class<?> c = type; c != null && c != EntityAIBase.class; c = c.getSuperclass()) {
+                String name = c.getSimpleName();
+                if (name.contains("Wander")) {
+                    kinds |= WANDER;
+                }
+                if (name.contains("Follow")) {
+                    kinds |= FOLLOW;
+                }
+            }
+            return kinds;
+        }
+    };
+
+    /** Entity class -> kinds of the tasks its constructor installs. Server thread only. */
+    private static final Map<Class<?>, Integer> ENTITY_KINDS = new HashMap<>();
+
+    private AiTaskClassifier() {
+    }
+
+    /**
+     * @return the kinds of {@code task}, a combination of {@link #WANDER}, {@link #TARGET} and {@link #FOLLOW}
+     */
+    public static int classify(EntityAIBase task) {
+        return TASK_KINDS.get(task.getClass());
+    }
+
+    /**
+     * @return the kinds of the tasks a freshly created entity of this class has
+     */
+    public static int defaultKinds(EntityLiving entity) {
+        Integer kinds = ENTITY_KINDS.get(entity.getClass());
+        if (kinds == null) {
+            kinds = kindsOf(entity.tasks) | kindsOf(entity.targetTasks);
+            ENTITY_KINDS.put(entity.getClass(), kinds);
+        }
+        return kinds;
+    }
+
+    /**
+     * Remove every task of the given kinds from a freshly created entity.
+     */
+    public static void removeTasks(EntityLiving entity, int kinds) {
+        if ((defaultKinds(entity) & kinds) == 0) {
+            return;
+        }
+        entity.tasks.taskEntries.removeIf(entry -> (classify(entry.action) & kinds) != 0);
+        entity.targetTasks.taskEntries.removeIf(entry -> (classify(entry.action) & kinds) != 0);
+    }
+
+    private static int kindsOf(EntityAITasks tasks) {
+        int kinds = 0;
+        for (EntityAITasks.EntityAITaskEntry entry : tasks.taskEntries) {
+            kinds |= classify(entry.action);
+        }
+        return kinds;
+    }
+}
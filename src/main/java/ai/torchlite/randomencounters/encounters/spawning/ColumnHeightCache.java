@@ -0,0 +1,81 @@
+package ai.torchlite.randomencounters.encounters.spawning;
+
+import ai.torchlite.randomencounters.encounters.runtime.ActiveEncounterRegistry;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Surface heights of block columns, cached per chunk. A chunk's 256 columns
+ * are filled lazily from {@link World#getTopSolidOrLiquidBlock} and dropped
+ * after {@link #TTL_TICKS}, when the chunk unloads, or when more than
+ * {@link #MAX_CHUNKS} chunks are cached (least recently used first).
+ * Columns in unloaded chunks are never read, so a lookup never loads or
+ * generates terrain.
+ *
+ * Must only be used from the server thread.
+ */
+public class ColumnHeightCache {
+
+    public static final int UNLOADED = Integer.MIN_VALUE;
+
+    private static final int TTL_TICKS = 100;
+    private static final int MAX_CHUNKS = 256;
+    private static final short UNKNOWN = Short.MIN_VALUE;
+
+    private static final class ChunkHeights {
+        final short[] heights = new short[256];
+        final long createdAt;
+
+        ChunkHeights(long createdAt) {
+            this.createdAt = createdAt;
+            Arrays.fill(heights, UNKNOWN);
+        }
+    }
+
+    private final Map<Long, ChunkHeights> chunks = new LinkedHashMap<Long, ChunkHeights>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, ChunkHeights> eldest) {
+            return size() > MAX_CHUNKS;
+        }
+    };
+
+    /**
+     * @return the y of the first free block above the column's top solid or liquid block,
+     *         or {@link #UNLOADED} if its chunk is not loaded
+     */
+    public int getSurfaceY(World world, int x, int z) {
+        int chunkX = x >> 4;
+        int chunkZ = z >> 4;
+        long key = ActiveEncounterRegistry.chunkKey(world.provider.getDimension(), chunkX, chunkZ);
+        long now = world.getTotalWorldTime();
+
+        ChunkHeights heights = chunks.get(key);
+        if (heights == null || now - heights.createdAt > TTL_TICKS || now < heights.createdAt) {
+            if (!world.isBlockLoaded(new BlockPos(x, 0, z))) {
+                return UNLOADED;
+            }
+            heights = new ChunkHeights(now);
+            chunks.put(key, heights);
+        }
+
+        int column = (z & 15) << 4 | (x & 15);
+        short height = heights.heights[column];
+        if (height == UNKNOWN) {
+            height = (short) world.getTopSolidOrLiquidBlock(new BlockPos(x, 0, z)).getY();
+            heights.heights[column] = height;
+        }
+        return height;
+    }
+
+    public void onChunkUnload(World world, int chunkX, int chunkZ) {
+        chunks.remove(ActiveEncounterRegistry.chunkKey(world.provider.getDimension(), chunkX, chunkZ));
+    }
+
+    public void clear() {
+        chunks.clear();
+    }
+}
@@ -0,0 +1,17 @@
+package ai.torchlite.randomencounters.encounters.spawning;
+
+import net.minecraft.entity.EntityLiving;
+import net.minecraft.world.World;
+
+import java.util.Random;
+
+/**
+ * Creates the entity for one spawn block, resolved once by {@link EntityFactoryRegistry}.
+ */
+public interface EntityFactory {
+
+    /**
+     * @return a new, not yet spawned entity, or null if construction failed
+     */
+    EntityLiving create(World world, Random random);
+}
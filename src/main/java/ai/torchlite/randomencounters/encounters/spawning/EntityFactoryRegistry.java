@@ -0,0 +1,139 @@
+package ai.torchlite.randomencounters.encounters.spawning;
+
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.EntityLiving;
+import net.minecraft.util.ResourceLocation;
+import net.minecraft.world.World;
+import net.minecraftforge.fml.common.registry.EntityEntry;
+import net.minecraftforge.fml.common.registry.ForgeRegistries;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Resolves the entity ids used in spawn blocks to {@link EntityFactory}s
+ * once the entity registry is final, so spawning is a direct constructor
+ * call with no per-entity registry lookup or reflection.
+ *
+ * Any living entity in {@code ForgeRegistries.ENTITIES} works, modded ones
+ * included. Unknown ids are reported once and resolve to null.
+ */
+public class EntityFactoryRegistry {
+
+    private static final MethodType FACTORY_TYPE = MethodType.methodType(EntityLiving.class, World.class);
+
+    private final Map<String, EntityFactory> factories = new HashMap<>();
+
+    /**
+     * @return the factory for {@code entityId}, or null if it names no living entity
+     */
+    public EntityFactory get(String entityId) {
+        if (entityId == null) {
+            return null;
+        }
+        // containsKey, since unknown ids are cached as null too
+        if (factories.containsKey(entityId)) {
+            return factories.get(entityId);
+        }
+        EntityFactory factory = resolve(entityId);
+        factories.put(entityId, factory);
+        return factory;
+    }
+
+    /**
+     * Pick one of {@code choices} per entity, by weight. Null choices and
+     * choices without a positive weight are left out.
+     *
+     * @return the weighted factory, the only usable choice itself, or null if none is usable
+     */
+    public static EntityFactory weighted(EntityFactory[] choices, int[] weights) {
+        EntityFactory[] resolved = new EntityFactory[choices.length];
+        int[] cumulative = new int[choices.length];
+        int count = 0;
+        int total = 0;
+        for (int i = 0; i < choices.length; i++) {
+            if (choices[i] != null && weights[i] > 0) {
+                total += weights[i];
+                resolved[count] = choices[i];
+                cumulative[count++] = total;
+            }
+        }
+        if (count <= 1) {
+            return count == 1 ? resolved[0] : null;
+        }
+        return new WeightedGroup(resolved, cumulative, count, total);
+    }
+
+    private static EntityFactory resolve(String entityId) {
+        EntityEntry entry = ForgeRegistries.ENTITIES.getValue(new ResourceLocation(entityId));
+        if (entry == null || entry.getEntityClass() == null) {
+            System.err.println("RandomEncounters: Unknown entity ID: " + entityId);
+            return null;
+        }
+        Class<? extends Entity> type = entry.getEntityClass();
+        if (!EntityLiving.class.isAssignableFrom(type)) {
+            System.err.println("RandomEncounters: Entity " + entityId + " is not a mob and cannot be spawned by encounters");
+            return null;
+        }
+
+        try {
+            Constructor<? extends Entity> constructor = type.getDeclaredConstructor(World.class);
+            constructor.setAccessible(true);
+            MethodHandle handle = MethodHandles.lookup().unreflectConstructor(constructor).asType(FACTORY_TYPE);
+            return new ConstructorFactory(entityId, handle);
+        } catch (NoSuchMethodException | IllegalAccessException | SecurityException e) {
+            // Entities registered with a custom factory have no (World) constructor to bind
+            return (world, random) -> (EntityLiving) entry.newInstance(world);
+        }
+    }
+
+    private static final class ConstructorFactory implements EntityFactory {
+        private final String entityId;
+        private final MethodHandle constructor;
+
+        ConstructorFactory(String entityId, MethodHandle constructor) {
+            this.entityId = entityId;
+            this.constructor = constructor;
+        }
+
+        @Override
+        public EntityLiving create(World world, Random random) {
+            try {
+                return (EntityLiving) constructor.invokeExact(world);
+            } catch (Throwable t) {
+                System.err.println("RandomEncounters: Failed to create " + entityId + ": " + t);
+                return null;
+            }
+        }
+    }
+
+    private static final class WeightedGroup implements EntityFactory {
+        private final EntityFactory[] members;
+        private final int[] cumulativeWeights;
+        private final int count;
+        private final int totalWeight;
+
+        WeightedGroup(EntityFactory[] members, int[] cumulativeWeights, int count, int totalWeight) {
+            this.members = members;
+            this.cumulativeWeights = cumulativeWeights;
+            this.count = count;
+            this.totalWeight = totalWeight;
+        }
+
+        @Override
+        public EntityLiving create(World world, Random random) {
+            int roll = random.nextInt(totalWeight);
+            for (int i = 0; i < count - 1; i++) {
+                if (roll < cumulativeWeights[i]) {
+                    return members[i].create(world, random);
+                }
+            }
+            return members[count - 1].create(world, random);
+        }
+    }
+}
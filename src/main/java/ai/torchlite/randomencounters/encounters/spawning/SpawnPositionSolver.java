@@ -0,0 +1,197 @@
+package ai.torchlite.randomencounters.encounters.spawning;
+
+import ai.torchlite.randomencounters.config.json.EncounterConfig;
+import net.minecraft.entity.EntityLiving;
+import net.minecraft.util.math.AxisAlignedBB;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Finds spawn positions for a whole spawn entry at once. An anchor is drawn
+ * on the ring {@code radius.min..max} around the origin, then every member
+ * is placed within the group's spread radius of it. A position is only used
+ * if the entity's bounding box is free of blocks and liquid and stands on
+ * solid, dry ground. Heights come from a {@link ColumnHeightCache}, and
+ * candidates in unloaded chunks are skipped rather than loaded.
+ *
+ * {@code yMode: surface} (the default for positions relative to the player)
+ * snaps to the column's surface. Other positions search a few blocks up and
+ * down from their given height.
+ *
+ * Must only be used from the server thread.
+ */
+public class SpawnPositionSolver {
+
+    /** Spread radius for entries spawning more than one entity without a {@code spread} block */
+    public static final int DEFAULT_GROUP_SPREAD = 3;
+
+    private static final int ANCHOR_ATTEMPTS = 12;
+    private static final int MEMBER_ATTEMPTS = 6;
+    private static final int VERTICAL_SEARCH = 3;
+    /** Members may stand at most this many blocks above or below the anchor */
+    private static final int MAX_MEMBER_STEP = 4;
+
+    private final ColumnHeightCache heights;
+
+    public SpawnPositionSolver(ColumnHeightCache heights) {
+        this.heights = heights;
+    }
+
+    /**
+     * Positions for {@code count} entities of the given size. If no valid
+     * anchor is found the group is placed at {@code origin}, and members
+     * without a free spot of their own share an already chosen one.
+     */
+    public BlockPos[] solve(World world, BlockPos origin, EncounterConfig.Encounter.SpawnLocation location,
+                            int spreadRadius, int count, float width, float height, Random random) {
+        boolean absolute = location != null && "absolute".equals(location.mode)
+            && location.x != null && location.y != null && location.z != null;
+        boolean surface = location == null
+            || (location.yMode != null ? "surface".equals(location.yMode) : !absolute);
+
+        BlockPos anchor = absolute
+            ? findAbsoluteAnchor(world, location, surface, width, height)
+            : findAnchor(world, origin, location, surface, width, height, random);
+        if (anchor == null) {
+            anchor = origin;
+        }
+
+        BlockPos[] positions = new BlockPos[Math.max(1, count)];
+        positions[0] = anchor;
+        Set<BlockPos> used = new HashSet<>();
+        used.add(anchor);
+        for (int i = 1; i < positions.length; i++) {
+            BlockPos position = null;
+            for (int attempt = 0; attempt < MEMBER_ATTEMPTS && position == null && spreadRadius > 0; attempt++) {
+                double distance = spreadRadius * Math.sqrt(random.nextDouble());
+                double angle = random.nextDouble() * 2 * Math.PI;
+                BlockPos candidate = place(world, anchor.getX() + (int) Math.round(Math.cos(angle) * distance),
+                    anchor.getY(), anchor.getZ() + (int) Math.round(Math.sin(angle) * distance), surface, width, height);
+                if (candidate != null && Math.abs(candidate.getY() - anchor.getY()) <= MAX_MEMBER_STEP
+                    && used.add(candidate)) {
+                    position = candidate;
+                }
+            }
+            positions[i] = position != null ? position : positions[random.nextInt(i)];
+        }
+        return positions;
+    }
+
+    /**
+     * A group whose positions are solved when its first entity is created,
+     * so the solver knows the entity's size.
+     */
+    public Placement placement(World world, BlockPos origin, EncounterConfig.Encounter.SpawnLocation location,
+                               int spreadRadius, int count, Random random) {
+        return new Placement(world, origin, location, spreadRadius, count, random);
+    }
+
+    public final class Placement {
+        private final World world;
+        private final BlockPos origin;
+        private final EncounterConfig.Encounter.SpawnLocation location;
+        private final int spreadRadius;
+        private final int count;
+        private final Random random;
+        private BlockPos[] positions;
+        private int next;
+
+        private Placement(World world, BlockPos origin, EncounterConfig.Encounter.SpawnLocation location,
+                          int spreadRadius, int count, Random random) {
+            this.world = world;
+            this.origin = origin;
+            this.location = location;
+            this.spreadRadius = spreadRadius;
+            this.count = count;
+            this.random = random;
+        }
+
+        /**
+         * @return the position for the next entity of the group
+         */
+        public BlockPos next(EntityLiving entity) {
+            if (positions == null) {
+                positions = solve(world, origin, location, spreadRadius, count, entity.width, entity.height, random);
+            }
+            return positions[Math.min(next++, positions.length - 1)];
+        }
+    }
+
+    private BlockPos findAbsoluteAnchor(World world, EncounterConfig.Encounter.SpawnLocation location, boolean surface,
+                                        float width, float height) {
+        BlockPos requested = new BlockPos(location.x, location.y, location.z);
+        BlockPos placed = place(world, requested.getX(), requested.getY(), requested.getZ(), surface, width, height);
+        // An explicit position is kept even when obstructed; the config asked for exactly that spot
+        return placed != null ? placed : requested;
+    }
+
+    private BlockPos findAnchor(World world, BlockPos origin, EncounterConfig.Encounter.SpawnLocation location,
+                                boolean surface, float width, float height, Random random) {
+        int min;
+        int max;
+        if (location != null && location.radius != null) {
+            min = Math.max(0, location.radius.min);
+            max = Math.max(min, location.radius.max);
+        } else if (location != null && "nearPlayer".equals(location.mode)) {
+            min = 5;
+            max = 10;
+        } else {
+            min = 0;
+            max = 5;
+        }
+
+        for (int attempt = 0; attempt < ANCHOR_ATTEMPTS; attempt++) {
+            int distance = min + random.nextInt(max - min + 1);
+            double angle = random.nextDouble() * 2 * Math.PI;
+            BlockPos candidate = place(world, origin.getX() + (int) Math.round(Math.cos(angle) * distance),
+                origin.getY(), origin.getZ() + (int) Math.round(Math.sin(angle) * distance), surface, width, height);
+            if (candidate != null) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return a valid position in column x/z near {@code y}, or null if there is none
+     */
+    private BlockPos place(World world, int x, int y, int z, boolean surface, float width, float height) {
+        if (surface) {
+            int surfaceY = heights.getSurfaceY(world, x, z);
+            return surfaceY != ColumnHeightCache.UNLOADED && fits(world, x, surfaceY, z, width, height)
+                ? new BlockPos(x, surfaceY, z) : null;
+        }
+        if (!world.isBlockLoaded(new BlockPos(x, y, z))) {
+            return null;
+        }
+        // y, y+1, y-1, y+2, ...
+        for (int step = 0; step <= 2 * VERTICAL_SEARCH; step++) {
+            int candidateY = y + ((step & 1) == 0 ? step >> 1 : -((step + 1) >> 1));
+            if (fits(world, x, candidateY, z, width, height)) {
+                return new BlockPos(x, candidateY, z);
+            }
+        }
+        return null;
+    }
+
+    private static boolean fits(World world, int x, int y, int z, float width, float height) {
+        if (y <= 0 || y >= 255) {
+            return false;
+        }
+        double half = Math.max(width, 0.2f) / 2.0;
+        double minX = x + 0.5 - half;
+        double maxX = x + 0.5 + half;
+        double minZ = z + 0.5 - half;
+        double maxZ = z + 0.5 + half;
+        AxisAlignedBB body = new AxisAlignedBB(minX, y, minZ, maxX, y + Math.max(height, 0.2f), maxZ);
+        if (world.collidesWithAnyBlock(body) || world.containsAnyLiquid(body)) {
+            return false;
+        }
+        AxisAlignedBB ground = new AxisAlignedBB(minX, y - 1, minZ, maxX, y, maxZ);
+        return world.collidesWithAnyBlock(ground) && !world.containsAnyLiquid(ground);
+    }
+}
@@ -0,0 +1,100 @@
+package ai.torchlite.randomencounters.encounters.spawning;
+
+import net.minecraft.entity.EntityLiving;
+import net.minecraft.entity.SharedMonsterAttributes;
+import net.minecraft.entity.ai.attributes.IAttribute;
+import net.minecraft.entity.ai.attributes.IAttributeInstance;
+import net.minecraft.inventory.EntityEquipmentSlot;
+import net.minecraft.item.ItemStack;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Everything a spawn entry applies to its entities, evaluated once per
+ * encounter instance. Item stacks are built (with their enchantments and
+ * display name) when the prototype is created, and every entity of the
+ * group gets a copy, so per entity only stack copies and attribute writes
+ * remain.
+ */
+public class SpawnPrototype {
+
+    private final String customName;
+    private final boolean persistent;
+    private final List<EntityEquipmentSlot> slots = new ArrayList<>();
+    private final List<ItemStack> stacks = new ArrayList<>();
+    private final List<AttributeValue> attributes = new ArrayList<>();
+
+    public SpawnPrototype(String customName, boolean persistent) {
+        this.customName = customName;
+        this.persistent = persistent;
+    }
+
+    /**
+     * Equip {@code stack} in {@code slot}. The stack is the template and is never handed out itself.
+     */
+    public void addEquipment(EntityEquipmentSlot slot, ItemStack stack) {
+        slots.add(slot);
+        stacks.add(stack);
+    }
+
+    /**
+     * Set the attribute's base value to {@code value}.
+     */
+    public void setAttribute(IAttribute attribute, double value) {
+        attributes.add(new AttributeValue(attribute, false, 0, value));
+    }
+
+    /**
+     * Scale the attribute's default base value: {@code base * multiply + add}.
+     * The default differs between entity types, so this part is computed per entity.
+     */
+    public void scaleAttribute(IAttribute attribute, double multiply, double add) {
+        attributes.add(new AttributeValue(attribute, true, multiply, add));
+    }
+
+    /**
+     * Apply the prototype to a freshly created entity.
+     */
+    public void stamp(EntityLiving entity) {
+        if (persistent) {
+            entity.enablePersistence();
+        }
+        if (customName != null) {
+            entity.setCustomNameTag(customName);
+        }
+        for (int i = 0; i < stacks.size(); i++) {
+            entity.setItemStackToSlot(slots.get(i), stacks.get(i).copy());
+        }
+        for (AttributeValue attribute : attributes) {
+            attribute.apply(entity);
+        }
+    }
+
+    private static final class AttributeValue {
+        private final IAttribute attribute;
+        private final boolean scaled;
+        private final double multiply;
+        private final double value; // the base value, or the amount added when scaled
+
+        AttributeValue(IAttribute attribute, boolean scaled, double multiply, double value) {
+            this.attribute = attribute;
+            this.scaled = scaled;
+            this.multiply = multiply;
+            this.value = value;
+        }
+
+        void apply(EntityLiving entity) {
+            IAttributeInstance instance = entity.getEntityAttribute(attribute);
+            if (instance == null) {
+                // Passive mobs have no attack damage attribute unless it is registered first
+                instance = entity.getAttributeMap().registerAttribute(attribute);
+            }
+            double amount = scaled ? instance.getBaseValue() * multiply + value : value;
+            instance.setBaseValue(amount);
+            if (attribute == SharedMonsterAttributes.MAX_HEALTH) {
+                entity.setHealth((float) amount);
+            }
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package ai.torchlite.randomencounters.encounters.spawning;
+
+import ai.torchlite.randomencounters.actions.EncounterContext;
+import net.minecraft.entity.EntityLiving;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Spreads encounter spawning over ticks. Every tick gets a budget of
+ * {@link #MAX_ENTITIES_PER_TICK} entities and {@link #MAX_NANOS_PER_TICK} of
+ * spawn time, shared by all queued jobs in FIFO order; at least one entity
+ * is spawned per tick so large jobs always progress. A job that fits the
+ * remaining budget completes within {@link #submit}, exactly as if it had
+ * spawned directly.
+ *
+ * If the area around a job's origin unloads before it finishes, everything
+ * it spawned so far is removed and the job is dropped without starting. A
+ * job that queued entities but got none of them into the world is dropped
+ * the same way.
+ *
+ * Must only be used from the server thread.
+ */
+public class SpawnQueue {
+
+    public static final int MAX_ENTITIES_PER_TICK = 8;
+    public static final long MAX_NANOS_PER_TICK = 5000000L;
+
+    /**
+     * Creates, configures and spawns one entity into the world.
+     */
+    public interface Spawner {
+        /**
+         * @return the spawned entity, or null if it could not be created
+         */
+        EntityLiving spawn();
+    }
+
+    /**
+     * The spawns of one encounter run, in the order they should appear.
+     */
+    public static final class Job {
+        private final String name;
+        private final EncounterContext context;
+        private final Runnable onComplete;
+        private final Runnable onCancel;
+        private final List<Integer> labels = new ArrayList<>();
+        private final List<Spawner> spawners = new ArrayList<>();
+        private final List<Integer> counts = new ArrayList<>();
+        private int batch;
+        private int spawnedInBatch;
+        private int spawned;
+
+        /**
+         * @param context    receives every spawned entity under its label slot
+         * @param onComplete runs once the last entity has spawned
+         * @param onCancel   runs instead if the job is dropped before completing
+         */
+        public Job(String name, EncounterContext context, Runnable onComplete, Runnable onCancel) {
+            this.name = name;
+            this.context = context;
+            this.onComplete = onComplete;
+            this.onCancel = onCancel;
+        }
+
+        /**
+         * Queue {@code count} entities from {@code spawner} under a label slot (may be {@code LabelTable.NONE}).
+         */
+        public void add(int label, int count, Spawner spawner) {
+            if (count > 0) {
+                labels.add(label);
+                spawners.add(spawner);
+                counts.add(count);
+            }
+        }
+
+        boolean isDone() {
+            return batch >= spawners.size();
+        }
+
+        void spawnNext() {
+            EntityLiving entity;
+            try {
+                entity = spawners.get(batch).spawn();
+            } catch (RuntimeException e) {
+                System.err.println("RandomEncounters: Error spawning for encounter " + name + ": " + e.getMessage());
+                entity = null;
+            }
+            if (entity != null) {
+                context.addEntity(labels.get(batch), entity);
+                spawned++;
+            }
+            if (++spawnedInBatch >= counts.get(batch)) {
+                batch++;
+                spawnedInBatch = 0;
+            }
+        }
+
+        boolean isAreaLoaded() {
+            return context.getWorld().isBlockLoaded(context.getOriginPos());
+        }
+    }
+
+    private final ArrayDeque<Job> jobs = new ArrayDeque<>();
+    private int entitiesThisTick;
+    private long nanosThisTick;
+    /** Server tick the budget belongs to; submit() and tick() in one server tick share it */
+    private int budgetTick = -1;
+
+    /**
+     * Queue a job and spawn as much of it as this tick's budget allows.
+     */
+    public void submit(Job job) {
+        jobs.addLast(job);
+        drain();
+    }
+
+    /**
+     * Continue queued jobs with what is left of this tick's budget. Call once per server tick.
+     */
+    public void tick() {
+        if (jobs.isEmpty()) {
+            return;
+        }
+        // Jobs carried over from earlier ticks need their area still loaded
+        for (Iterator<Job> it = jobs.iterator(); it.hasNext(); ) {
+            Job job = it.next();
+            if (!job.isAreaLoaded()) {
+                it.remove();
+                rollBack(job, "area unloaded");
+            }
+        }
+        drain();
+    }
+
+    private void drain() {
+        if (jobs.isEmpty()) {
+            return;
+        }
+        int serverTick = jobs.peekFirst().context.getWorld().getMinecraftServer().getTickCounter();
+        if (serverTick != budgetTick) {
+            budgetTick = serverTick;
+            entitiesThisTick = 0;
+            nanosThisTick = 0;
+        }
+        while (!jobs.isEmpty() && (entitiesThisTick == 0
+                || (entitiesThisTick < MAX_ENTITIES_PER_TICK && nanosThisTick < MAX_NANOS_PER_TICK))) {
+            Job job = jobs.peekFirst();
+            if (!job.isDone()) {
+                long start = System.nanoTime();
+                job.spawnNext();
+                nanosThisTick += System.nanoTime() - start;
+                entitiesThisTick++;
+            }
+            if (job.isDone()) {
+                jobs.removeFirst();
+                if (!job.spawners.isEmpty() && job.spawned == 0) {
+                    rollBack(job, "nothing spawned");
+                    continue;
+                }
+                try {
+                    job.onComplete.run();
+                } catch (RuntimeException e) {
+                    System.err.println("RandomEncounters: Error starting encounter " + job.name + ": " + e.getMessage());
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Drop unfinished jobs whose origin lies in an unloading chunk.
+     */
+    public void onChunkUnload(World world, int chunkX, int chunkZ) {
+        for (Iterator<Job> it = jobs.iterator(); it.hasNext(); ) {
+            Job job = it.next();
+            BlockPos origin = job.context.getOriginPos();
+            if (job.context.getWorld() == world && origin.getX() >> 4 == chunkX && origin.getZ() >> 4 == chunkZ) {
+                it.remove();
+                rollBack(job, "chunk unloaded");
+            }
+        }
+    }
+
+    /**
+     * Drop every unfinished job, e.g. on server stop.
+     */
+    public void clear() {
+        while (!jobs.isEmpty()) {
+            cancel(jobs.pollFirst());
+        }
+    }
+
+    public int size() {
+        return jobs.size();
+    }
+
+    private static void rollBack(Job job, String reason) {
+        System.out.println("RandomEncounters: Cancelled encounter " + job.name + " while spawning (" + reason + ")");
+        cancel(job);
+    }
+
+    private static void cancel(Job job) {
+        job.context.cleanup();
+        try {
+            job.onCancel.run();
+        } catch (RuntimeException e) {
+            System.err.println("RandomEncounters: Error cancelling encounter " + job.name + ": " + e.getMessage());
+        }
+    }
+}
@@ -2,25 +2,27 @@ package ai.torchlite.randomencounters.encounters.types;
 
 import ai.torchlite.randomencounters.encounters.IEncounter;
 import ai.torchlite.randomencounters.config.json.EncounterConfig;
-import ai.torchlite.randomencounters.config.json.JsonEncounterLoader;
-import ai.torchlite.randomencounters.actions.ActionExecutor;
 import ai.torchlite.randomencounters.actions.EncounterContext;
+import ai.torchlite.randomencounters.encounters.compiled.CompiledEncounter;
+import ai.torchlite.randomencounters.encounters.compiled.CompiledSpawnEntry;
+import ai.torchlite.randomencounters.encounters.runtime.EncounterInstance;
+import ai.torchlite.randomencounters.encounters.runtime.EncounterRuntime;
+import ai.torchlite.randomencounters.encounters.spawning.AiTaskClassifier;
+import ai.torchlite.randomencounters.encounters.spawning.EntityFactory;
+import ai.torchlite.randomencounters.encounters.spawning.SpawnPositionSolver;
+import ai.torchlite.randomencounters.encounters.spawning.SpawnPrototype;
+import ai.torchlite.randomencounters.encounters.spawning.SpawnQueue;
+import ai.torchlite.randomencounters.expression.ExpressionScope;
 
 import net.minecraft.entity.EntityLiving;
+import net.minecraft.entity.SharedMonsterAttributes;
+import net.minecraft.entity.ai.attributes.IAttributeInstance;
 import net.minecraft.entity.player.EntityPlayer;
-import net.minecraft.entity.passive.EntityVillager;
-import net.minecraft.entity.passive.EntityWolf;
-import net.minecraft.entity.passive.EntityChicken;
-import net.minecraft.entity.passive.EntityCow;
-import net.minecraft.entity.passive.EntityPig;
-import net.minecraft.entity.passive.EntitySheep;
-import net.minecraft.entity.monster.EntitySkeleton;
-import net.minecraft.entity.monster.EntityZombie;
 import net.minecraft.util.math.BlockPos;
-import net.minecraft.util.text.TextComponentString;
 import net.minecraft.world.World;
 import net.minecraft.world.WorldServer;
 
+import java.io.File;
 import java.util.Random;
 
 /**
@@ -30,20 +32,42 @@ import java.util.Random;
 public class JsonEncounter implements IEncounter {
     
     private final EncounterConfig.Encounter encounterDef;
-    private final JsonEncounterLoader loader;
-    private final ActionExecutor actionExecutor;
+    private final CompiledEncounter compiled;
+    private final EncounterConfig config;
+    private final EncounterRuntime runtime;
     private final Random random = new Random();
     
-    public JsonEncounter(EncounterConfig.Encounter encounterDef, JsonEncounterLoader loader) {
+    /**
+     * @throws ai.torchlite.randomencounters.expression.ExpressionException if an expression in the definition is
+     *         invalid or it refers to a block that does not exist
+     */
+    public JsonEncounter(EncounterConfig.Encounter encounterDef, EncounterConfig config, File file,
+                         EncounterRuntime runtime) {
         this.encounterDef = encounterDef;
-        this.loader = loader;
-        this.actionExecutor = new ActionExecutor();
+        this.compiled = CompiledEncounter.compile(encounterDef, config, file);
+        this.config = config;
+        this.runtime = runtime;
     }
     
     public String getEncounterId() {
         return encounterDef.id;
     }
     
+    public EncounterConfig.Encounter getDefinition() {
+        return encounterDef;
+    }
+    
+    public CompiledEncounter getCompiled() {
+        return compiled;
+    }
+    
+    /**
+     * @return the configuration this encounter was loaded from
+     */
+    public EncounterConfig getConfig() {
+        return config;
+    }
+    
     @Override
     public void execute(EntityPlayer player, double difficulty) {
         if (!encounterDef.enabled) {
@@ -56,139 +80,112 @@ public class JsonEncounter implements IEncounter {
         }
         
         BlockPos playerPos = player.getPosition();
-        EncounterContext context = new EncounterContext(world, playerPos);
+        EncounterContext context = new EncounterContext(world, playerPos, compiled.getLabels());
         context.addPlayer(player);
         
+        EncounterInstance instance = null;
         try {
-            // Execute onStart actions
-            if (encounterDef.onStart != null) {
-                for (EncounterConfig.Encounter.ActionRef actionRef : encounterDef.onStart) {
-                    executeAction(actionRef, context, player);
-                }
-            }
+            ExpressionScope scope = compiled.newScope(player, difficulty, random);
             
-            // Handle spawns
-            if (encounterDef.spawn != null) {
-                for (EncounterConfig.Encounter.SpawnEntry spawnEntry : encounterDef.spawn) {
-                    executeSpawn(spawnEntry, world, playerPos, context);
-                }
-            }
+            // Counted against the limits from here on, while it is still spawning
+            instance = runtime.reserve(this, player, context, scope);
+            EncounterInstance reserved = instance;
+            
+            // Spawn first so onStart actions can address the spawned labels; the runtime then
+            // runs onStart and drives behaviors, triggers, onTimeout and onCleanup
+            SpawnQueue.Job job = new SpawnQueue.Job(encounterDef.id, context,
+                () -> runtime.start(reserved), () -> runtime.cancel(reserved));
             
-            // Note: behaviors, triggers, onTimeout, and onCleanup would be handled by
-            // the full encounter system, but for now we're just doing basic spawning
+            // Leaders first, so a group spread over several ticks appears around them
+            CompiledSpawnEntry[] spawns = compiled.getSpawns();
+            for (int index : compiled.getSpawnOrder()) {
+                queueSpawn(job, encounterDef.spawn.get(index), spawns[index], scope, world, playerPos);
+            }
+            runtime.getSpawnQueue().submit(job);
             
         } catch (Exception e) {
             System.err.println("RandomEncounters: Error executing encounter " + encounterDef.id + ": " + e.getMessage());
             e.printStackTrace();
-        }
-    }
-    
-    private void executeAction(EncounterConfig.Encounter.ActionRef actionRef, EncounterContext context, EntityPlayer player) {
-        // Simple action execution for broadcast messages
-        if ("broadcast".equals(actionRef.type)) {
-            if (actionRef.message != null) {
-                // For now, just use the message directly (expression evaluation would be added later)
-                String message = actionRef.message;
-                player.sendMessage(new TextComponentString(message));
+            if (instance != null) {
+                runtime.cancel(instance);
             }
         }
-        // Additional action types would be implemented here
     }
     
-    private void executeSpawn(EncounterConfig.Encounter.SpawnEntry spawnEntry, World world, BlockPos playerPos, EncounterContext context) {
-        // Get spawn configuration from blocks
-        EncounterConfig config = loader.getConfig();
-        if (config == null || config.blocks == null || config.blocks.spawns == null) {
-            return;
-        }
-        
-        EncounterConfig.Spawn spawnDef = config.blocks.spawns.get(spawnEntry.ref);
-        if (spawnDef == null) {
-            System.err.println("RandomEncounters: Spawn reference not found: " + spawnEntry.ref);
+    private void queueSpawn(SpawnQueue.Job job, EncounterConfig.Encounter.SpawnEntry spawnEntry,
+                            CompiledSpawnEntry compiledEntry, ExpressionScope scope, World world, BlockPos playerPos) {
+        if (!compiledEntry.isEnabled(scope)) {
             return;
         }
         
-        // Calculate spawn position
-        BlockPos spawnPos = calculateSpawnPosition(playerPos, spawnEntry.at);
-        
-        // Create and spawn entities
-        int count = spawnDef.count > 0 ? spawnDef.count : 1;
-        for (int i = 0; i < count; i++) {
-            EntityLiving entity = createEntity(spawnDef.entityId, world);
-            if (entity == null) {
-                continue;
-            }
-            
-            // Position the entity
-            entity.setPosition(spawnPos.getX() + 0.5, spawnPos.getY(), spawnPos.getZ() + 0.5);
-            
-            // Apply persistence if needed
-            if (spawnDef.persistence) {
-                entity.enablePersistence();
-            }
-            
-            // Apply AI toggles
-            if (spawnDef.aiToggles != null) {
-                applyAiToggles(entity, spawnDef.aiToggles);
+        // Spawn block and factories linked at load time
+        EncounterConfig.Spawn spawnDef = compiledEntry.getSpawn();
+        CompiledSpawnEntry.Part[] parts = compiledEntry.getParts();
+        for (CompiledSpawnEntry.Part part : parts) {
+            if (part.getFactory() == null) {
+                return;
             }
-            
-            // Spawn the entity
-            world.spawnEntity(entity);
-            // Add to context with the spawn label if available
-            if (spawnEntry.label != null) {
-                context.addEntity(spawnEntry.label, entity);
-            }
-        }
-    }
-    
-    private EntityLiving createEntity(String entityId, World world) {
-        if (entityId == null) {
-            return null;
         }
         
-        // Handle random types
-        if ("random_farm_animal".equals(entityId)) {
-            switch (random.nextInt(5)) {
-                case 0: return new EntityChicken(world);
-                case 1: return new EntityCow(world);
-                case 2: return new EntityPig(world);
-                case 3: return new EntitySheep(world);
-                default: return new EntityChicken(world);
-            }
+        // Entities are created and spawned by the spawn queue, within its tick budget; a group
+        // spawns every member's count for each unit of the entry's count
+        int units = compiledEntry.getCount(scope, spawnDef.count > 0 ? spawnDef.count : 1);
+        int[] counts = new int[parts.length];
+        int count = 0;
+        for (int i = 0; i < parts.length; i++) {
+            counts[i] = parts[i].count(units, random);
+            count += counts[i];
+        }
+        if (count <= 0) {
+            return;
         }
         
-        // Handle specific entity types
-        switch (entityId) {
-            case "minecraft:villager":
-                return new EntityVillager(world);
-            case "minecraft:wolf":
-                return new EntityWolf(world);
-            case "minecraft:skeleton":
-                return new EntitySkeleton(world);
-            case "minecraft:zombie":
-                return new EntityZombie(world);
-            case "minecraft:chicken":
-                return new EntityChicken(world);
-            case "minecraft:cow":
-                return new EntityCow(world);
-            case "minecraft:pig":
-                return new EntityPig(world);
-            case "minecraft:sheep":
-                return new EntitySheep(world);
-            default:
-                System.err.println("RandomEncounters: Unknown entity ID: " + entityId);
-                return null;
+        // Positions for the whole entry are solved once, when its first entity exists
+        int spread = spawnDef.spread != null && spawnDef.spread.radius > 0 ? spawnDef.spread.radius
+            : count > 1 ? SpawnPositionSolver.DEFAULT_GROUP_SPREAD : 0;
+        SpawnPositionSolver.Placement placement = runtime.getPositionSolver().placement(world, playerPos,
+            spawnEntry.at, spread, count, random);
+        // Name, equipment and attributes are evaluated and built once for the whole entry
+        SpawnPrototype prototype = compiledEntry.prototype(scope);
+        for (int i = 0; i < parts.length; i++) {
+            EntityFactory factory = parts[i].getFactory();
+            EncounterConfig.Spawn block = parts[i].getBlock();
+            job.add(compiledEntry.getLabelSlot(), counts[i], () -> {
+                EntityLiving entity = factory.create(world, random);
+                if (entity == null) {
+                    return null;
+                }
+                
+                // Position the entity
+                BlockPos spawnPos = placement.next(entity);
+                entity.setPosition(spawnPos.getX() + 0.5, spawnPos.getY(), spawnPos.getZ() + 0.5);
+                
+                // Apply AI toggles of the entry's block, or of the group member's own block
+                if (block.aiToggles != null) {
+                    applyAiToggles(entity, block.aiToggles);
+                }
+                if (block != spawnDef && block.persistence) {
+                    entity.enablePersistence();
+                }
+                
+                // Apply persistence, name, equipment and attributes
+                prototype.stamp(entity);
+                
+                // Spawn the entity; the queue tracks it in the context under the spawn label
+                world.spawnEntity(entity);
+                return entity;
+            });
         }
     }
     
     private void applyAiToggles(EntityLiving entity, EncounterConfig.Spawn.AiToggles aiToggles) {
-        if (aiToggles.clearTargetTasks != null && aiToggles.clearTargetTasks) {
-            entity.targetTasks.taskEntries.clear();
+        // Task kinds are cached per class; runs before anything else edits the task lists
+        if (aiToggles.removeDefaultWander != null && aiToggles.removeDefaultWander) {
+            AiTaskClassifier.removeTasks(entity, AiTaskClassifier.WANDER);
         }
         
-        if (aiToggles.removeDefaultWander != null && aiToggles.removeDefaultWander) {
-            entity.tasks.taskEntries.removeIf(entry -> 
-                entry.action.getClass().getSimpleName().contains("Wander"));
+        if (aiToggles.clearTargetTasks != null && aiToggles.clearTargetTasks) {
+            entity.targetTasks.taskEntries.clear();
         }
         
         if (aiToggles.canPickUpLoot != null) {
@@ -196,42 +193,11 @@ public class JsonEncounter implements IEncounter {
         }
         
         if (aiToggles.followRange != null) {
-            // Would need to apply follow range attribute here
-        }
-    }
-    
-    private BlockPos calculateSpawnPosition(BlockPos playerPos, EncounterConfig.Encounter.SpawnLocation location) {
-        if (location == null) {
-            // Default: spawn near player
-            return playerPos.add(
-                random.nextInt(10) - 5,
-                0,
-                random.nextInt(10) - 5
-            );
-        }
-        
-        if ("nearPlayer".equals(location.mode)) {
-            int minRadius = location.radius != null ? location.radius.min : 5;
-            int maxRadius = location.radius != null ? location.radius.max : 10;
-            int radius = minRadius + random.nextInt(maxRadius - minRadius + 1);
-            
-            double angle = random.nextDouble() * 2 * Math.PI;
-            int x = (int)(Math.cos(angle) * radius);
-            int z = (int)(Math.sin(angle) * radius);
-            
-            return playerPos.add(x, 0, z);
-        } else if ("absolute".equals(location.mode)) {
-            if (location.x != null && location.y != null && location.z != null) {
-                return new BlockPos(location.x, location.y, location.z);
+            IAttributeInstance followRange = entity.getEntityAttribute(SharedMonsterAttributes.FOLLOW_RANGE);
+            if (followRange != null) {
+                followRange.setBaseValue(aiToggles.followRange);
             }
         }
-        
-        // Default fallback
-        return playerPos.add(
-            random.nextInt(10) - 5,
-            0,
-            random.nextInt(10) - 5
-        );
     }
     
     @Override
@@ -0,0 +1,43 @@
+package ai.torchlite.randomencounters.expression;
+
+/**
+ * A typed, constant-folded expression tree. Evaluation reads primitive slots
+ * from an {@link ExpressionScope} and never parses strings or boxes values.
+ */
+public abstract class CompiledExpression {
+
+    public abstract ExpressionType getType();
+
+    public abstract double evalNumber(ExpressionScope scope);
+
+    public abstract boolean evalBoolean(ExpressionScope scope);
+
+    public abstract String evalString(ExpressionScope scope);
+
+    public boolean isConstant() {
+        return false;
+    }
+
+    public int evalInt(ExpressionScope scope) {
+        return (int) evalNumber(scope);
+    }
+
+    public static CompiledExpression constant(double value) {
+        return new ExpressionNodes.NumberConstant(value);
+    }
+
+    public static CompiledExpression constant(boolean value) {
+        return value ? ExpressionNodes.BooleanConstant.TRUE : ExpressionNodes.BooleanConstant.FALSE;
+    }
+
+    public static CompiledExpression constant(String value) {
+        return new ExpressionNodes.StringConstant(value);
+    }
+
+    static String formatNumber(double value) {
+        if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+}
@@ -0,0 +1,532 @@
+package ai.torchlite.randomencounters.expression;
+
+import ai.torchlite.randomencounters.expression.ExpressionNodes.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Compiles encounter expression strings into typed closure trees at load time.
+ *
+ * Supported syntax: numbers, 'single' or "double" quoted strings, true/false,
+ * variables, Math.floor/ceil/round/abs/sqrt/min/max/pow/random, unary - and !,
+ * * / %, + -, comparisons, == !=, && ||, ?: and parentheses. Sub-trees whose
+ * inputs are all constant are folded into a single constant.
+ */
+public final class ExpressionCompiler {
+
+    private ExpressionCompiler() {
+    }
+
+    public static CompiledExpression compile(String text, VariableLayout layout, ExpressionSource source) {
+        if (text == null) {
+            throw new ExpressionException(source.describe(null) + ": missing expression");
+        }
+        Parser parser = new Parser(text, layout, source);
+        CompiledExpression expression = parser.parseExpression();
+        parser.expectEnd();
+        return expression;
+    }
+
+    /**
+     * Compile an expression that must produce a number (booleans count as 0/1).
+     */
+    public static CompiledExpression compileNumber(String text, VariableLayout layout, ExpressionSource source) {
+        CompiledExpression expression = compile(text, layout, source);
+        return asNumber(expression, text, source);
+    }
+
+    /**
+     * Compile an expression used as a condition.
+     */
+    public static CompiledExpression compileBoolean(String text, VariableLayout layout, ExpressionSource source) {
+        return compile(text, layout, source);
+    }
+
+    static CompiledExpression asNumber(CompiledExpression expression, String text, ExpressionSource source) {
+        if (expression.getType() != ExpressionType.STRING) {
+            return expression;
+        }
+        if (expression.isConstant()) {
+            try {
+                return CompiledExpression.constant(expression.evalNumber(null));
+            } catch (NumberFormatException e) {
+                // fall through to the error below
+            }
+        }
+        throw new ExpressionException(source.describe(text) + ": expected a number but '" + text + "' is text");
+    }
+
+    /**
+     * Names an expression refers to as variables (not functions or keywords).
+     * Lenient: text that is not a valid expression yields whatever identifiers
+     * it contains, which callers match against the names they know.
+     */
+    public static Set<String> referencedNames(String text) {
+        Set<String> names = new LinkedHashSet<>();
+        int i = 0;
+        int length = text.length();
+        while (i < length) {
+            char c = text.charAt(i);
+            if (c == '\'' || c == '"') {
+                int end = text.indexOf(c, i + 1);
+                i = end < 0 ? length : end + 1;
+            } else if (Character.isJavaIdentifierStart(c)) {
+                int start = i;
+                while (i < length && (Character.isJavaIdentifierPart(text.charAt(i)) || text.charAt(i) == '.')) {
+                    i++;
+                }
+                int next = i;
+                while (next < length && Character.isWhitespace(text.charAt(next))) {
+                    next++;
+                }
+                if (next >= length || text.charAt(next) != '(') {
+                    names.add(text.substring(start, i));
+                }
+            } else if (Character.isDigit(c)) {
+                while (i < length && (Character.isLetterOrDigit(text.charAt(i)) || text.charAt(i) == '.')) {
+                    i++;
+                }
+            } else {
+                i++;
+            }
+        }
+        return names;
+    }
+
+    // ---- Tokens ----
+
+    private static final int NUMBER = 0;
+    private static final int STRING = 1;
+    private static final int IDENT = 2;
+    private static final int OPERATOR = 3;
+    private static final int END = 4;
+
+    private static final class Token {
+        final int kind;
+        final String text;
+        final double number;
+        final int column;
+
+        Token(int kind, String text, double number, int column) {
+            this.kind = kind;
+            this.text = text;
+            this.number = number;
+            this.column = column;
+        }
+
+        boolean is(String operator) {
+            return kind == OPERATOR && text.equals(operator);
+        }
+    }
+
+    private static List<Token> tokenize(String text, ExpressionSource source) {
+        List<Token> tokens = new ArrayList<>();
+        int i = 0;
+        int length = text.length();
+        while (i < length) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (Character.isDigit(c) || (c == '.' && i + 1 < length && Character.isDigit(text.charAt(i + 1)))) {
+                int start = i;
+                while (i < length && (Character.isDigit(text.charAt(i)) || text.charAt(i) == '.')) {
+                    i++;
+                }
+                String literal = text.substring(start, i);
+                try {
+                    tokens.add(new Token(NUMBER, literal, Double.parseDouble(literal), start));
+                } catch (NumberFormatException e) {
+                    throw error(text, source, start, "malformed number '" + literal + "'");
+                }
+            } else if (c == '\'' || c == '"') {
+                int start = i++;
+                StringBuilder value = new StringBuilder();
+                while (i < length && text.charAt(i) != c) {
+                    char ch = text.charAt(i);
+                    if (ch == '\\' && i + 1 < length) {
+                        ch = text.charAt(++i);
+                    }
+                    value.append(ch);
+                    i++;
+                }
+                if (i >= length) {
+                    throw error(text, source, start, "unterminated string");
+                }
+                i++;
+                tokens.add(new Token(STRING, value.toString(), 0, start));
+            } else if (Character.isJavaIdentifierStart(c)) {
+                int start = i;
+                while (i < length && (Character.isJavaIdentifierPart(text.charAt(i))
+                    || (text.charAt(i) == '.' && i + 1 < length && Character.isJavaIdentifierStart(text.charAt(i + 1))))) {
+                    i++;
+                }
+                tokens.add(new Token(IDENT, text.substring(start, i), 0, start));
+            } else {
+                String two = i + 1 < length ? text.substring(i, i + 2) : "";
+                if (two.equals("&&") || two.equals("||") || two.equals("==") || two.equals("!=")
+                    || two.equals("<=") || two.equals(">=")) {
+                    tokens.add(new Token(OPERATOR, two, 0, i));
+                    i += 2;
+                } else if ("+-*/%<>!?:(),".indexOf(c) >= 0) {
+                    tokens.add(new Token(OPERATOR, String.valueOf(c), 0, i));
+                    i++;
+                } else {
+                    throw error(text, source, i, "unexpected character '" + c + "'");
+                }
+            }
+        }
+        tokens.add(new Token(END, "", 0, length));
+        return tokens;
+    }
+
+    private static ExpressionException error(String text, ExpressionSource source, int column, String message) {
+        return new ExpressionException(source.describe(text) + ": " + message
+            + " at column " + (column + 1) + " in '" + text + "'");
+    }
+
+    // ---- Parser ----
+
+    private static final class Parser {
+        private final String text;
+        private final VariableLayout layout;
+        private final ExpressionSource source;
+        private final List<Token> tokens;
+        private int position;
+
+        Parser(String text, VariableLayout layout, ExpressionSource source) {
+            this.text = text;
+            this.layout = layout;
+            this.source = source;
+            this.tokens = tokenize(text, source);
+        }
+
+        private Token peek() {
+            return tokens.get(position);
+        }
+
+        private Token next() {
+            return tokens.get(position++);
+        }
+
+        private boolean accept(String operator) {
+            if (peek().is(operator)) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(String operator) {
+            Token token = next();
+            if (!token.is(operator)) {
+                throw error(text, source, token.column, "expected '" + operator + "'");
+            }
+        }
+
+        void expectEnd() {
+            Token token = peek();
+            if (token.kind != END) {
+                throw error(text, source, token.column, "unexpected '" + token.text + "'");
+            }
+        }
+
+        CompiledExpression parseExpression() {
+            return parseTernary();
+        }
+
+        private CompiledExpression parseTernary() {
+            CompiledExpression condition = parseOr();
+            if (!accept("?")) {
+                return condition;
+            }
+            CompiledExpression whenTrue = parseTernary();
+            expect(":");
+            CompiledExpression whenFalse = parseTernary();
+
+            if (condition.isConstant()) {
+                return condition.evalBoolean(null) ? whenTrue : whenFalse;
+            }
+
+            ExpressionType a = whenTrue.getType();
+            ExpressionType b = whenFalse.getType();
+            if (a == ExpressionType.STRING || b == ExpressionType.STRING) {
+                return new StringTernary(condition, whenTrue, whenFalse);
+            }
+            if (a == ExpressionType.BOOLEAN && b == ExpressionType.BOOLEAN) {
+                return new BooleanTernary(condition, whenTrue, whenFalse);
+            }
+            return new NumberTernary(condition, whenTrue, whenFalse);
+        }
+
+        private CompiledExpression parseOr() {
+            CompiledExpression left = parseAnd();
+            while (accept("||")) {
+                CompiledExpression right = parseAnd();
+                if (left.isConstant()) {
+                    left = left.evalBoolean(null) ? CompiledExpression.constant(true) : asBoolean(right);
+                } else {
+                    left = fold(new Or(left, right), left, right);
+                }
+            }
+            return left;
+        }
+
+        private CompiledExpression parseAnd() {
+            CompiledExpression left = parseEquality();
+            while (accept("&&")) {
+                CompiledExpression right = parseEquality();
+                if (left.isConstant()) {
+                    left = left.evalBoolean(null) ? asBoolean(right) : CompiledExpression.constant(false);
+                } else {
+                    left = fold(new And(left, right), left, right);
+                }
+            }
+            return left;
+        }
+
+        private CompiledExpression parseEquality() {
+            CompiledExpression left = parseComparison();
+            while (true) {
+                boolean equals;
+                if (accept("==")) {
+                    equals = true;
+                } else if (accept("!=")) {
+                    equals = false;
+                } else {
+                    return left;
+                }
+                CompiledExpression right = parseComparison();
+                if (left.getType() == ExpressionType.STRING || right.getType() == ExpressionType.STRING) {
+                    left = fold(new StringEquality(!equals, left, right), left, right);
+                } else {
+                    left = fold(new NumberComparison(equals ? NumberComparison.EQ : NumberComparison.NE, left, right),
+                        left, right);
+                }
+            }
+        }
+
+        private CompiledExpression parseComparison() {
+            CompiledExpression left = parseAdditive();
+            while (true) {
+                Token token = peek();
+                int op;
+                if (token.is("<")) {
+                    op = NumberComparison.LT;
+                } else if (token.is("<=")) {
+                    op = NumberComparison.LE;
+                } else if (token.is(">")) {
+                    op = NumberComparison.GT;
+                } else if (token.is(">=")) {
+                    op = NumberComparison.GE;
+                } else {
+                    return left;
+                }
+                position++;
+                CompiledExpression right = parseAdditive();
+                left = fold(new NumberComparison(op, number(left, token), number(right, token)), left, right);
+            }
+        }
+
+        private CompiledExpression parseAdditive() {
+            CompiledExpression left = parseMultiplicative();
+            while (true) {
+                Token token = peek();
+                if (token.is("+")) {
+                    position++;
+                    CompiledExpression right = parseMultiplicative();
+                    if (left.getType() == ExpressionType.STRING || right.getType() == ExpressionType.STRING) {
+                        left = fold(new Concat(left, right), left, right);
+                    } else {
+                        left = fold(new Arithmetic(Arithmetic.ADD, left, right), left, right);
+                    }
+                } else if (token.is("-")) {
+                    position++;
+                    CompiledExpression right = parseMultiplicative();
+                    left = fold(new Arithmetic(Arithmetic.SUBTRACT, number(left, token), number(right, token)), left, right);
+                } else {
+                    return left;
+                }
+            }
+        }
+
+        private CompiledExpression parseMultiplicative() {
+            CompiledExpression left = parseUnary();
+            while (true) {
+                Token token = peek();
+                int op;
+                if (token.is("*")) {
+                    op = Arithmetic.MULTIPLY;
+                } else if (token.is("/")) {
+                    op = Arithmetic.DIVIDE;
+                } else if (token.is("%")) {
+                    op = Arithmetic.MODULO;
+                } else {
+                    return left;
+                }
+                position++;
+                CompiledExpression right = parseUnary();
+                left = fold(new Arithmetic(op, number(left, token), number(right, token)), left, right);
+            }
+        }
+
+        private CompiledExpression parseUnary() {
+            Token token = peek();
+            if (accept("-")) {
+                CompiledExpression operand = parseUnary();
+                return fold(new Negate(number(operand, token)), operand);
+            }
+            if (accept("+")) {
+                return number(parseUnary(), token);
+            }
+            if (accept("!")) {
+                CompiledExpression operand = parseUnary();
+                return fold(new Not(operand), operand);
+            }
+            return parsePrimary();
+        }
+
+        private CompiledExpression parsePrimary() {
+            Token token = next();
+            switch (token.kind) {
+                case NUMBER:
+                    return CompiledExpression.constant(token.number);
+                case STRING:
+                    return CompiledExpression.constant(token.text);
+                case IDENT:
+                    return parseIdentifier(token);
+                case OPERATOR:
+                    if (token.text.equals("(")) {
+                        CompiledExpression inner = parseExpression();
+                        expect(")");
+                        return inner;
+                    }
+                    throw error(text, source, token.column, "unexpected '" + token.text + "'");
+                default:
+                    throw error(text, source, token.column, "unexpected end of expression");
+            }
+        }
+
+        private CompiledExpression parseIdentifier(Token token) {
+            String name = token.text;
+            if (name.equals("true")) {
+                return CompiledExpression.constant(true);
+            }
+            if (name.equals("false")) {
+                return CompiledExpression.constant(false);
+            }
+
+            if (peek().is("(")) {
+                position++;
+                List<CompiledExpression> args = new ArrayList<>();
+                if (!accept(")")) {
+                    do {
+                        args.add(number(parseExpression(), token));
+                    } while (accept(","));
+                    expect(")");
+                }
+                return function(token, args);
+            }
+
+            VariableLayout.Variable variable = layout.get(name);
+            if (variable == null) {
+                throw error(text, source, token.column, "unknown variable '" + name + "'");
+            }
+            if (variable.builtin) {
+                switch (variable.type) {
+                    case BOOLEAN:
+                        return new BooleanVariable(variable.slot);
+                    case STRING:
+                        return new StringVariable(variable.slot);
+                    default:
+                        return new NumberVariable(variable.slot);
+                }
+            }
+            // Constant variables fold straight into their readers
+            CompiledExpression definition = layout.getDefinitions()[variable.index];
+            if (definition.isConstant()) {
+                return definition;
+            }
+            switch (variable.type) {
+                case BOOLEAN:
+                    return new LazyBooleanVariable(variable.slot, variable.index);
+                case STRING:
+                    return new LazyStringVariable(variable.slot, variable.index);
+                default:
+                    return new LazyNumberVariable(variable.slot, variable.index);
+            }
+        }
+
+        private CompiledExpression function(Token token, List<CompiledExpression> args) {
+            String name = token.text.startsWith("Math.") ? token.text.substring(5) : token.text;
+            int function;
+            int arity;
+            switch (name) {
+                case "floor": function = MathFunction.FLOOR; arity = 1; break;
+                case "ceil": function = MathFunction.CEIL; arity = 1; break;
+                case "round": function = MathFunction.ROUND; arity = 1; break;
+                case "abs": function = MathFunction.ABS; arity = 1; break;
+                case "sqrt": function = MathFunction.SQRT; arity = 1; break;
+                case "min": function = MathFunction.MIN; arity = 2; break;
+                case "max": function = MathFunction.MAX; arity = 2; break;
+                case "pow": function = MathFunction.POW; arity = 2; break;
+                case "random":
+                    if (!args.isEmpty()) {
+                        throw error(text, source, token.column, "Math.random takes no arguments");
+                    }
+                    return new RandomNumber();
+                default:
+                    throw error(text, source, token.column, "unknown function '" + token.text + "'");
+            }
+
+            if (args.size() != arity) {
+                throw error(text, source, token.column, token.text + " expects " + arity + " argument(s)");
+            }
+            CompiledExpression a = args.get(0);
+            CompiledExpression b = arity > 1 ? args.get(1) : null;
+            return b != null ? fold(new MathFunction(function, a, b), a, b) : fold(new MathFunction(function, a, null), a);
+        }
+
+        private CompiledExpression number(CompiledExpression expression, Token at) {
+            if (expression.getType() != ExpressionType.STRING) {
+                return expression;
+            }
+            if (expression.isConstant()) {
+                try {
+                    return CompiledExpression.constant(expression.evalNumber(null));
+                } catch (NumberFormatException e) {
+                    // fall through to the error below
+                }
+            }
+            throw error(text, source, at.column, "text used where a number is expected");
+        }
+
+        private CompiledExpression asBoolean(CompiledExpression expression) {
+            if (expression.getType() == ExpressionType.BOOLEAN) {
+                return expression;
+            }
+            return fold(new Not(new Not(expression)), expression);
+        }
+
+        /**
+         * Replace a node with a constant when every input is constant.
+         */
+        private CompiledExpression fold(CompiledExpression node, CompiledExpression... inputs) {
+            for (CompiledExpression input : inputs) {
+                if (!input.isConstant()) {
+                    return node;
+                }
+            }
+            switch (node.getType()) {
+                case BOOLEAN:
+                    return CompiledExpression.constant(node.evalBoolean(null));
+                case STRING:
+                    return CompiledExpression.constant(node.evalString(null));
+                default:
+                    return CompiledExpression.constant(node.evalNumber(null));
+            }
+        }
+    }
+}
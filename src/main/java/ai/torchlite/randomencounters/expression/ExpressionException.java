@@ -0,0 +1,12 @@
+package ai.torchlite.randomencounters.expression;
+
+/**
+ * Raised when an encounter expression cannot be compiled. The message carries
+ * the config file and line the expression came from when they can be found.
+ */
+public class ExpressionException extends RuntimeException {
+
+    public ExpressionException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,466 @@
+package ai.torchlite.randomencounters.expression;
+
+/**
+ * Closure-tree node types produced by {@link ExpressionCompiler}.
+ */
+final class ExpressionNodes {
+
+    private ExpressionNodes() {
+    }
+
+    // ---- Typed bases ----
+
+    abstract static class NumberNode extends CompiledExpression {
+        @Override
+        public ExpressionType getType() {
+            return ExpressionType.NUMBER;
+        }
+
+        @Override
+        public boolean evalBoolean(ExpressionScope scope) {
+            return evalNumber(scope) != 0;
+        }
+
+        @Override
+        public String evalString(ExpressionScope scope) {
+            return formatNumber(evalNumber(scope));
+        }
+    }
+
+    abstract static class BooleanNode extends CompiledExpression {
+        @Override
+        public ExpressionType getType() {
+            return ExpressionType.BOOLEAN;
+        }
+
+        @Override
+        public double evalNumber(ExpressionScope scope) {
+            return evalBoolean(scope) ? 1 : 0;
+        }
+
+        @Override
+        public String evalString(ExpressionScope scope) {
+            return evalBoolean(scope) ? "true" : "false";
+        }
+    }
+
+    abstract static class StringNode extends CompiledExpression {
+        @Override
+        public ExpressionType getType() {
+            return ExpressionType.STRING;
+        }
+
+        @Override
+        public double evalNumber(ExpressionScope scope) {
+            // The compiler only lets constant strings reach numeric contexts
+            throw new IllegalStateException("String expression used as a number");
+        }
+
+        @Override
+        public boolean evalBoolean(ExpressionScope scope) {
+            return !evalString(scope).isEmpty();
+        }
+    }
+
+    // ---- Constants ----
+
+    static final class NumberConstant extends NumberNode {
+        private final double value;
+
+        NumberConstant(double value) {
+            this.value = value;
+        }
+
+        @Override
+        public double evalNumber(ExpressionScope scope) {
+            return value;
+        }
+
+        @Override
+        public boolean isConstant() {
+            return true;
+        }
+    }
+
+    static final class BooleanConstant extends BooleanNode {
+        static final BooleanConstant TRUE = new BooleanConstant(true);
+        static final BooleanConstant FALSE = new BooleanConstant(false);
+
+        private final boolean value;
+
+        private BooleanConstant(boolean value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean evalBoolean(ExpressionScope scope) {
+            return value;
+        }
+
+        @Override
+        public boolean isConstant() {
+            return true;
+        }
+    }
+
+    static final class StringConstant extends StringNode {
+        private final String value;
+
+        StringConstant(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public String evalString(ExpressionScope scope) {
+            return value;
+        }
+
+        @Override
+        public double evalNumber(ExpressionScope scope) {
+            return Double.parseDouble(value.trim());
+        }
+
+        @Override
+        public boolean isConstant() {
+            return true;
+        }
+    }
+
+    // ---- Variables ----
+
+    static final class NumberVariable extends NumberNode {
+        private final int slot;
+
+        NumberVariable(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        public double evalNumber(ExpressionScope scope) {
+            return scope.getNumber(slot);
+        }
+    }
+
+    static final class BooleanVariable extends BooleanNode {
+        private final int slot;
+
+        BooleanVariable(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        public boolean evalBoolean(ExpressionScope scope) {
+            return scope.getNumber(slot) != 0;
+        }
+    }
+
+    static final class StringVariable extends StringNode {
+        private final int slot;
+
+        StringVariable(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        public String evalString(ExpressionScope scope) {
+            return scope.getString(slot);
+        }
+    }
+
+    static final class LazyNumberVariable extends NumberNode {
+        private final int slot;
+        private final int index;
+
+        LazyNumberVariable(int slot, int index) {
+            this.slot = slot;
+            this.index = index;
+        }
+
+        @Override
+        public double evalNumber(ExpressionScope scope) {
+            return scope.resolveNumber(slot, index);
+        }
+    }
+
+    static final class LazyBooleanVariable extends BooleanNode {
+        private final int slot;
+        private final int index;
+
+        LazyBooleanVariable(int slot, int index) {
+            this.slot = slot;
+            this.index = index;
+        }
+
+        @Override
+        public boolean evalBoolean(ExpressionScope scope) {
+            return scope.resolveNumber(slot, index) != 0;
+        }
+    }
+
+    static final class LazyStringVariable extends StringNode {
+        private final int slot;
+        private final int index;
+
+        LazyStringVariable(int slot, int index) {
+            this.slot = slot;
+            this.index = index;
+        }
+
+        @Override
+        public String evalString(ExpressionScope scope) {
+            return scope.resolveString(slot, index);
+        }
+    }
+
+    // ---- Arithmetic ----
+
+    static final class Negate extends NumberNode {
+        private final CompiledExpression operand;
+
+        Negate(CompiledExpression operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        public double evalNumber(ExpressionScope scope) {
+            return -operand.evalNumber(scope);
+        }
+    }
+
+    static final class Arithmetic extends NumberNode {
+        static final int ADD = 0;
+        static final int SUBTRACT = 1;
+        static final int MULTIPLY = 2;
+        static final int DIVIDE = 3;
+        static final int MODULO = 4;
+
+        private final int op;
+        private final CompiledExpression left;
+        private final CompiledExpression right;
+
+        Arithmetic(int op, CompiledExpression left, CompiledExpression right) {
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public double evalNumber(ExpressionScope scope) {
+            double a = left.evalNumber(scope);
+            double b = right.evalNumber(scope);
+            switch (op) {
+                case ADD: return a + b;
+                case SUBTRACT: return a - b;
+                case MULTIPLY: return a * b;
+                case DIVIDE: return b != 0 ? a / b : 0;
+                default: return b != 0 ? a % b : 0;
+            }
+        }
+    }
+
+    static final class Concat extends StringNode {
+        private final CompiledExpression left;
+        private final CompiledExpression right;
+
+        Concat(CompiledExpression left, CompiledExpression right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public String evalString(ExpressionScope scope) {
+            return left.evalString(scope).concat(right.evalString(scope));
+        }
+    }
+
+    static final class MathFunction extends NumberNode {
+        static final int FLOOR = 0;
+        static final int CEIL = 1;
+        static final int ROUND = 2;
+        static final int ABS = 3;
+        static final int SQRT = 4;
+        static final int MIN = 5;
+        static final int MAX = 6;
+        static final int POW = 7;
+
+        private final int function;
+        private final CompiledExpression a;
+        private final CompiledExpression b;
+
+        MathFunction(int function, CompiledExpression a, CompiledExpression b) {
+            this.function = function;
+            this.a = a;
+            this.b = b;
+        }
+
+        @Override
+        public double evalNumber(ExpressionScope scope) {
+            double x = a.evalNumber(scope);
+            switch (function) {
+                case FLOOR: return Math.floor(x);
+                case CEIL: return Math.ceil(x);
+                case ROUND: return Math.round(x);
+                case ABS: return Math.abs(x);
+                case SQRT: return Math.sqrt(x);
+                case MIN: return Math.min(x, b.evalNumber(scope));
+                case MAX: return Math.max(x, b.evalNumber(scope));
+                default: return Math.pow(x, b.evalNumber(scope));
+            }
+        }
+    }
+
+    static final class RandomNumber extends NumberNode {
+        @Override
+        public double evalNumber(ExpressionScope scope) {
+            return scope.nextRandom();
+        }
+    }
+
+    // ---- Logic ----
+
+    static final class Not extends BooleanNode {
+        private final CompiledExpression operand;
+
+        Not(CompiledExpression operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        public boolean evalBoolean(ExpressionScope scope) {
+            return !operand.evalBoolean(scope);
+        }
+    }
+
+    static final class And extends BooleanNode {
+        private final CompiledExpression left;
+        private final CompiledExpression right;
+
+        And(CompiledExpression left, CompiledExpression right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean evalBoolean(ExpressionScope scope) {
+            return left.evalBoolean(scope) && right.evalBoolean(scope);
+        }
+    }
+
+    static final class Or extends BooleanNode {
+        private final CompiledExpression left;
+        private final CompiledExpression right;
+
+        Or(CompiledExpression left, CompiledExpression right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean evalBoolean(ExpressionScope scope) {
+            return left.evalBoolean(scope) || right.evalBoolean(scope);
+        }
+    }
+
+    static final class NumberComparison extends BooleanNode {
+        static final int EQ = 0;
+        static final int NE = 1;
+        static final int LT = 2;
+        static final int LE = 3;
+        static final int GT = 4;
+        static final int GE = 5;
+
+        private final int op;
+        private final CompiledExpression left;
+        private final CompiledExpression right;
+
+        NumberComparison(int op, CompiledExpression left, CompiledExpression right) {
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean evalBoolean(ExpressionScope scope) {
+            double a = left.evalNumber(scope);
+            double b = right.evalNumber(scope);
+            switch (op) {
+                case EQ: return a == b;
+                case NE: return a != b;
+                case LT: return a < b;
+                case LE: return a <= b;
+                case GT: return a > b;
+                default: return a >= b;
+            }
+        }
+    }
+
+    static final class StringEquality extends BooleanNode {
+        private final boolean negate;
+        private final CompiledExpression left;
+        private final CompiledExpression right;
+
+        StringEquality(boolean negate, CompiledExpression left, CompiledExpression right) {
+            this.negate = negate;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean evalBoolean(ExpressionScope scope) {
+            return left.evalString(scope).equals(right.evalString(scope)) != negate;
+        }
+    }
+
+    // ---- Conditionals ----
+
+    static final class NumberTernary extends NumberNode {
+        private final CompiledExpression condition;
+        private final CompiledExpression whenTrue;
+        private final CompiledExpression whenFalse;
+
+        NumberTernary(CompiledExpression condition, CompiledExpression whenTrue, CompiledExpression whenFalse) {
+            this.condition = condition;
+            this.whenTrue = whenTrue;
+            this.whenFalse = whenFalse;
+        }
+
+        @Override
+        public double evalNumber(ExpressionScope scope) {
+            return condition.evalBoolean(scope) ? whenTrue.evalNumber(scope) : whenFalse.evalNumber(scope);
+        }
+    }
+
+    static final class BooleanTernary extends BooleanNode {
+        private final CompiledExpression condition;
+        private final CompiledExpression whenTrue;
+        private final CompiledExpression whenFalse;
+
+        BooleanTernary(CompiledExpression condition, CompiledExpression whenTrue, CompiledExpression whenFalse) {
+            this.condition = condition;
+            this.whenTrue = whenTrue;
+            this.whenFalse = whenFalse;
+        }
+
+        @Override
+        public boolean evalBoolean(ExpressionScope scope) {
+            return condition.evalBoolean(scope) ? whenTrue.evalBoolean(scope) : whenFalse.evalBoolean(scope);
+        }
+    }
+
+    static final class StringTernary extends StringNode {
+        private final CompiledExpression condition;
+        private final CompiledExpression whenTrue;
+        private final CompiledExpression whenFalse;
+
+        StringTernary(CompiledExpression condition, CompiledExpression whenTrue, CompiledExpression whenFalse) {
+            this.condition = condition;
+            this.whenTrue = whenTrue;
+            this.whenFalse = whenFalse;
+        }
+
+        @Override
+        public String evalString(ExpressionScope scope) {
+            return condition.evalBoolean(scope) ? whenTrue.evalString(scope) : whenFalse.evalString(scope);
+        }
+    }
+}
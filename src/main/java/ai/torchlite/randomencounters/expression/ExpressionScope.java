@@ -0,0 +1,118 @@
+package ai.torchlite.randomencounters.expression;
+
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+
+import java.util.Random;
+
+/**
+ * Primitive variable storage for one evaluation context (usually one
+ * encounter instance). Slots are laid out by a {@link VariableLayout}.
+ * User variables are computed on first read and memoized, so a variable
+ * only referenced from a branch that is never taken is never evaluated.
+ */
+public class ExpressionScope {
+
+    private final double[] numbers;
+    private final String[] strings;
+    private final CompiledExpression[] definitions;
+    private final boolean[] computed;
+    private final Random random;
+
+    public ExpressionScope(VariableLayout layout, Random random) {
+        this.numbers = new double[layout.getNumberSlotCount()];
+        this.strings = new String[layout.getStringSlotCount()];
+        this.definitions = layout.getDefinitions();
+        this.computed = new boolean[definitions.length];
+        this.random = random;
+    }
+
+    public double getNumber(int slot) {
+        return numbers[slot];
+    }
+
+    public String getString(int slot) {
+        String value = strings[slot];
+        return value != null ? value : "";
+    }
+
+    public void setNumber(int slot, double value) {
+        numbers[slot] = value;
+    }
+
+    public void setBoolean(int slot, boolean value) {
+        numbers[slot] = value ? 1 : 0;
+    }
+
+    public void setString(int slot, String value) {
+        strings[slot] = value;
+    }
+
+    /**
+     * Read a user variable, evaluating its definition on first access.
+     * Cycles are rejected when the layout is compiled, so this cannot recurse forever.
+     */
+    double resolveNumber(int slot, int index) {
+        if (!computed[index]) {
+            numbers[slot] = definitions[index].evalNumber(this);
+            computed[index] = true;
+        }
+        return numbers[slot];
+    }
+
+    String resolveString(int slot, int index) {
+        if (!computed[index]) {
+            strings[slot] = definitions[index].evalString(this);
+            computed[index] = true;
+        }
+        return strings[slot];
+    }
+
+    /**
+     * @return true if the user variable at {@code index} has been evaluated in this scope
+     */
+    public boolean isComputed(int index) {
+        return computed[index];
+    }
+
+    double nextRandom() {
+        return random.nextDouble();
+    }
+
+    /**
+     * Fill the built-in variables from the player the encounter was triggered for.
+     */
+    public void setBuiltins(EntityPlayer player, double difficulty) {
+        World world = player.world;
+        long timeOfDay = world.getWorldTime() % 24000L;
+
+        setNumber(VariableLayout.DIFFICULTY, difficulty);
+        setNumber(VariableLayout.PLAYER_LEVEL, player.experienceLevel);
+        setNumber(VariableLayout.PLAYER_HEALTH, player.getHealth());
+        setNumber(VariableLayout.PLAYER_MAX_HEALTH, player.getMaxHealth());
+        setNumber(VariableLayout.TIME_OF_DAY, timeOfDay);
+
+        BlockPos spawn = world.getSpawnPoint();
+        double dx = player.posX - spawn.getX();
+        double dz = player.posZ - spawn.getZ();
+        setNumber(VariableLayout.DISTANCE_FROM_SPAWN, Math.sqrt(dx * dx + dz * dz));
+
+        int nearby = 0;
+        for (EntityPlayer other : world.playerEntities) {
+            if (other != player && other.getDistanceSq(player) <= 64 * 64) {
+                nearby++;
+            }
+        }
+        setNumber(VariableLayout.NEARBY_PLAYERS, nearby);
+        setNumber(VariableLayout.ONLINE_PLAYERS, world.getMinecraftServer() != null
+            ? world.getMinecraftServer().getCurrentPlayerCount() : world.playerEntities.size());
+        setNumber(VariableLayout.DIMENSION, world.provider.getDimension());
+
+        boolean night = timeOfDay >= 13000 && timeOfDay < 23000;
+        setBoolean(VariableLayout.IS_NIGHT, night);
+        setBoolean(VariableLayout.IS_DAY, !night);
+        setBoolean(VariableLayout.IS_RAINING, world.isRaining());
+        setBoolean(VariableLayout.IS_THUNDERING, world.isThundering());
+    }
+}
@@ -0,0 +1,99 @@
+package ai.torchlite.randomencounters.expression;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * Where an expression came from: the owning encounter, the file the loader
+ * read it from and the JSON field path. The line is only looked up when an
+ * error is reported, so successful loads never re-read the config files.
+ */
+public final class ExpressionSource {
+
+    private final File file;
+    private final String encounterId;
+    private final String field;
+
+    /**
+     * @param file the file the encounter was read from, or null if unknown (e.g. bundled defaults)
+     */
+    public ExpressionSource(File file, String encounterId, String field) {
+        this.file = file;
+        this.encounterId = encounterId;
+        this.field = field;
+    }
+
+    public ExpressionSource child(String name) {
+        return new ExpressionSource(file, encounterId, field != null ? field + "." + name : name);
+    }
+
+    public String getEncounterId() {
+        return encounterId;
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    /**
+     * @return "file:line (encounter field)" for the given expression text
+     */
+    public String describe(String snippet) {
+        String location = locate(snippet);
+        String where = encounterId + (field != null ? " " + field : "");
+        return location != null ? location + " (" + where + ")" : where;
+    }
+
+    private String locate(String snippet) {
+        if (file == null || encounterId == null) {
+            return null;
+        }
+
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return null;
+        }
+
+        String idToken = "\"" + encounterId + "\"";
+        int idLine = -1;
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            if (line.contains("\"id\"") && line.contains(idToken)) {
+                idLine = i;
+                break;
+            }
+        }
+        if (idLine < 0) {
+            return file.getName();
+        }
+
+        if (snippet != null) {
+            String escaped = escapeNonAscii(snippet);
+            for (int i = idLine; i < lines.size(); i++) {
+                String line = lines.get(i);
+                if (line.contains(snippet) || line.contains(escaped)) {
+                    return file.getName() + ":" + (i + 1);
+                }
+            }
+        }
+        return file.getName() + ":" + (idLine + 1);
+    }
+
+    private static String escapeNonAscii(String text) {
+        StringBuilder builder = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 128) {
+                builder.append(c);
+            } else {
+                builder.append(String.format("\\u%04X", (int) c));
+            }
+        }
+        return builder.toString();
+    }
+}
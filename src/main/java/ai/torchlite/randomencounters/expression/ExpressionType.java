@@ -0,0 +1,10 @@
+package ai.torchlite.randomencounters.expression;
+
+/**
+ * Static result type of a compiled expression.
+ */
+public enum ExpressionType {
+    NUMBER,
+    BOOLEAN,
+    STRING
+}
@@ -0,0 +1,105 @@
+package ai.torchlite.randomencounters.expression;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * Helpers for compiling JSON config values that may hold either a literal or
+ * an expression string.
+ */
+public final class JsonExpressions {
+
+    private JsonExpressions() {
+    }
+
+    /**
+     * Compile a numeric field. JSON numbers become constants; strings are
+     * always parsed as expressions; a missing value yields {@code fallback}.
+     */
+    public static CompiledExpression number(JsonElement value, double fallback, VariableLayout layout,
+                                            ExpressionSource source) {
+        if (value == null || value.isJsonNull()) {
+            return CompiledExpression.constant(fallback);
+        }
+        if (!value.isJsonPrimitive()) {
+            throw new ExpressionException(source.describe(null) + ": expected a number or expression");
+        }
+        JsonPrimitive primitive = value.getAsJsonPrimitive();
+        if (primitive.isNumber()) {
+            return CompiledExpression.constant(primitive.getAsDouble());
+        }
+        if (primitive.isBoolean()) {
+            return CompiledExpression.constant(primitive.getAsBoolean() ? 1 : 0);
+        }
+        return ExpressionCompiler.compileNumber(primitive.getAsString(), layout, source);
+    }
+
+    public static CompiledExpression number(String value, double fallback, VariableLayout layout,
+                                            ExpressionSource source) {
+        if (value == null) {
+            return CompiledExpression.constant(fallback);
+        }
+        return ExpressionCompiler.compileNumber(value, layout, source);
+    }
+
+    /**
+     * Compile a condition field; a missing condition is always true.
+     */
+    public static CompiledExpression condition(String value, VariableLayout layout, ExpressionSource source) {
+        if (value == null || value.trim().isEmpty()) {
+            return CompiledExpression.constant(true);
+        }
+        return ExpressionCompiler.compileBoolean(value, layout, source);
+    }
+
+    /**
+     * Compile a text field such as a name, message or item id. Plain text like
+     * {@code minecraft:bow} or a colour-coded name stays a literal; a quoted
+     * {@code ?:} choice, anything using {@code Math.}, or a bare variable name
+     * is compiled as an expression.
+     */
+    public static CompiledExpression text(String value, VariableLayout layout, ExpressionSource source) {
+        if (value == null) {
+            return null;
+        }
+        if (isExpression(value, layout)) {
+            return ExpressionCompiler.compile(value, layout, source);
+        }
+        return CompiledExpression.constant(value);
+    }
+
+    /**
+     * Compile a free-form variable value. Anything that parses is an expression;
+     * plain prose with no operators (e.g. a message) falls back to a literal
+     * string, while real expression mistakes are still reported.
+     */
+    public static CompiledExpression value(String value, VariableLayout layout, ExpressionSource source) {
+        try {
+            return ExpressionCompiler.compile(value, layout, source);
+        } catch (ExpressionException e) {
+            if (isProse(value)) {
+                return CompiledExpression.constant(value);
+            }
+            throw e;
+        }
+    }
+
+    private static boolean isProse(String value) {
+        if (value.trim().indexOf(' ') < 0) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if ("()'\"+-*/%<>=&|?".indexOf(value.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isExpression(String value, VariableLayout layout) {
+        if ((value.indexOf('\'') >= 0 && value.indexOf('?') >= 0) || value.contains("Math.")) {
+            return true;
+        }
+        return layout.get(value.trim()) != null;
+    }
+}
@@ -0,0 +1,70 @@
+package ai.torchlite.randomencounters.expression;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Orders variable definitions so every variable is compiled after the ones it
+ * reads, regardless of the order they were declared in. Cycles are rejected.
+ */
+public final class VariableGraph {
+
+    private static final int UNVISITED = 0;
+    private static final int VISITING = 1;
+    private static final int DONE = 2;
+
+    private VariableGraph() {
+    }
+
+    /**
+     * @param dependencies each variable mapped to the names it references, in declaration order;
+     *                     names that are not keys (built-ins, functions, prose) are ignored
+     * @param sources      where each variable was defined, for error messages
+     * @return the variable names in dependency order
+     */
+    public static List<String> order(Map<String, Set<String>> dependencies, Map<String, ExpressionSource> sources) {
+        List<String> order = new ArrayList<>(dependencies.size());
+        Map<String, Integer> state = new HashMap<>();
+        List<String> path = new ArrayList<>();
+        for (String name : dependencies.keySet()) {
+            visit(name, dependencies, sources, state, path, order);
+        }
+        return order;
+    }
+
+    private static void visit(String name, Map<String, Set<String>> dependencies, Map<String, ExpressionSource> sources,
+                              Map<String, Integer> state, List<String> path, List<String> order) {
+        Integer current = state.get(name);
+        if (current != null && current == DONE) {
+            return;
+        }
+        if (current != null && current == VISITING) {
+            StringBuilder cycle = new StringBuilder();
+            for (int i = path.indexOf(name); i < path.size(); i++) {
+                cycle.append(path.get(i)).append(" -> ");
+            }
+            cycle.append(name);
+            ExpressionSource source = sources.get(name);
+            throw new ExpressionException((source != null ? source.describe(null) : name)
+                + ": variables depend on each other in a cycle: " + cycle);
+        }
+
+        state.put(name, VISITING);
+        path.add(name);
+        for (String dependency : dependencies.get(name)) {
+            if (dependencies.containsKey(dependency) && !dependency.equals(name)) {
+                visit(dependency, dependencies, sources, state, path, order);
+            } else if (dependency.equals(name)) {
+                ExpressionSource source = sources.get(name);
+                throw new ExpressionException((source != null ? source.describe(null) : name)
+                    + ": variable '" + name + "' refers to itself");
+            }
+        }
+        path.remove(path.size() - 1);
+        state.put(name, DONE);
+        order.add(name);
+    }
+}
@@ -0,0 +1,110 @@
+package ai.torchlite.randomencounters.expression;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Assigns each named variable a typed slot in an {@link ExpressionScope}.
+ * Numbers and booleans share the primitive number slots; strings get their own.
+ * Every layout starts with the built-in variables at fixed slots. User
+ * variables are also given an index into the layout's definitions, which a
+ * scope evaluates lazily the first time the variable is read.
+ */
+public class VariableLayout {
+
+    public static final int DIFFICULTY = 0;
+    public static final int PLAYER_LEVEL = 1;
+    public static final int PLAYER_HEALTH = 2;
+    public static final int PLAYER_MAX_HEALTH = 3;
+    public static final int TIME_OF_DAY = 4;
+    public static final int DISTANCE_FROM_SPAWN = 5;
+    public static final int NEARBY_PLAYERS = 6;
+    public static final int ONLINE_PLAYERS = 7;
+    public static final int DIMENSION = 8;
+    public static final int IS_NIGHT = 9;
+    public static final int IS_DAY = 10;
+    public static final int IS_RAINING = 11;
+    public static final int IS_THUNDERING = 12;
+    public static final int REMAINING_UNITS = 13;
+    static final int BUILTIN_COUNT = 14;
+
+    private final Map<String, Variable> variables = new HashMap<>();
+    private int numberSlots;
+    private int stringSlots;
+    private CompiledExpression[] definitions = new CompiledExpression[0];
+
+    public VariableLayout() {
+        defineBuiltin("difficulty", ExpressionType.NUMBER, DIFFICULTY);
+        defineBuiltin("playerLevel", ExpressionType.NUMBER, PLAYER_LEVEL);
+        defineBuiltin("playerHealth", ExpressionType.NUMBER, PLAYER_HEALTH);
+        defineBuiltin("playerMaxHealth", ExpressionType.NUMBER, PLAYER_MAX_HEALTH);
+        defineBuiltin("timeOfDay", ExpressionType.NUMBER, TIME_OF_DAY);
+        defineBuiltin("distanceFromSpawn", ExpressionType.NUMBER, DISTANCE_FROM_SPAWN);
+        defineBuiltin("nearbyPlayers", ExpressionType.NUMBER, NEARBY_PLAYERS);
+        defineBuiltin("onlinePlayers", ExpressionType.NUMBER, ONLINE_PLAYERS);
+        defineBuiltin("dimension", ExpressionType.NUMBER, DIMENSION);
+        defineBuiltin("isNight", ExpressionType.BOOLEAN, IS_NIGHT);
+        defineBuiltin("isDay", ExpressionType.BOOLEAN, IS_DAY);
+        defineBuiltin("isRaining", ExpressionType.BOOLEAN, IS_RAINING);
+        defineBuiltin("isThundering", ExpressionType.BOOLEAN, IS_THUNDERING);
+        defineBuiltin("remainingUnits", ExpressionType.NUMBER, REMAINING_UNITS);
+        numberSlots = BUILTIN_COUNT;
+    }
+
+    private void defineBuiltin(String name, ExpressionType type, int slot) {
+        variables.put(name, new Variable(name, type, slot, -1));
+    }
+
+    /**
+     * Define a user variable computed by {@code definition}. Redefining a name
+     * replaces its previous slot.
+     */
+    public Variable define(String name, CompiledExpression definition) {
+        Variable existing = variables.get(name);
+        if (existing != null && existing.builtin) {
+            throw new ExpressionException("Variable '" + name + "' shadows a built-in variable");
+        }
+        ExpressionType type = definition.getType();
+        int slot = type == ExpressionType.STRING ? stringSlots++ : numberSlots++;
+        int index = definitions.length;
+        definitions = Arrays.copyOf(definitions, index + 1);
+        definitions[index] = definition;
+
+        Variable variable = new Variable(name, type, slot, index);
+        variables.put(name, variable);
+        return variable;
+    }
+
+    public Variable get(String name) {
+        return variables.get(name);
+    }
+
+    public int getNumberSlotCount() {
+        return numberSlots;
+    }
+
+    public int getStringSlotCount() {
+        return stringSlots;
+    }
+
+    CompiledExpression[] getDefinitions() {
+        return definitions;
+    }
+
+    public static final class Variable {
+        public final String name;
+        public final ExpressionType type;
+        public final int slot;
+        public final int index; // definition index, -1 for built-ins
+        public final boolean builtin;
+
+        Variable(String name, ExpressionType type, int slot, int index) {
+            this.name = name;
+            this.type = type;
+            this.slot = slot;
+            this.index = index;
+            this.builtin = index < 0;
+        }
+    }
+}
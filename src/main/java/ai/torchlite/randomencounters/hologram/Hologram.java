@@ -0,0 +1,29 @@
+package ai.torchlite.randomencounters.hologram;
+
+import ai.torchlite.randomencounters.encounters.runtime.TimerWheel;
+
+/**
+ * A speech bubble tracked by {@link HologramSpeech}, keyed by its (real or
+ * virtual) entity id and removed when its expiry timer fires.
+ */
+abstract class Hologram {
+
+    /** Squared distance the speaker must move before the bubble is moved after it */
+    static final double MOVE_EPSILON_SQ = 0.01 * 0.01;
+
+    TimerWheel.Timer<Hologram> expiry;
+
+    abstract int getEntityId();
+
+    /**
+     * Move the bubble after its speaker if the speaker moved.
+     *
+     * @return false once the speaker or the bubble is gone
+     */
+    abstract boolean follow();
+
+    /**
+     * Remove the bubble from the world or from its viewers.
+     */
+    abstract void destroy();
+}
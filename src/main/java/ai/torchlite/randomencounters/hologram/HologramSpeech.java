@@ -1,17 +1,49 @@
 package ai.torchlite.randomencounters.hologram;
 
+import ai.torchlite.randomencounters.encounters.runtime.TimerWheel;
 import net.minecraft.entity.EntityLiving;
 import net.minecraft.entity.item.EntityArmorStand;
 import net.minecraft.world.WorldServer;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.List;
 
+/**
+ * Speech bubbles above NPCs. Bubbles are keyed by entity id in a primitive
+ * map and expire through a timer wheel, so a tick only checks whether each
+ * speaker moved; a bubble is moved only when its speaker did.
+ *
+ * Must only be used from the server thread.
+ */
 public class HologramSpeech {
     
-    private static final Map<Integer, HologramTracker> activeHolograms = new HashMap<>();
+    private static final double Y_OFFSET = 0.4D;
     
-    public static EntityArmorStand spawnHologram(WorldServer world, EntityLiving npc, String text, int durationTicks) {
+    private static final IntObjectMap<Hologram> activeHolograms = new IntObjectMap<>();
+    private static final TimerWheel<Hologram> expiries = new TimerWheel<>();
+    private static final List<Hologram> ended = new ArrayList<>();
+    
+    /** Speech bubbles are packet-only {@link VirtualHologram}s unless switched off */
+    private static boolean virtual = true;
+    
+    public static void setVirtual(boolean useVirtual) {
+        virtual = useVirtual;
+    }
+    
+    /**
+     * Show {@code text} above {@code npc} for {@code durationTicks}, following it as it moves.
+     */
+    public static void spawnHologram(WorldServer world, EntityLiving npc, String text, int durationTicks) {
+        if (virtual) {
+            track(new VirtualHologram(world, npc, text, Y_OFFSET), durationTicks);
+        } else {
+            spawnEntityHologram(world, npc, text, durationTicks);
+        }
+    }
+    
+    /**
+     * Speech bubble backed by a real, server-side armor stand entity.
+     */
+    public static EntityArmorStand spawnEntityHologram(WorldServer world, EntityLiving npc, String text, int durationTicks) {
         EntityArmorStand armorStand = new EntityArmorStand(world);
         armorStand.setInvisible(true);
         armorStand.setNoGravity(true);
@@ -27,7 +59,7 @@ public class HologramSpeech {
         world.spawnEntity(armorStand);
         
         // Track the hologram
-        activeHolograms.put(armorStand.getEntityId(), new HologramTracker(armorStand, npc, 0.4D, durationTicks));
+        track(new HologramTracker(armorStand, npc, Y_OFFSET), durationTicks);
         
         return armorStand;
     }
@@ -37,73 +69,102 @@ public class HologramSpeech {
     }
     
     private static void positionHologram(EntityArmorStand armorStand, EntityLiving npc) {
-        double y = npc.posY + npc.height + 0.4D;
+        double y = npc.posY + npc.height + Y_OFFSET;
         armorStand.setPosition(npc.posX, y, npc.posZ);
         armorStand.rotationYaw = npc.rotationYaw;
     }
     
+    private static void track(Hologram hologram, int durationTicks) {
+        Hologram replaced = activeHolograms.put(hologram.getEntityId(), hologram);
+        if (replaced != null) {
+            replaced.expiry.cancel();
+        }
+        hologram.expiry = expiries.schedule(durationTicks, hologram);
+    }
+    
     public static void tickHolograms() {
-        Iterator<Map.Entry<Integer, HologramTracker>> iterator = activeHolograms.entrySet().iterator();
-        while (iterator.hasNext()) {
-            Map.Entry<Integer, HologramTracker> entry = iterator.next();
-            HologramTracker tracker = entry.getValue();
-            
-            if (!tracker.tick()) {
-                iterator.remove();
+        expiries.advance(HologramSpeech::remove);
+        if (activeHolograms.size() == 0) {
+            return;
+        }
+        
+        activeHolograms.forEachValue(hologram -> {
+            if (!hologram.follow()) {
+                ended.add(hologram);
+            }
+        });
+        if (!ended.isEmpty()) {
+            for (Hologram hologram : ended) {
+                remove(hologram);
             }
+            ended.clear();
         }
     }
     
+    private static void remove(Hologram hologram) {
+        hologram.expiry.cancel();
+        activeHolograms.remove(hologram.getEntityId());
+        hologram.destroy();
+    }
+    
     public static void removeHologram(EntityArmorStand armorStand) {
-        activeHolograms.remove(armorStand.getEntityId());
-        if (!armorStand.isDead) {
+        Hologram hologram = activeHolograms.get(armorStand.getEntityId());
+        if (hologram != null) {
+            remove(hologram);
+        } else if (!armorStand.isDead) {
             armorStand.setDead();
         }
     }
     
     public static void removeAllHolograms() {
-        for (HologramTracker tracker : activeHolograms.values()) {
-            if (!tracker.armorStand.isDead) {
-                tracker.armorStand.setDead();
-            }
-        }
+        activeHolograms.forEachValue(hologram -> {
+            hologram.expiry.cancel();
+            hologram.destroy();
+        });
         activeHolograms.clear();
     }
     
-    private static class HologramTracker {
+    private static class HologramTracker extends Hologram {
         final EntityArmorStand armorStand;
         final EntityLiving npc;
         final double yOffset;
-        int remainingTicks;
         
-        HologramTracker(EntityArmorStand armorStand, EntityLiving npc, double yOffset, int durationTicks) {
+        HologramTracker(EntityArmorStand armorStand, EntityLiving npc, double yOffset) {
             this.armorStand = armorStand;
             this.npc = npc;
             this.yOffset = yOffset;
-            this.remainingTicks = durationTicks;
         }
         
-        boolean tick() {
+        @Override
+        int getEntityId() {
+            return armorStand.getEntityId();
+        }
+        
+        @Override
+        boolean follow() {
             // Check if entities are still alive
             if (armorStand.isDead || npc.isDead) {
-                if (!armorStand.isDead) {
-                    armorStand.setDead();
-                }
                 return false;
             }
             
-            // Check duration
-            remainingTicks--;
-            if (remainingTicks <= 0) {
-                armorStand.setDead();
-                return false;
+            // Only move when the NPC did; every setPosition is sent to the tracking players
+            double y = npc.posY + npc.height + yOffset;
+            double dx = npc.posX - armorStand.posX;
+            double dy = y - armorStand.posY;
+            double dz = npc.posZ - armorStand.posZ;
+            if (dx * dx + dy * dy + dz * dz > MOVE_EPSILON_SQ || armorStand.rotationYaw != npc.rotationYaw) {
+                armorStand.setPosition(npc.posX, y, npc.posZ);
+                armorStand.rotationYaw = npc.rotationYaw;
             }
             
-            // Update position to follow NPC
-            armorStand.setPosition(npc.posX, npc.posY + npc.height + yOffset, npc.posZ);
-            armorStand.rotationYaw = npc.rotationYaw;
-            
             return true;
         }
+        
+        @Override
+        void destroy() {
+            if (!armorStand.isDead) {
+                armorStand.setDead();
+            }
+        }
     }
 }
@@ -0,0 +1,135 @@
+package ai.torchlite.randomencounters.hologram;
+
+import java.util.function.Consumer;
+
+/**
+ * Open-addressing map from an int key (an entity id) to a value, without
+ * boxing. Null values are not allowed; a null slot marks an empty one.
+ *
+ * Not thread safe; use from the server thread only.
+ */
+final class IntObjectMap<V> {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private int[] keys;
+    private Object[] values;
+    private int mask;
+    private int size;
+
+    IntObjectMap() {
+        keys = new int[MIN_CAPACITY];
+        values = new Object[MIN_CAPACITY];
+        mask = MIN_CAPACITY - 1;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(int key) {
+        for (int slot = slot(key); values[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return (V) values[slot];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the value previously mapped to {@code key}, or null
+     */
+    @SuppressWarnings("unchecked")
+    V put(int key, V value) {
+        int slot = slot(key);
+        for (; values[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                V previous = (V) values[slot];
+                values[slot] = value;
+                return previous;
+            }
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > (mask + 1) >> 1) {
+            rehash(keys.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * @return the removed value, or null if {@code key} was absent
+     */
+    @SuppressWarnings("unchecked")
+    V remove(int key) {
+        for (int slot = slot(key); values[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                V removed = (V) values[slot];
+                removeAt(slot);
+                return removed;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Visit every value. The map must not be modified while this runs.
+     */
+    @SuppressWarnings("unchecked")
+    void forEachValue(Consumer<? super V> action) {
+        for (Object value : values) {
+            if (value != null) {
+                action.accept((V) value);
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        keys = new int[MIN_CAPACITY];
+        values = new Object[MIN_CAPACITY];
+        mask = MIN_CAPACITY - 1;
+        size = 0;
+    }
+
+    private int slot(int key) {
+        // Entity ids are sequential; spread them over the table
+        int h = key * 0x9e3779b9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private void removeAt(int free) {
+        size--;
+        values[free] = null;
+        // Backward-shift deletion keeps probe runs intact without tombstones
+        int slot = (free + 1) & mask;
+        while (values[slot] != null) {
+            int home = slot(keys[slot]);
+            if (((slot - home) & mask) >= ((slot - free) & mask)) {
+                keys[free] = keys[slot];
+                values[free] = values[slot];
+                values[slot] = null;
+                free = slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new int[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = slot(oldKeys[i]);
+                while (values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package ai.torchlite.randomencounters.hologram;
+
+import net.minecraft.entity.EntityLiving;
+import net.minecraft.entity.item.EntityArmorStand;
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.entity.player.EntityPlayerMP;
+import net.minecraft.network.Packet;
+import net.minecraft.network.play.server.SPacketDestroyEntities;
+import net.minecraft.network.play.server.SPacketEntityMetadata;
+import net.minecraft.network.play.server.SPacketEntityTeleport;
+import net.minecraft.network.play.server.SPacketSpawnObject;
+import net.minecraft.world.WorldServer;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * A name-tag armor stand that exists only on the clients of the players
+ * tracking its speaker. The server keeps this record and sends spawn,
+ * metadata, teleport and destroy packets itself, so the hologram is never
+ * ticked, collision-checked or saved with the chunk.
+ *
+ * Entity ids come from a pool counting down from {@link Integer#MAX_VALUE},
+ * far away from the ids the server hands out, and are reused once destroyed.
+ */
+final class VirtualHologram extends Hologram {
+
+    /** Armor stand object type in {@link SPacketSpawnObject} */
+    private static final int ARMOR_STAND_TYPE = 78;
+    /** Viewers and position are refreshed as often as the entity tracker updates armor stands */
+    private static final int UPDATE_INTERVAL = 3;
+
+    private static final ArrayDeque<Integer> freeIds = new ArrayDeque<>();
+    private static int nextId = Integer.MAX_VALUE;
+    private static EntityArmorStand scratch;
+
+    private final int entityId;
+    private final WorldServer world;
+    private final EntityLiving npc;
+    private final String text;
+    private final double yOffset;
+    private final Set<EntityPlayerMP> viewers = new HashSet<>();
+    private int age;
+    private double x;
+    private double y;
+    private double z;
+    private float yaw;
+
+    VirtualHologram(WorldServer world, EntityLiving npc, String text, double yOffset) {
+        this.entityId = freeIds.isEmpty() ? nextId-- : freeIds.pop();
+        this.world = world;
+        this.npc = npc;
+        this.text = text;
+        this.yOffset = yOffset;
+        sample();
+        updateViewers();
+    }
+
+    @Override
+    int getEntityId() {
+        return entityId;
+    }
+
+    @Override
+    boolean follow() {
+        if (npc.isDead) {
+            return false;
+        }
+        if (++age % UPDATE_INTERVAL == 0) {
+            updateViewers();
+        }
+        return true;
+    }
+
+    /**
+     * Remove the hologram from every client and return its id to the pool.
+     */
+    @Override
+    void destroy() {
+        if (!viewers.isEmpty()) {
+            SPacketDestroyEntities packet = new SPacketDestroyEntities(entityId);
+            for (EntityPlayerMP viewer : viewers) {
+                viewer.connection.sendPacket(packet);
+            }
+            viewers.clear();
+        }
+        freeIds.push(entityId);
+    }
+
+    private void updateViewers() {
+        boolean moved = sample();
+        Set<? extends EntityPlayer> tracking = world.getEntityTracker().getTrackingPlayers(npc);
+
+        Packet<?> destroy = null;
+        for (Iterator<EntityPlayerMP> it = viewers.iterator(); it.hasNext(); ) {
+            EntityPlayerMP viewer = it.next();
+            if (!tracking.contains(viewer)) {
+                if (destroy == null) {
+                    destroy = new SPacketDestroyEntities(entityId);
+                }
+                viewer.connection.sendPacket(destroy);
+                it.remove();
+            }
+        }
+
+        if (moved && !viewers.isEmpty()) {
+            Packet<?> teleport = new SPacketEntityTeleport(stand());
+            for (EntityPlayerMP viewer : viewers) {
+                viewer.connection.sendPacket(teleport);
+            }
+        }
+
+        Packet<?> spawn = null;
+        Packet<?> metadata = null;
+        for (EntityPlayer player : tracking) {
+            if (player instanceof EntityPlayerMP && !viewers.contains(player)) {
+                if (spawn == null) {
+                    EntityArmorStand stand = stand();
+                    spawn = new SPacketSpawnObject(stand, ARMOR_STAND_TYPE);
+                    metadata = new SPacketEntityMetadata(entityId, stand.getDataManager(), true);
+                }
+                EntityPlayerMP viewer = (EntityPlayerMP) player;
+                viewer.connection.sendPacket(spawn);
+                viewer.connection.sendPacket(metadata);
+                viewers.add(viewer);
+            }
+        }
+    }
+
+    /**
+     * @return true if the speaker moved or turned since the last recorded position
+     */
+    private boolean sample() {
+        double newY = npc.posY + npc.height + yOffset;
+        double dx = npc.posX - x;
+        double dy = newY - y;
+        double dz = npc.posZ - z;
+        if (dx * dx + dy * dy + dz * dz <= MOVE_EPSILON_SQ && npc.rotationYaw == yaw) {
+            return false;
+        }
+        x = npc.posX;
+        y = newY;
+        z = npc.posZ;
+        yaw = npc.rotationYaw;
+        return true;
+    }
+
+    /**
+     * A never-spawned armor stand set up as this hologram, for building packets.
+     * The packets copy what they need, so one instance is shared by all holograms.
+     */
+    private EntityArmorStand stand() {
+        if (scratch == null || scratch.world != world) {
+            scratch = new EntityArmorStand(world);
+            scratch.setInvisible(true);
+            scratch.setNoGravity(true);
+            byte status = scratch.getDataManager().get(EntityArmorStand.STATUS);
+            scratch.getDataManager().set(EntityArmorStand.STATUS, (byte) (status | 1 | 16)); // Small, marker
+            scratch.setAlwaysRenderNameTag(true);
+        }
+        scratch.setEntityId(entityId);
+        scratch.setCustomNameTag(text);
+        scratch.setPositionAndRotation(x, y, z, yaw, 0.0F);
+        return scratch;
+    }
+}